@@ -7,6 +7,11 @@ CACHE_DEFAULT=1024
 THREADS_DEFAULT=0
 PIVOT_DEFAULT=bestOf
 BESTOFSAMPLES_DEFAULT=15
+IO_DEFAULT=read
+ALGORITHM_DEFAULT=pivot
+FORMAT_DEFAULT=text
+DELIMITER_DEFAULT=,
+MEMORYCACHE_DEFAULT=0
 #
 TRUE_VALUE=true
 FALSE_VALUE=false
@@ -17,17 +22,45 @@ THREADS_PARAM=-Dthreads
 PIVOT_PARAM=-Dpivot
 BESTOFSAMPLES_PARAM=-DbestOfSamples
 PRINTTIME_PARAM=-DprintTime
+IO_PARAM=-Dio
+ALGORITHM_PARAM=-Dalgorithm
+MULTISET_PARAM=-Dmultiset
+FORMAT_PARAM=-Dformat
+MEMORYCACHE_PARAM=-DmemoryCache
+INDEX_PARAM=-Dindex
+EXACT_PARAM=-Dexact
+WORKSTEALING_PARAM=-DworkStealing
+VIRTUALTHREADS_PARAM=-DvirtualThreads
+QUANTILES_PARAM=-Dquantiles
+COLUMNS_PARAM=-Dcolumns
+DELIMITER_PARAM=-Ddelimiter
+HEADER_PARAM=-Dheader
 #
 function printHelp {
   echo ""
-  echo "Usage: run.sh -c <cache_size> -s -t <number_of_threads> -p <mean/middle/bestOf> -b <number_of_samples> -d"
+  echo "Usage: run.sh -c <cache_size> -s -t <number_of_threads> -p <mean/middle/bestOf> -b <number_of_samples> -i <read/mmap/async/direct> -a <pivot/histogram/spill/sketch> -m -f <text/binary/gzip/decimal> -M <megabytes> -x -e -w -V -q <quantiles> -k <columns> -F <delimiter> -H -d <file> [<file>...]"
   echo -e "\tOptions:"
   echo -e "\t\t-c / --cache -> cache size. Default $CACHE_DEFAULT "
   echo -e "\t\t-s / --singlethread -> use single thread version."
   echo -e "\t\t-t / --threads -> number of threads. Zero to use available threads. Default $THREADS_DEFAULT "
   echo -e "\t\t-p / --pivot -> pivot selection strategy. Valid values are mean, middle, bestOf. Default $PIVOT_DEFAULT "
   echo -e "\t\t-b / --bestOfSample -> number of samples in case of pivot strategy equal to bestOf. Must be bigger than 0. Default $BESTOFSAMPLES_DEFAULT "
+  echo -e "\t\t-i / --io -> how the file is read. Valid values are read, mmap, async, direct. Default $IO_DEFAULT "
+  echo -e "\t\t-a / --algorithm -> algorithm used to find the median. Valid values are pivot, histogram, spill, sketch. Default $ALGORITHM_DEFAULT "
+  echo -e "\t\t-m / --multiset -> accept repeated numbers."
+  echo -e "\t\t-f / --format -> format of the file. Valid values are text, binary, gzip, decimal. Default $FORMAT_DEFAULT "
+  echo -e "\t\t-M / --memoryCache -> megabytes used to keep the parsed numbers between scans, e.g. 256. Zero to disable. Default $MEMORYCACHE_DEFAULT "
+  echo -e "\t\t-x / --index -> keep an index next to the file for the following queries."
+  echo -e "\t\t-e / --exact -> find the exact median with a second scan when using the sketch algorithm."
+  echo -e "\t\t-w / --workStealing -> split the file on small blocks taken by the threads as they finish, instead of a partition per thread."
+  echo -e "\t\t-V / --virtualThreads -> with several files, find each median on its own virtual thread. Needs Java 21 or later."
+  echo -e "\t\t-q / --quantiles -> comma separated quantiles to find instead of the median, e.g. 0.5,0.9,0.99. Needs the pivot algorithm."
+  echo -e "\t\t-k / --columns -> comma separated columns, from one, of a delimited file with the numbers, e.g. 2,4. Several columns use the histogram algorithm."
+  echo -e "\t\t-F / --delimiter -> delimiter of the columns, a single character or tab. Default $DELIMITER_DEFAULT "
+  echo -e "\t\t-H / --header -> ignore the first line of a delimited file."
   echo -e "\t\t-d / --printTime -> prints the execution time."
+  echo -e "\tWith several files, each median is printed after the name of the file."
+  echo -e "\tUse - as the file to read the numbers from the standard input, e.g. zcat data.txt.gz | run.sh -"
   echo ""
 }
 #
@@ -37,7 +70,20 @@ threads=$THREADS_DEFAULT
 pivot=$PIVOT_DEFAULT
 bestOfSamples=$BESTOFSAMPLES_DEFAULT
 printTime=$FALSE_VALUE
-file=
+io=$IO_DEFAULT
+algorithm=$ALGORITHM_DEFAULT
+multiset=$FALSE_VALUE
+format=$FORMAT_DEFAULT
+memoryCache=$MEMORYCACHE_DEFAULT
+index=$FALSE_VALUE
+exact=$FALSE_VALUE
+workStealing=$FALSE_VALUE
+virtualThreads=$FALSE_VALUE
+quantiles=
+columns=
+delimiter=$DELIMITER_DEFAULT
+header=$FALSE_VALUE
+files=()
 
 while [[ $# -gt 0 ]]; do
   key="$1"
@@ -82,13 +128,94 @@ while [[ $# -gt 0 ]]; do
       shift 
       shift 
     ;;
+    -i|--io)
+      if [ "$2" = 'read' ] || [ "$2" = 'mmap' ] || [ "$2" = 'async' ] || [ "$2" = 'direct' ]; then
+        io="$2"
+      else
+        echo -e "\nInvalid io: $2 ."
+	printHelp
+	exit
+      fi
+      shift 
+      shift 
+    ;;
+    -a|--algorithm)
+      if [ "$2" = 'pivot' ] || [ "$2" = 'histogram' ] || [ "$2" = 'spill' ] || [ "$2" = 'sketch' ]; then
+        algorithm="$2"
+      else
+        echo -e "\nInvalid algorithm: $2 ."
+	printHelp
+	exit
+      fi
+      shift 
+      shift 
+    ;;
+    -m|--multiset)
+      multiset=$TRUE_VALUE
+      shift
+    ;;
+    -f|--format)
+      if [ "$2" = 'text' ] || [ "$2" = 'binary' ] || [ "$2" = 'gzip' ] || [ "$2" = 'decimal' ]; then
+        format="$2"
+      else
+        echo -e "\nInvalid format: $2 ."
+	printHelp
+	exit
+      fi
+      shift 
+      shift 
+    ;;
+    -M|--memoryCache)
+      memoryCache="$2"
+      shift
+      shift
+    ;;
+    -x|--index)
+      index=$TRUE_VALUE
+      shift
+    ;;
+    -e|--exact)
+      exact=$TRUE_VALUE
+      shift
+    ;;
+    -w|--workStealing)
+      workStealing=$TRUE_VALUE
+      shift
+    ;;
+    -V|--virtualThreads)
+      virtualThreads=$TRUE_VALUE
+      shift
+    ;;
+    -q|--quantiles)
+      quantiles="$2"
+      shift
+      shift
+    ;;
+    -k|--columns)
+      columns="$2"
+      shift
+      shift
+    ;;
+    -F|--delimiter)
+      delimiter="$2"
+      shift
+      shift
+    ;;
+    -H|--header)
+      header=$TRUE_VALUE
+      shift
+    ;;
     -d|--printTime)
       printTime=$TRUE_VALUE
       shift  
     ;;
+    -)  # standard input
+      files+=("$1")
+      shift
+    ;;
     *)  # others
       if ! [[ ${1:0:1} == '-' ]]; then
-	file=$1
+	files+=("$1")
       else
 	echo -e "\nInvalid option: $1"
 	printHelp
@@ -99,11 +226,14 @@ while [[ $# -gt 0 ]]; do
   esac
 done
 
-#echo "Arguments: $cache - $multithread - $threads - $pivot - $bestOfSamples - $printTime - $file"
+#echo "Arguments: $cache - $multithread - $threads - $pivot - $bestOfSamples - $printTime - ${files[*]}"
 
 java "$CACHE_PARAM=$cache" "$MULTITHREAD_PARAM=$multithread" \
 "$THREADS_PARAM=$threads" "$PIVOT_PARAM=$pivot" "$BESTOFSAMPLES_PARAM=$bestOfSamples" \
-"$PRINTTIME_PARAM=$printTime" -jar "$JARNAME" "$file"
+"$PRINTTIME_PARAM=$printTime" "$IO_PARAM=$io" "$ALGORITHM_PARAM=$algorithm" \
+"$MULTISET_PARAM=$multiset" "$FORMAT_PARAM=$format" \
+"$MEMORYCACHE_PARAM=$memoryCache" "$INDEX_PARAM=$index" "$EXACT_PARAM=$exact" "$WORKSTEALING_PARAM=$workStealing" "$VIRTUALTHREADS_PARAM=$virtualThreads" "$QUANTILES_PARAM=$quantiles" \
+"$COLUMNS_PARAM=$columns" "$DELIMITER_PARAM=$delimiter" "$HEADER_PARAM=$header" -jar "$JARNAME" "${files[@]}"
 
 res=$?
 #echo "$res"
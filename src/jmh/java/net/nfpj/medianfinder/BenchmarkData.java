@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates the files read by the benchmarks with {@link DataFileGenerator},
+ * with a fixed seed so every run reads the same numbers. The files are kept
+ * on the temporary directory and reused by the following runs, and by the
+ * forks of the same run.
+ *
+ * @author njacinto
+ */
+final class BenchmarkData {
+
+    private static final long SEED = 24;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param distribution the distribution of the numbers
+     * @param count the number of numbers of the file
+     * @return the file, one number per line
+     */
+    static File file(DataSequence.Distribution distribution, int count) throws IOException {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "medianfinder-jmh");
+        final File file = new File(dir, distribution + "-" + count + ".txt");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create the directory " + dir);
+        }
+        // the metadata is written after the numbers, so a file without it
+        // was interrupted
+        if (DataFileGenerator.loadMetadata(file) == null) {
+            DataFileGenerator.generate(file, distribution, count, SEED, false, 0);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to find the median of a file, with the number of scans of the file
+ * and the number of times the whole file is read, on average, per median.
+ * The scans are counted only for the strategies reading the file with a
+ * {@link ScanStrategy}, not for {@link MedianFinderStrategyPivotWithSingleBeforeAfter}.
+ * <p>
+ * The parameters not used by a strategy, as the threads of the single
+ * threaded strategies, repeat the same measure; select the ones of interest
+ * with -p, e.g. {@code -p strategy=multiThreaded -p threads=4}. The strategy
+ * {@value #SINGLE} scans the file once per number between the pivot and the
+ * median, taking minutes on a million different numbers, so it's only run
+ * when selected, e.g. {@code -p strategy=single -p count=10000}.
+ * <p>
+ * The counts show how the scans and the time grow with the size of the file.
+ * The files of ten million numbers take up to 200MB each on the temporary
+ * directory; select the smaller ones with e.g. {@code -p count=100000,1000000}.
+ *
+ * @author njacinto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MedianFinderBenchmark {
+
+    public static final String SINGLE = "single";
+    public static final String CACHE = "cache";
+    public static final String MULTI_THREADED = "multiThreaded";
+
+    @Param({CACHE, MULTI_THREADED})
+    public String strategy;
+    @Param({"mean", "middle", "bestOf"})
+    public String pivot;
+    @Param({"16", "1024"})
+    public int cacheSize;
+    @Param({"2", "4"})
+    public int threads;
+    @Param({"100000", "1000000", "10000000"})
+    public int count;
+    @Param({"UNIFORM", "NORMAL", "ZIPF", "SORTED", "REVERSE", "NEARLY_SORTED", "ADVERSARIAL", "DUPLICATES"})
+    public DataSequence.Distribution distribution;
+
+    private File file;
+    private CountingScanStrategy scanStrategy;
+    private MedianFinderStrategy medianFinder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchmarkData.file(distribution, count);
+        scanStrategy = new CountingScanStrategy(ScanStrategyRead.INSTANCE);
+        final PivotSelectionStrategy pivotSelection = pivotSelection(pivot);
+        switch (strategy) {
+            case SINGLE:
+                medianFinder = new MedianFinderStrategyPivotWithSingleBeforeAfter(pivotSelection, true);
+                break;
+            case CACHE:
+                medianFinder = new MedianFinderStrategyPivotWithCache(cacheSize, pivotSelection, scanStrategy, true);
+                break;
+            case MULTI_THREADED:
+                medianFinder = new MedianFinderStrategyPivotWithCacheMultiThreaded(cacheSize, threads, pivotSelection,
+                        scanStrategy, true);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid strategy: " + strategy);
+        }
+    }
+
+    @Benchmark
+    public long findMedian(ScanCounters counters) throws IOException {
+        final long scans = scanStrategy.scans.get();
+        final long bytes = scanStrategy.bytes.get();
+        final long median = medianFinder.findMedian(file);
+        counters.add(scanStrategy.scans.get() - scans, scanStrategy.bytes.get() - bytes, file.length());
+        return median;
+    }
+
+    static PivotSelectionStrategy pivotSelection(String pivot) {
+        switch (pivot) {
+            case "mean":
+                return new PivotSelectionStrategyMean();
+            case "middle":
+                return new PivotSelectionStrategyMiddle();
+            case "bestOf":
+                return new PivotSelectionStrategyBestOfN(15);
+            default:
+                throw new IllegalArgumentException("Invalid pivot: " + pivot);
+        }
+    }
+
+    //
+    /**
+     * The scans per median, reported with the time of each iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ScanCounters {
+
+        public double scans;
+        public double passes;
+        private long medians, totalScans;
+        private double totalPasses;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            scans = passes = totalPasses = 0;
+            medians = totalScans = 0;
+        }
+
+        void add(long scans, long bytes, long fileSize) {
+            medians++;
+            totalScans += scans;
+            totalPasses += (double) bytes / fileSize;
+            this.scans = (double) totalScans / medians;
+            this.passes = totalPasses / medians;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per number of the parsing primitives of {@link NumberUtil} against
+ * their scalar versions, on a buffer of lines with numbers of the same
+ * length, as read by the scanners.
+ *
+ * @author njacinto
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumberUtilBenchmark {
+
+    private static final int LINES = 4096;
+
+    @Param({"3", "8", "18"})
+    public int digits;
+
+    private byte[] buff;
+    private byte[] decimals;
+    // the first and last index of the number of each line
+    private final int[] firsts = new int[LINES];
+    private final int[] lasts = new int[LINES];
+    private final int[] decimalFirsts = new int[LINES];
+    private final int[] decimalLasts = new int[LINES];
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(digits);
+        final StringBuilder text = new StringBuilder();
+        final StringBuilder decimalText = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            final StringBuilder num = new StringBuilder(random.nextBoolean() ? "-" : "");
+            num.append((char) ('1' + random.nextInt(9)));
+            for (int j = 1; j < digits; j++) {
+                num.append((char) ('0' + random.nextInt(10)));
+            }
+            firsts[i] = text.length();
+            text.append(num);
+            lasts[i] = text.length() - 1;
+            text.append((char) Constants.EOL);
+            // the same digits with a fraction
+            decimalFirsts[i] = decimalText.length();
+            decimalText.append(num).insert(decimalText.length() - Math.min(digits - 1, 2), '.');
+            decimalLasts[i] = decimalText.length() - 1;
+            decimalText.append((char) Constants.EOL);
+        }
+        buff = text.toString().getBytes(StandardCharsets.US_ASCII);
+        decimals = decimalText.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long toLong() {
+        long sum = 0;
+        for (int i = 0; i < LINES; i++) {
+            sum += NumberUtil.toLong(buff, firsts[i], lasts[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long toLongSwar() {
+        long sum = 0;
+        for (int i = 0; i < LINES; i++) {
+            sum += NumberUtil.toLongSwar(buff, firsts[i], lasts[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int indexOfEolScalar() {
+        int lines = 0;
+        for (int i = 0; i < buff.length; i++) {
+            if (buff[i] == Constants.EOL) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int indexOfEol() {
+        int lines = 0;
+        for (int i = NumberUtil.indexOfEol(buff, 0, buff.length); i < buff.length;
+                i = NumberUtil.indexOfEol(buff, i + 1, buff.length)) {
+            lines++;
+        }
+        return lines;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public double parseDouble() {
+        double sum = 0;
+        for (int i = 0; i < LINES; i++) {
+            sum += Double.parseDouble(new String(decimals, decimalFirsts[i], decimalLasts[i] - decimalFirsts[i] + 1,
+                    StandardCharsets.US_ASCII));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public double toDouble() {
+        double sum = 0;
+        for (int i = 0; i < LINES; i++) {
+            sum += NumberUtil.toDouble(decimals, decimalFirsts[i], decimalLasts[i]);
+        }
+        return sum;
+    }
+}
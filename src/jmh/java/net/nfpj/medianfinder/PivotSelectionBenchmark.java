@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to select the initial pivot. How close the pivot is to the median
+ * shows on the scans of {@link MedianFinderBenchmark}.
+ *
+ * @author njacinto
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PivotSelectionBenchmark {
+
+    @Param({"mean", "middle", "bestOf"})
+    public String pivot;
+    @Param({"100000", "1000000", "10000000"})
+    public int count;
+    @Param({"UNIFORM", "SORTED", "ADVERSARIAL"})
+    public DataSequence.Distribution distribution;
+
+    private File file;
+    private FileScanner scanner;
+    private PivotSelectionStrategy pivotSelection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchmarkData.file(distribution, count);
+        scanner = ScanStrategyRead.INSTANCE.open(file);
+        pivotSelection = MedianFinderBenchmark.pivotSelection(pivot);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        scanner.close();
+    }
+
+    @Benchmark
+    public long getPivot() throws IOException {
+        return pivotSelection.getPivot(file, scanner);
+    }
+}
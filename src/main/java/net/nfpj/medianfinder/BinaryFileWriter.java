@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes numbers on the binary format read by {@link ScanStrategyBinary}. The
+ * file is replaced if it exists. Being a {@link NumberHandler}, the
+ * {@link IOException}s are thrown wrapped on an {@link UncheckedIOException}.
+ *
+ * @author njacinto
+ */
+class BinaryFileWriter implements NumberHandler, Closeable {
+
+    private final FileChannel out;
+    private final ByteBuffer buff = ByteBuffer.allocateDirect(Constants.BATCH_SIZE * ScanStrategyBinary.NUMBER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    long count = 0;
+
+    BinaryFileWriter(File file) throws IOException {
+        this.out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void handle(long[] nums, int len) {
+        final int maxLen = buff.capacity() / ScanStrategyBinary.NUMBER_SIZE;
+        try {
+            for (int off = 0; off < len; off += maxLen) {
+                final int n = (len - off < maxLen) ? len - off : maxLen;
+                buff.clear();
+                buff.asLongBuffer().put(nums, off, n);
+                buff.limit(n * ScanStrategyBinary.NUMBER_SIZE);
+                while (buff.hasRemaining()) {
+                    out.write(buff);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        count += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
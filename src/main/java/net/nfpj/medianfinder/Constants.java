@@ -25,6 +25,7 @@ package net.nfpj.medianfinder;
 public final class Constants {
 
     public static final int BUFFER_SIZE = 4096;
+    public static final int BATCH_SIZE = 512;
     public static final int NUMBER_MAX_LEN = 20;
     public static final byte EOL = 10;
 
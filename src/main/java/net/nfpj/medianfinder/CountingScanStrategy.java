@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the scans of the scanners of another strategy and the bytes they
+ * read, shared by the threads of the multithreaded strategies.
+ *
+ * @author njacinto
+ */
+class CountingScanStrategy implements ScanStrategy {
+
+    final AtomicLong scans = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+    private final ScanStrategy scanStrategy;
+
+    CountingScanStrategy(ScanStrategy scanStrategy) {
+        this.scanStrategy = scanStrategy;
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        final FileScanner scanner = scanStrategy.open(file);
+        return new FileScanner() {
+            @Override
+            public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+                scans.incrementAndGet();
+                bytes.addAndGet(limit - pos);
+                scanner.scan(pos, limit, handler);
+            }
+
+            @Override
+            public long findEndOfBlock(long pos) throws IOException {
+                return scanner.findEndOfBlock(pos);
+            }
+
+            @Override
+            public long firstNumber(long pos) throws IOException {
+                return scanner.firstNumber(pos);
+            }
+
+            @Override
+            public void close() throws IOException {
+                scanner.close();
+            }
+        };
+    }
+
+    @Override
+    public long mean(long low, long high) {
+        return scanStrategy.mean(low, high);
+    }
+
+    @Override
+    public String toString() {
+        return "CountingScanStrategy{" + "scanStrategy=" + scanStrategy + '}';
+    }
+}
@@ -19,9 +19,24 @@
  */
 package net.nfpj.medianfinder;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -30,19 +45,67 @@ import java.io.RandomAccessFile;
 public class DataFileGenerator {
 
     public static final String FILE_NAME = "test05.dat";
+    public static final String TO_BINARY = "toBinary";
+    public static final String GENERATE = "generate";
+    public static final String FORMAT_BINARY = "binary";
+    public static final String METADATA_EXTENSION = ".properties";
+    public static final String METADATA_DISTRIBUTION = "distribution";
+    public static final String METADATA_COUNT = "count";
+    public static final String METADATA_SEED = "seed";
+    public static final String METADATA_FORMAT = "format";
+    public static final String METADATA_MEDIAN = "median";
+    public static final String METADATA_MIN = "min";
+    public static final String METADATA_MAX = "max";
+    public static final long DEFAULT_SEED = 1;
+    // the numbers encoded by each task of generate
+    private static final int CHUNK_SIZE = 1 << 16;
+    // the bytes of a number on a text file, with the sign and the end of line
+    private static final int MAX_LINE_SIZE = Constants.NUMBER_MAX_LEN + 1;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments. To convert a text file to binary:
+     * toBinary &lt;text file&gt; &lt;binary file&gt;
+     * <br>To create a file with a known median, written on the file with the
+     * {@link #METADATA_EXTENSION} next to it, with the format text or binary:
+     * generate &lt;distribution&gt; &lt;count&gt; &lt;file&gt; [&lt;format&gt; [&lt;seed&gt;]]
      */
     public static void main(String[] args) throws IOException {
-        createFile(FILE_NAME, 2000000000);
-//        createFileSeq("medianFinderTestData02.txt", 99, 0, -1, 2);
+        if (args.length == 3 && TO_BINARY.equals(args[0])) {
+            convertToBinary(args[1], args[2]);
+        } else if (args.length >= 4 && args.length <= 6 && GENERATE.equals(args[0])) {
+            final long median = generate(new File(args[3]), DataSequence.Distribution.valueOf(args[1]),
+                    Long.parseLong(args[2]), args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_SEED,
+                    args.length > 4 && FORMAT_BINARY.equals(args[4]), 0);
+            System.out.println(median);
+        } else {
+            createFile(FILE_NAME, 2000000000);
+//            createFileSeq("medianFinderTestData02.txt", 99, 0, -1, 2);
+        }
+    }
+
+    /**
+     * Converts a text file, with one number per line, to the binary format
+     * read by {@link ScanStrategyBinary}. The binary file is replaced if it
+     * exists.
+     *
+     * @return the number of numbers written
+     */
+    public static long convertToBinary(final String textFileName, final String binaryFileName) throws IOException {
+        final File textFile = new File(textFileName);
+        try (FileScanner scanner = ScanStrategyMemoryMapped.INSTANCE.open(textFile);
+                BinaryFileWriter writer = new BinaryFileWriter(new File(binaryFileName))) {
+            scanner.scan(0, textFile.length(), writer);
+            return writer.count;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
     }
 
     public static void createFile(final String fileName, int count) throws IOException {
         if (!(new File(fileName).exists())) {
-            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
-                byte[] buff = new byte[4096];
+            try (OutputStream file = new BufferedOutputStream(new FileOutputStream(fileName), WRITE_BUFFER_SIZE)) {
+                byte[] buff = new byte[MAX_LINE_SIZE];
                 for (long i = 0; i < count; ++i) {
                     int j = 0;
                     long num = i;
@@ -83,10 +146,10 @@ public class DataFileGenerator {
                 arr[i + mixLen] = arr[i + mixLen * 3];
                 arr[i + mixLen * 3] = tmp;
             }
-            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            try (OutputStream file = new BufferedOutputStream(new FileOutputStream(fileName), WRITE_BUFFER_SIZE)) {
+                byte[] b = new byte[MAX_LINE_SIZE];
                 for (int i = 0; i < count; ++i) {
-                    byte[] b = String.format("%d\n", arr[i]).getBytes();
-                    file.write(b, 0, b.length);
+                    file.write(b, 0, encode(arr[i], 0, b, 0));
                 }
             }
             return ret;
@@ -107,14 +170,161 @@ public class DataFileGenerator {
             }
             long ret = (len & 1) == 1 ? arr[(len >> 1)]
                     : (arr[(len >> 1) - 1] + arr[(len >> 1)]) / 2;
-            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            try (OutputStream file = new BufferedOutputStream(new FileOutputStream(fileName), WRITE_BUFFER_SIZE)) {
+                byte[] b = new byte[Math.max(numlen + 1, MAX_LINE_SIZE)];
                 for (int i = 0; i < len; ++i) {
-                    byte[] b = String.format("%0" + numlen + "d\n", arr[i]).getBytes();
-                    file.write(b, 0, b.length);
+                    file.write(b, 0, encode(arr[i], numlen, b, 0));
                 }
             }
             return ret;
         }
         return 0;
     }
+
+    /**
+     * Creates a file with the numbers of a {@link DataSequence}, encoded in
+     * parallel by blocks written in order, and writes the distribution, count,
+     * seed, format, median, minimum and maximum to a properties file with the
+     * name of the file followed by {@link #METADATA_EXTENSION}, after the
+     * numbers. The files are replaced if they exist.
+     *
+     * @param file the file, with one number per line or with the binary
+     * format read by {@link ScanStrategyBinary}
+     * @param distribution the distribution of the numbers
+     * @param count the number of numbers
+     * @param seed the seed of the sequence, the same seed giving the same file
+     * @param binary true for the binary format
+     * @param numberOfThreads the threads encoding the numbers. Zero to use the
+     * number of processors.
+     * @return the median of the numbers
+     */
+    public static long generate(File file, DataSequence.Distribution distribution, long count, long seed,
+            boolean binary, int numberOfThreads) throws IOException {
+        final int numThreads = (numberOfThreads > 0) ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+        // the lines of the same width, for the sequences that need it
+        final int lineWidth = binary ? ScanStrategyBinary.NUMBER_SIZE : Long.toString(Math.max(0, count - 1)).length() + 1;
+        final DataSequence sequence = new DataSequence(distribution, count, seed, lineWidth);
+        final int digits = binary ? 0 : sequence.getDigits();
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // at most two blocks per thread waiting to be written
+            final ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+            long next = 0;
+            while (next < count || !pending.isEmpty()) {
+                while (next < count && pending.size() < numThreads * 2) {
+                    final long from = next, to = Math.min(count, next + CHUNK_SIZE);
+                    pending.add(executor.submit(() -> encode(sequence, from, to, binary, digits)));
+                    next = to;
+                }
+                final ByteBuffer buff = get(pending.poll());
+                while (buff.hasRemaining()) {
+                    out.write(buff);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final Properties metadata = new Properties();
+        metadata.setProperty(METADATA_DISTRIBUTION, distribution.name());
+        metadata.setProperty(METADATA_COUNT, Long.toString(count));
+        metadata.setProperty(METADATA_SEED, Long.toString(seed));
+        metadata.setProperty(METADATA_FORMAT, binary ? FORMAT_BINARY : "text");
+        metadata.setProperty(METADATA_MEDIAN, Long.toString(sequence.median()));
+        metadata.setProperty(METADATA_MIN, Long.toString(sequence.min()));
+        metadata.setProperty(METADATA_MAX, Long.toString(sequence.max()));
+        try (OutputStream out = new FileOutputStream(metadataFile(file))) {
+            metadata.store(out, sequence.toString());
+        }
+        return sequence.median();
+    }
+
+    /**
+     * @return the metadata written by
+     * {@link #generate(File, DataSequence.Distribution, long, long, boolean, int)},
+     * or null if the file doesn't have it
+     */
+    public static Properties loadMetadata(File file) throws IOException {
+        final File metadataFile = metadataFile(file);
+        if (!metadataFile.isFile()) {
+            return null;
+        }
+        final Properties metadata = new Properties();
+        try (InputStream in = new FileInputStream(metadataFile)) {
+            metadata.load(in);
+        }
+        return metadata;
+    }
+
+    private static File metadataFile(File file) {
+        return new File(file.getPath() + METADATA_EXTENSION);
+    }
+
+    /**
+     * Encodes the numbers of the sequence between the two indexes.
+     */
+    private static ByteBuffer encode(DataSequence sequence, long from, long to, boolean binary, int digits) {
+        final int len = (int) (to - from);
+        if (binary) {
+            final ByteBuffer buff = ByteBuffer.allocate(len * ScanStrategyBinary.NUMBER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (long i = from; i < to; i++) {
+                buff.putLong(sequence.get(i));
+            }
+            return buff.flip();
+        }
+        final byte[] buff = new byte[len * Math.max(digits + 1, MAX_LINE_SIZE)];
+        int pos = 0;
+        for (long i = from; i < to; i++) {
+            pos = encode(sequence.get(i), digits, buff, pos);
+        }
+        return ByteBuffer.wrap(buff, 0, pos);
+    }
+
+    /**
+     * Writes the number and the end of line, as by {@code String.format("%0<width>d\n")}.
+     *
+     * @param num the number
+     * @param width the minimum length of the number, with the sign, padded
+     * with zeros. Zero to not pad.
+     * @param buff the buffer
+     * @param pos the position of the buffer where the number starts
+     * @return the position after the end of line
+     */
+    static int encode(long num, int width, byte[] buff, int pos) {
+        int len = 1;
+        for (long n = num / 10; n != 0; n /= 10) {
+            len++;
+        }
+        final int sign = (num < 0) ? 1 : 0;
+        final int end = pos + Math.max(width, len + sign);
+        if (sign == 1) {
+            buff[pos] = '-';
+        }
+        for (int i = pos + sign; i < end - len; i++) {
+            buff[i] = '0';
+        }
+        for (int i = end - 1; i >= end - len; i--, num /= 10) {
+            buff[i] = (byte) ('0' + Math.abs(num % 10));
+        }
+        buff[end] = Constants.EOL;
+        return end + 1;
+    }
+
+    /**
+     * Waits for the task, throwing its exception if it failed.
+     */
+    private static <T> T get(Future<T> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            } else {
+                throw new RuntimeException(ex);
+            }
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.util.Arrays;
+
+/**
+ * A sequence of numbers with a known distribution and median, where each
+ * number is found from its index alone, so parts of the sequence can be
+ * written in parallel. The numbers are the values of a non decreasing
+ * function of their rank, the {@link #quantile(long)}, placed on the
+ * sequence by a permutation of the ranks. The median is then the mean of the
+ * quantiles of the two middle ranks, without reading the numbers.
+ *
+ * @author njacinto
+ */
+public final class DataSequence {
+
+    /**
+     * The distributions of the numbers.
+     */
+    public enum Distribution {
+        /**
+         * Different numbers spread over the range of the longs, shuffled.
+         */
+        UNIFORM,
+        /**
+         * Different numbers with a normal distribution, with a standard
+         * deviation equal to the count, shuffled.
+         */
+        NORMAL,
+        /**
+         * Positive numbers with a Zipf like distribution with exponent 2,
+         * half of them ones, shuffled. Needs the multiset option.
+         */
+        ZIPF,
+        /**
+         * The numbers from zero to the count (exclusive), sorted.
+         */
+        SORTED,
+        /**
+         * The numbers from zero to the count (exclusive), in reverse order.
+         */
+        REVERSE,
+        /**
+         * The numbers from zero to the count (exclusive), sorted but with
+         * one of each sixteen blocks of 64 numbers shuffled.
+         */
+        NEARLY_SORTED,
+        /**
+         * The numbers from zero to the count (exclusive), all with the same
+         * length, with the biggest on the lines sampled by
+         * {@link PivotSelectionStrategyBestOfN} for any odd n up to
+         * {@link #ADVERSARIAL_MAX_N}, so its pivot is far from the median.
+         */
+        ADVERSARIAL,
+        /**
+         * Only {@link #DUPLICATES_VALUES} different numbers, from zero,
+         * shuffled. Needs the multiset option.
+         */
+        DUPLICATES
+    }
+
+    public static final int ADVERSARIAL_MAX_N = 101;
+    public static final int DUPLICATES_VALUES = 100;
+    // the blocks of NEARLY_SORTED
+    private static final int BLOCK_BITS = 6;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    //
+    private final Distribution distribution;
+    private final long count;
+    private final long seed;
+    private final int width;
+    // the permutation of the ranks
+    private final long mask;
+    private final int shift;
+    // the indexes of the lines taken by the samples, with the biggest numbers
+    private final long[] marks;
+    private final long uniformStride;
+
+    /**
+     *
+     * @param distribution the distribution of the numbers
+     * @param count the number of numbers. Must be bigger than zero
+     * @param seed the seed of the permutation and of the random parts of the
+     * numbers
+     * @param lineWidth the bytes used by each number on the file. Only used
+     * by {@link Distribution#ADVERSARIAL}, which writes all the numbers with
+     * the same length, {@link #getDigits()} and the end of line on text
+     * files.
+     */
+    public DataSequence(Distribution distribution, long count, long seed, int lineWidth) {
+        if (distribution == null) {
+            throw new IllegalArgumentException("The distribution cannot be null.");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("The count must be bigger than zero.");
+        }
+        if (lineWidth < 1) {
+            throw new IllegalArgumentException("The line width must be bigger than zero.");
+        }
+        this.distribution = distribution;
+        this.count = count;
+        this.seed = seed;
+        this.width = lineWidth;
+        final int bits = Math.max(1, 64 - Long.numberOfLeadingZeros(count - 1));
+        this.mask = (bits == 64) ? -1L : (1L << bits) - 1;
+        this.shift = (bits + 1) >> 1;
+        this.marks = (distribution == Distribution.ADVERSARIAL) ? marks(count, lineWidth) : new long[0];
+        this.uniformStride = Math.max(1, Long.MAX_VALUE / count);
+    }
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the digits of all the numbers, padded with zeros, or zero if
+     * the numbers have different lengths
+     */
+    public int getDigits() {
+        return (distribution == Distribution.ADVERSARIAL) ? Long.toString(count - 1).length() : 0;
+    }
+
+    /**
+     * @return the number on the index of the sequence
+     */
+    public long get(long index) {
+        return quantile(rank(index));
+    }
+
+    /**
+     * @return the median, the mean of the two middle numbers for an even
+     * count, as found by the median finders
+     */
+    public long median() {
+        return NumberUtil.mean(quantile((count - 1) >> 1), quantile(count >> 1));
+    }
+
+    public long min() {
+        return quantile(0);
+    }
+
+    public long max() {
+        return quantile(count - 1);
+    }
+
+    /**
+     * @return the number with the rank, from zero, on the sorted sequence
+     */
+    public long quantile(long rank) {
+        switch (distribution) {
+            case UNIFORM:
+                // evenly spaced, moved inside the space so they look random
+                final long base = (rank - (count >> 1)) * uniformStride;
+                return (uniformStride > 1) ? base + Long.remainderUnsigned(mix(rank ^ seed), uniformStride) : base;
+            case NORMAL:
+                return Math.round(count * inverseNormal((rank + 0.5) / count));
+            case ZIPF:
+                // the inverse of the tail (k ^ -(s - 1)) of a Zipf distribution with s = 2
+                return (long) (count / (count - rank - 0.5));
+            case DUPLICATES:
+                return rank * DUPLICATES_VALUES / count;
+            default:
+                return rank;
+        }
+    }
+
+    /**
+     * @return the rank of the number on the index
+     */
+    private long rank(long index) {
+        switch (distribution) {
+            case SORTED:
+                return index;
+            case REVERSE:
+                return count - 1 - index;
+            case NEARLY_SORTED:
+                final long block = index >>> BLOCK_BITS;
+                final long bits = mix(block ^ seed);
+                // only the full blocks, so the numbers stay inside the sequence
+                if ((bits & 15) == 0 && ((block + 1) << BLOCK_BITS) <= count) {
+                    return index ^ ((bits >>> 4) & ((1 << BLOCK_BITS) - 1));
+                }
+                return index;
+            case ADVERSARIAL:
+                final int mark = Arrays.binarySearch(marks, index);
+                if (mark >= 0) {
+                    return count - marks.length + mark;
+                }
+                // the other numbers shuffled on the other ranks
+                return permute(index - (-mark - 1), count - marks.length);
+            default:
+                return permute(index, count);
+        }
+    }
+
+    /**
+     * Shuffles the numbers from zero to n (exclusive), with a bijection of the
+     * numbers of the same bits of n repeated until the result is smaller than
+     * n, at most twice on average.
+     */
+    private long permute(long index, long n) {
+        do {
+            index = (index * GOLDEN_GAMMA + seed) & mask;
+            index ^= index >>> shift;
+            index = (index * 0xBF58476D1CE4E5B9L) & mask;
+            index ^= index >>> shift;
+            index = (index * 0x94D049BB133111EBL + (seed >>> 32)) & mask;
+            index ^= index >>> shift;
+        } while (Long.compareUnsigned(index, n) >= 0);
+        return index;
+    }
+
+    /**
+     * @return the indexes of the lines sampled by
+     * {@link PivotSelectionStrategyBestOfN} for each odd n up to
+     * {@link #ADVERSARIAL_MAX_N}, on a file with lines of the same width
+     */
+    private static long[] marks(long count, int lineWidth) {
+        final long fileSize = count * lineWidth;
+        long[] marks = new long[16];
+        int len = 0;
+        for (int n = 3; n <= ADVERSARIAL_MAX_N; n += 2) {
+            // the two ways of sampling, with n and n - 1 steps
+            for (long step : new long[]{fileSize / n, fileSize / (n - 1)}) {
+                for (long pos = 0; step > 0 && pos < fileSize; pos += step) {
+                    if (len + 2 > marks.length) {
+                        marks = Arrays.copyOf(marks, marks.length * 2);
+                    }
+                    // the line of the position, or the next one if the
+                    // position is after the start of the line
+                    marks[len++] = pos / lineWidth;
+                    marks[len++] = Math.min(count - 1, pos / lineWidth + 1);
+                }
+            }
+        }
+        marks[len++] = count - 1;
+        Arrays.sort(marks, 0, len);
+        int unique = 0;
+        for (int i = 0; i < len; i++) {
+            if (unique == 0 || marks[unique - 1] != marks[i]) {
+                marks[unique++] = marks[i];
+            }
+        }
+        return Arrays.copyOf(marks, unique);
+    }
+
+    /**
+     * The finalizer of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The inverse of the cumulative distribution of the standard normal
+     * distribution, by the rational approximation of P. J. Acklam, with a
+     * relative error below 1.2e-9.
+     */
+    static double inverseNormal(double p) {
+        final double pLow = 0.02425;
+        if (p < pLow) {
+            final double q = Math.sqrt(-2 * Math.log(p));
+            return (((((-7.784894002430293e-03 * q - 3.223964580411365e-01) * q - 2.400758277161838e+00) * q
+                    - 2.549732539343734e+00) * q + 4.374664141464968e+00) * q + 2.938163982698783e+00)
+                    / ((((7.784695709041462e-03 * q + 3.224671290700398e-01) * q + 2.445134137142996e+00) * q
+                    + 3.754408661907416e+00) * q + 1);
+        }
+        if (p > 1 - pLow) {
+            return -inverseNormal(1 - p);
+        }
+        final double q = p - 0.5;
+        final double r = q * q;
+        return (((((-3.969683028665376e+01 * r + 2.209460984245205e+02) * r - 2.759285104469687e+02) * r
+                + 1.383577518672690e+02) * r - 3.066479806614716e+01) * r + 2.506628277459239e+00) * q
+                / (((((-5.447609879822406e+01 * r + 1.615858368580409e+02) * r - 1.556989798598866e+02) * r
+                + 6.680131188771972e+01) * r - 1.328068155288572e+01) * r + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "DataSequence{" + "distribution=" + distribution + ", count=" + count + ", seed=" + seed
+                + ", width=" + width + '}';
+    }
+}
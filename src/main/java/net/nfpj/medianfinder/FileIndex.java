@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Summary of a file kept on a sidecar file ({@code <file>.mfidx}), so the
+ * following queries on the same file don't need to probe and sample it. It
+ * holds the blocks of the file with their count, minimum and maximum, the
+ * count and sum of all the numbers and a systematic sample of the numbers,
+ * taken on the first scan. The index is only valid for the size and modification time of
+ * the file it was built from, and for the same block size.
+ *
+ * @author njacinto
+ */
+public class FileIndex {
+
+    public static final String EXTENSION = ".mfidx";
+    public static final int SAMPLE_SIZE = 1 << 16;
+    //
+    private static final int MAGIC = 0x4d464958; // MFIX
+    private static final int VERSION = 1;
+
+    final long fileSize, lastModified, blockSize;
+    final long count, sum;
+    final long[] blockLimits, blockCount, blockMin, blockMax;
+    final long[] sample;
+
+    FileIndex(long fileSize, long lastModified, long blockSize, long count, long sum,
+            long[] blockLimits, long[] blockCount, long[] blockMin, long[] blockMax, long[] sample) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.blockSize = blockSize;
+        this.count = count;
+        this.sum = sum;
+        this.blockLimits = blockLimits;
+        this.blockCount = blockCount;
+        this.blockMin = blockMin;
+        this.blockMax = blockMax;
+        this.sample = sample;
+    }
+
+    public static File indexFile(File file) {
+        return new File(file.getPath() + EXTENSION);
+    }
+
+    /**
+     * Reads the index of the file.
+     *
+     * @return the index, or null if there's none or it doesn't match the
+     * file or the block size
+     */
+    public static FileIndex load(File file, long blockSize) {
+        final File idx = indexFile(file);
+        if (!idx.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            final long fileSize = in.readLong(), lastModified = in.readLong(), indexBlockSize = in.readLong();
+            if (fileSize != file.length() || lastModified != file.lastModified() || indexBlockSize != blockSize) {
+                return null;
+            }
+            final long count = in.readLong(), sum = in.readLong();
+            final int blocks = in.readInt();
+            if (blocks < 1) {
+                return null;
+            }
+            final long[] blockLimits = new long[blocks], blockCount = new long[blocks],
+                    blockMin = new long[blocks], blockMax = new long[blocks];
+            for (int i = 0; i < blocks; i++) {
+                blockLimits[i] = in.readLong();
+                blockCount[i] = in.readLong();
+                blockMin[i] = in.readLong();
+                blockMax[i] = in.readLong();
+            }
+            final long[] sample = new long[in.readInt()];
+            for (int i = 0; i < sample.length; i++) {
+                sample[i] = in.readLong();
+            }
+            return new FileIndex(fileSize, lastModified, blockSize, count, sum,
+                    blockLimits, blockCount, blockMin, blockMax, sample);
+        } catch (IOException | RuntimeException ex) {
+            // a damaged index is rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index next to the file. The index is optional, so it fails
+     * silently when the file cannot be written.
+     */
+    public void save(File file) {
+        final File idx = indexFile(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idx)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeLong(blockSize);
+            out.writeLong(count);
+            out.writeLong(sum);
+            out.writeInt(blockLimits.length);
+            for (int i = 0; i < blockLimits.length; i++) {
+                out.writeLong(blockLimits[i]);
+                out.writeLong(blockCount[i]);
+                out.writeLong(blockMin[i]);
+                out.writeLong(blockMax[i]);
+            }
+            out.writeInt(sample.length);
+            for (long num : sample) {
+                out.writeLong(num);
+            }
+        } catch (IOException ex) {
+            idx.delete();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the numbers at evenly spread ranks of the file, in the order of
+     * the file
+     */
+    public long[] getSample() {
+        return sample.clone();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the numbers of a file. A scanner is opened once per file and can be
+ * used for several scans, allowing the implementations to keep the resources
+ * (file handles, buffers, mappings) between the iterations of the strategies.
+ * A scanner is not thread safe, each thread must use its own.
+ *
+ * @author njacinto
+ */
+public interface FileScanner extends Closeable {
+
+    /**
+     * Reads the numbers between the two positions of the file.
+     *
+     * @param pos the position of the file where the scan starts
+     * @param limit the position of the file where the scan stops (exclusive)
+     * @param handler the handler that will receive the numbers
+     * @throws IOException
+     */
+    void scan(long pos, long limit, NumberHandler handler) throws IOException;
+
+    /**
+     * Finds the position where a block of the file ending close to the given
+     * position must end, so no number is split between two blocks.
+     *
+     * @param pos the position of the file
+     * @return the end of the block, at or after the position. The size of the
+     * file if the block cannot end before it.
+     * @throws IOException
+     */
+    long findEndOfBlock(long pos) throws IOException;
+
+    /**
+     * Reads the first number starting at, or after, the given position. Used
+     * to sample the file.
+     *
+     * @param pos the position of the file
+     * @return the number or Long.MIN_VALUE if there's no number after the
+     * position
+     * @throws IOException
+     */
+    long firstNumber(long pos) throws IOException;
+}
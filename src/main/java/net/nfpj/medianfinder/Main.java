@@ -20,6 +20,10 @@ package net.nfpj.medianfinder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 /**
  *
@@ -29,41 +33,132 @@ public class Main {
     public static final String PIVOT_BEST_OF = "bestOf";
     public static final String PIVOT_MEAN = "mean";
     public static final String PIVOT_MIDDLE = "middle";
+    public static final String ALGORITHM_PIVOT = "pivot";
+    public static final String ALGORITHM_HISTOGRAM = "histogram";
+    public static final String ALGORITHM_SPILL = "spill";
+    public static final String ALGORITHM_SKETCH = "sketch";
+    public static final String IO_READ = "read";
+    public static final String IO_MMAP = "mmap";
+    public static final String IO_ASYNC = "async";
+    public static final String IO_DIRECT = "direct";
+    public static final String FORMAT_TEXT = "text";
+    public static final String FORMAT_BINARY = "binary";
+    public static final String FORMAT_GZIP = "gzip";
+    public static final String FORMAT_DECIMAL = "decimal";
     public static final String CACHE_PROPERTY_NAME = "cache";
     public static final String MULTITHREAD_PROPERTY_NAME = "multithread";
     public static final String THREADS_PROPERTY_NAME = "thread";
     public static final String PIVOT_PROPERTY_NAME = "pivot";
     public static final String BESTOFSAMPLES_PROPERTY_NAME = "bestOfSamples";
     public static final String PRINTTIME_PROPERTY_NAME = "printTime";
+    public static final String IO_PROPERTY_NAME = "io";
+    public static final String ALGORITHM_PROPERTY_NAME = "algorithm";
+    public static final String MULTISET_PROPERTY_NAME = "multiset";
+    public static final String FORMAT_PROPERTY_NAME = "format";
+    public static final String MEMORYCACHE_PROPERTY_NAME = "memoryCache";
+    public static final String BLOCKSIZE_PROPERTY_NAME = "blockSize";
+    public static final String INDEX_PROPERTY_NAME = "index";
+    public static final String EXACT_PROPERTY_NAME = "exact";
+    public static final String WORKSTEALING_PROPERTY_NAME = "workStealing";
+    public static final String VIRTUALTHREADS_PROPERTY_NAME = "virtualThreads";
+    public static final String QUANTILES_PROPERTY_NAME = "quantiles";
+    public static final String COLUMNS_PROPERTY_NAME = "columns";
+    public static final String DELIMITER_PROPERTY_NAME = "delimiter";
+    public static final String HEADER_PROPERTY_NAME = "header";
+    public static final String DELIMITER_TAB = "tab";
     public static final int CACHE_DEFAULT_VALUE = 1024;
     public static final boolean MULTITHREAD_DEFAULT_VALUE = true;
     public static final boolean PRINTTIME_DEFAULT_VALUE = true;
     public static final int THREADS_DEFAULT_VALUE = 0;
     public static final String PIVOT_DEFAULT_VALUE = PIVOT_BEST_OF;
     public static final int BESTOFSAMPLES_DEFAULT_VALUE = 15;
+    public static final String IO_DEFAULT_VALUE = IO_READ;
+    public static final String ALGORITHM_DEFAULT_VALUE = ALGORITHM_PIVOT;
+    public static final boolean MULTISET_DEFAULT_VALUE = false;
+    public static final String FORMAT_DEFAULT_VALUE = FORMAT_TEXT;
+    public static final int MEMORYCACHE_DEFAULT_VALUE = 0;
+    public static final int BLOCKSIZE_DEFAULT_VALUE = (int) MedianFinderStrategyPivotWithCache.DEFAULT_BLOCK_SIZE;
+    public static final boolean INDEX_DEFAULT_VALUE = false;
+    public static final boolean EXACT_DEFAULT_VALUE = false;
+    public static final boolean WORKSTEALING_DEFAULT_VALUE = false;
+    public static final boolean VIRTUALTHREADS_DEFAULT_VALUE = false;
+    public static final String QUANTILES_DEFAULT_VALUE = "";
+    public static final String COLUMNS_DEFAULT_VALUE = "";
+    public static final String DELIMITER_DEFAULT_VALUE = ",";
+    public static final boolean HEADER_DEFAULT_VALUE = false;
+    public static final String STDIN_FILENAME = "-";
 
     /**
      * @param args the command line arguments
      */
     public static void main(String[] args) throws MedianFinderException, IOException {
         String filename;
-        if (args.length > 0 && (filename=args[0]) != null) {
+        if (args.length > 1) {
+            Configuration conf = getConfiguration();
+            if(conf!=null && findMedians(conf, args)){
+                return;
+            }
+        } else if (args.length > 0 && (filename=args[0]) != null) {
             File file = new File(filename);
-            if (file.isFile() && file.canRead()) {
+            if (STDIN_FILENAME.equals(filename)) {
                 Configuration conf = getConfiguration();
-                if(conf!=null){
-                    PivotSelectionStrategy pivotStrategy = getPivotStrategy(conf.pivot, conf.bestOfSamples);
-                    MedianFinderStrategy strategy = getStrategy(conf.cache,
-                            conf.multithread, conf.threads, pivotStrategy);
+                if(conf!=null && FORMAT_DECIMAL.equals(conf.format)){
+                    printError("The format '"+FORMAT_DECIMAL+"' can't be used with the standard input.");
+                } else if(conf!=null && conf.columns.length>0){
+                    printError("The property "+COLUMNS_PROPERTY_NAME+" can't be used with the standard input.");
+                } else if(conf!=null){
+                    // the stream is read only once, the other algorithms need to scan it again
+                    MedianFinderStrategyStream strategy = new MedianFinderStrategyStream(
+                            MedianFinderStrategyStream.DEFAULT_MAX_COLLECT_SIZE, FORMAT_BINARY.equals(conf.format), conf.multiset);
                     long timestamp = System.currentTimeMillis();
-                    long median = strategy.findMedian(file);
-                    //System.out.println(conf.toString());
+                    long median = strategy.findMedian(FORMAT_GZIP.equals(conf.format)
+                            ? new GZIPInputStream(System.in) : System.in);
+                    printResult(conf, timestamp, median);
+                    return;
+                }
+            } else if (file.isFile() && file.canRead()) {
+                Configuration conf = getConfiguration();
+                if(conf!=null && conf.columns.length>1){
+                    if(conf.quantiles.length>0){
+                        printError("The property "+QUANTILES_PROPERTY_NAME+" can't be used with several columns.");
+                        System.exit(1);
+                    }
+                    // the columns share the scans of the histograms
+                    MedianFinderStrategyHistogram strategy = new MedianFinderStrategyHistogram(
+                            MedianFinderStrategyHistogram.DEFAULT_MAX_COLLECT_SIZE, getScanStrategy(conf), conf.multiset);
+                    long timestamp = System.currentTimeMillis();
+                    long[] medians = strategy.findMedians(file);
                     if(conf.printTime){
                         System.out.println("time: " + (System.currentTimeMillis() - timestamp));
-                        System.out.println("Median: " + median);
-                    } else {
-                        System.out.println(median);
                     }
+                    for(int i=0; i<medians.length; i++){
+                        System.out.println((conf.columns[i] + 1) + " " + toString(conf, medians[i]));
+                    }
+                    return;
+                } else if(conf!=null){
+                    PivotSelectionStrategy pivotStrategy = getPivotStrategy(conf.pivot, conf.bestOfSamples);
+                    ScanStrategy scanStrategy = getScanStrategy(conf);
+                    MedianFinderStrategy strategy = getStrategy(conf.algorithm, conf.cache,
+                            conf.multithread, conf.threads, pivotStrategy, scanStrategy, conf.multiset, conf.blockSize, conf.index, conf.exact,
+                            conf.workStealing);
+                    long timestamp = System.currentTimeMillis();
+                    if(conf.quantiles.length>0){
+                        if(!(strategy instanceof MedianFinderStrategyPivotWithCache)){
+                            printError("The property "+QUANTILES_PROPERTY_NAME+" needs the algorithm '"+ALGORITHM_PIVOT+"' with a "+CACHE_PROPERTY_NAME+" bigger than one.");
+                            System.exit(1);
+                        }
+                        long[] values = ((MedianFinderStrategyPivotWithCache) strategy).findQuantiles(file, conf.quantiles);
+                        if(conf.printTime){
+                            System.out.println("time: " + (System.currentTimeMillis() - timestamp));
+                        }
+                        for(int i=0; i<values.length; i++){
+                            System.out.println(conf.quantiles[i] + " " + toString(conf, values[i]));
+                        }
+                        return;
+                    }
+                    long median = strategy.findMedian(file);
+                    //System.out.println(conf.toString());
+                    printResult(conf, timestamp, median);
                     return;
                 }
             } else {
@@ -75,6 +170,69 @@ public class Main {
         System.exit(1);
     }
 
+    /**
+     * Finds the medians of the files on a shared pool, printing the file and
+     * median of each.
+     * @return true if all the medians were found
+     */
+    private static boolean findMedians(Configuration conf, String[] filenames) {
+        if(conf.quantiles.length>0){
+            printError("The property "+QUANTILES_PROPERTY_NAME+" can't be used with several files.");
+            return false;
+        }
+        if(conf.columns.length>1){
+            printError("Several "+COLUMNS_PROPERTY_NAME+" can't be used with several files.");
+            return false;
+        }
+        List<File> files = new ArrayList<>(filenames.length);
+        for(String filename : filenames){
+            if(STDIN_FILENAME.equals(filename)){
+                printError("The standard input can't be used with several files.");
+                return false;
+            }
+            files.add(new File(filename));
+        }
+        PivotSelectionStrategy pivotStrategy = getPivotStrategy(conf.pivot, conf.bestOfSamples);
+        ScanStrategy scanStrategy = getScanStrategy(conf);
+        MedianFinderStrategy strategy = getStrategy(conf.algorithm, conf.cache,
+                conf.multithread, conf.threads, pivotStrategy, scanStrategy, conf.multiset, conf.blockSize, conf.index, conf.exact,
+                conf.workStealing);
+        long timestamp = System.currentTimeMillis();
+        boolean found = true;
+        try (MedianFinderBatch batch = new MedianFinderBatch(conf.multithread ? conf.threads : 1,
+                MedianFinderBatch.DEFAULT_SPLIT_SIZE, strategy, conf.virtualThreads)) {
+            for(MedianFinderBatch.Result result : batch.findMedians(files)){
+                if(result.isFound()){
+                    System.out.println(result.getFile() + " " + toString(conf, result.getMedian()));
+                } else {
+                    System.err.println(result.getFile() + " " + result.getError());
+                    found = false;
+                }
+            }
+        }
+        if(conf.printTime){
+            System.out.println("time: " + (System.currentTimeMillis() - timestamp));
+        }
+        return found;
+    }
+
+    private static void printResult(Configuration conf, long timestamp, long median) {
+        if(conf.printTime){
+            System.out.println("time: " + (System.currentTimeMillis() - timestamp));
+            System.out.println("Median: " + toString(conf, median));
+        } else {
+            System.out.println(toString(conf, median));
+        }
+    }
+
+    /**
+     * @return the number found, decoded when the file has decimal numbers
+     */
+    private static String toString(Configuration conf, long value) {
+        return FORMAT_DECIMAL.equals(conf.format) ? Double.toString(NumberUtil.fromSortableLong(value))
+                : Long.toString(value);
+    }
+
     private static Configuration getConfiguration() {
         try {
             Configuration conf = new Configuration();
@@ -84,11 +242,50 @@ public class Main {
             conf.pivot = System.getProperty(PIVOT_PROPERTY_NAME, PIVOT_DEFAULT_VALUE);
             conf.bestOfSamples = PropertiesUtil.get(BESTOFSAMPLES_PROPERTY_NAME, BESTOFSAMPLES_DEFAULT_VALUE);
             conf.printTime = PropertiesUtil.get(PRINTTIME_PROPERTY_NAME, PRINTTIME_DEFAULT_VALUE);
+            conf.io = System.getProperty(IO_PROPERTY_NAME, IO_DEFAULT_VALUE);
+            conf.algorithm = System.getProperty(ALGORITHM_PROPERTY_NAME, ALGORITHM_DEFAULT_VALUE);
+            conf.multiset = PropertiesUtil.get(MULTISET_PROPERTY_NAME, MULTISET_DEFAULT_VALUE);
+            conf.format = System.getProperty(FORMAT_PROPERTY_NAME, FORMAT_DEFAULT_VALUE);
+            conf.memoryCache = PropertiesUtil.get(MEMORYCACHE_PROPERTY_NAME, MEMORYCACHE_DEFAULT_VALUE);
+            conf.blockSize = PropertiesUtil.get(BLOCKSIZE_PROPERTY_NAME, BLOCKSIZE_DEFAULT_VALUE);
+            conf.index = PropertiesUtil.get(INDEX_PROPERTY_NAME, INDEX_DEFAULT_VALUE);
+            conf.exact = PropertiesUtil.get(EXACT_PROPERTY_NAME, EXACT_DEFAULT_VALUE);
+            conf.workStealing = PropertiesUtil.get(WORKSTEALING_PROPERTY_NAME, WORKSTEALING_DEFAULT_VALUE);
+            conf.virtualThreads = PropertiesUtil.get(VIRTUALTHREADS_PROPERTY_NAME, VIRTUALTHREADS_DEFAULT_VALUE);
+            conf.quantiles = getQuantiles(System.getProperty(QUANTILES_PROPERTY_NAME, QUANTILES_DEFAULT_VALUE));
+            conf.columns = getColumns(System.getProperty(COLUMNS_PROPERTY_NAME, COLUMNS_DEFAULT_VALUE));
+            conf.delimiter = getDelimiter(System.getProperty(DELIMITER_PROPERTY_NAME, DELIMITER_DEFAULT_VALUE));
+            conf.header = PropertiesUtil.get(HEADER_PROPERTY_NAME, HEADER_DEFAULT_VALUE);
+            if(conf.columns==null){
+                printError("Invalid "+COLUMNS_PROPERTY_NAME+" value "+System.getProperty(COLUMNS_PROPERTY_NAME)+
+                        ". Must be a list of different column numbers, from one, separated by commas.");
+                return null;
+            }
+            if(conf.delimiter==Constants.EOL){
+                printError("Invalid "+DELIMITER_PROPERTY_NAME+" value "+System.getProperty(DELIMITER_PROPERTY_NAME)+
+                        ". Must be '"+DELIMITER_TAB+"' or a single character.");
+                return null;
+            }
+            if(conf.quantiles==null){
+                printError("Invalid "+QUANTILES_PROPERTY_NAME+" value "+System.getProperty(QUANTILES_PROPERTY_NAME)+
+                        ". Must be a list of numbers between zero and one separated by commas.");
+                return null;
+            }
             if(conf.cache<1){
                 printError("Invalid "+CACHE_PROPERTY_NAME+" value "+conf.cache+
                         ". Cache size must be bigger than one.");
                 return null;
             }
+            if(conf.memoryCache<0){
+                printError("Invalid "+MEMORYCACHE_PROPERTY_NAME+" value "+conf.memoryCache+
+                        ". Memory cache size must be bigger or equal to zero.");
+                return null;
+            }
+            if(conf.blockSize<0){
+                printError("Invalid "+BLOCKSIZE_PROPERTY_NAME+" value "+conf.blockSize+
+                        ". Block size must be bigger or equal to zero.");
+                return null;
+            }
             if(conf.multithread){
                 if(conf.threads<0){
                     printError("Invalid "+THREADS_PROPERTY_NAME+" value "+conf.threads+
@@ -110,15 +307,48 @@ public class Main {
                     printError("Invalid Pivot strategy: "+conf.pivot);
                     return null;
             }
+            switch(conf.io){
+                case IO_READ: case IO_MMAP: case IO_ASYNC: case IO_DIRECT:
+                    break;
+                default:
+                    printError("Invalid IO mode: "+conf.io);
+                    return null;
+            }
+            switch(conf.algorithm){
+                case ALGORITHM_PIVOT: case ALGORITHM_HISTOGRAM: case ALGORITHM_SPILL: case ALGORITHM_SKETCH:
+                    break;
+                default:
+                    printError("Invalid algorithm: "+conf.algorithm);
+                    return null;
+            }
+            switch(conf.format){
+                case FORMAT_TEXT: case FORMAT_BINARY: case FORMAT_GZIP: case FORMAT_DECIMAL:
+                    break;
+                default:
+                    printError("Invalid format: "+conf.format);
+                    return null;
+            }
+            if(conf.columns.length>0 && !FORMAT_TEXT.equals(conf.format) && !FORMAT_DECIMAL.equals(conf.format)){
+                printError("The property "+COLUMNS_PROPERTY_NAME+" needs the format '"+FORMAT_TEXT+"' or '"+FORMAT_DECIMAL+"'.");
+                return null;
+            }
             return conf;
         } catch(InvalidPropertyValueException ex){
             switch(ex.getProperty()){
                 case THREADS_PROPERTY_NAME:
                 case CACHE_PROPERTY_NAME:
                 case BESTOFSAMPLES_PROPERTY_NAME:
+                case MEMORYCACHE_PROPERTY_NAME:
+                case BLOCKSIZE_PROPERTY_NAME:
                     printError("The value in property '"+ex.getProperty()+"' must be numeric.");
                     break;
                 case MULTITHREAD_PROPERTY_NAME:
+                case MULTISET_PROPERTY_NAME:
+                case INDEX_PROPERTY_NAME:
+                case EXACT_PROPERTY_NAME:
+                case WORKSTEALING_PROPERTY_NAME:
+                case VIRTUALTHREADS_PROPERTY_NAME:
+                case HEADER_PROPERTY_NAME:
                     printError("The value in property '"+ex.getProperty()+"' must be 'true' or 'false'.");
                     break;
                 default:
@@ -127,6 +357,64 @@ public class Main {
         }
         return null;
     }
+    /**
+     * @return the quantiles on the comma separated list, or null if invalid
+     */
+    private static double[] getQuantiles(String list) {
+        if(list.trim().isEmpty()){
+            return new double[0];
+        }
+        String[] values = list.split(",");
+        double[] quantiles = new double[values.length];
+        try {
+            for(int i=0; i<values.length; i++){
+                quantiles[i] = Double.parseDouble(values[i].trim());
+                if(!(quantiles[i]>=0 && quantiles[i]<=1)){
+                    return null;
+                }
+            }
+        } catch(NumberFormatException ex){
+            return null;
+        }
+        return quantiles;
+    }
+    /**
+     * @return the columns on the comma separated list, from zero, or null if
+     * invalid
+     */
+    private static int[] getColumns(String list) {
+        if(list.trim().isEmpty()){
+            return new int[0];
+        }
+        String[] values = list.split(",");
+        int[] columns = new int[values.length];
+        try {
+            for(int i=0; i<values.length; i++){
+                // numbered from one on the command line, as by cut
+                columns[i] = Integer.parseInt(values[i].trim()) - 1;
+                if(columns[i]<0){
+                    return null;
+                }
+                for(int j=0; j<i; j++){
+                    if(columns[j]==columns[i]){
+                        return null;
+                    }
+                }
+            }
+        } catch(NumberFormatException ex){
+            return null;
+        }
+        return columns;
+    }
+    /**
+     * @return the delimiter, or the end of line if invalid
+     */
+    private static byte getDelimiter(String value) {
+        if(DELIMITER_TAB.equals(value)){
+            return ScanStrategyDelimited.TAB;
+        }
+        return (value.length()==1 && value.charAt(0)<128) ? (byte) value.charAt(0) : Constants.EOL;
+    }
     private static PivotSelectionStrategy getPivotStrategy(String pivot, int bestOfSamples) {
         switch(pivot){
             case PIVOT_BEST_OF:
@@ -139,14 +427,66 @@ public class Main {
                 return new PivotSelectionStrategyBestOfN(BESTOFSAMPLES_DEFAULT_VALUE);
         }
     }
-    private static MedianFinderStrategy getStrategy(int cache, boolean multithread,
-            int threads, PivotSelectionStrategy pivotStrategy) {
-        if(multithread && threads!=1){
-            return new MedianFinderStrategyPivotWithCacheMultiThreaded(cache, threads, pivotStrategy);
+    private static ScanStrategy getScanStrategy(Configuration conf) {
+        if(conf.columns.length>0){
+            ScanStrategy scanStrategy = new ScanStrategyDelimited(conf.delimiter, conf.header,
+                    FORMAT_DECIMAL.equals(conf.format), conf.columns);
+            // the cache keeps a single column, the first
+            return (conf.memoryCache>0 && conf.columns.length==1)
+                    ? new ScanStrategyCached(scanStrategy, ((long) conf.memoryCache) << 20) : scanStrategy;
+        }
+        return getScanStrategy(conf.format, conf.io, conf.memoryCache);
+    }
+    private static ScanStrategy getScanStrategy(String format, String io, int memoryCache) {
+        if(FORMAT_BINARY.equals(format)){
+            return ScanStrategyBinary.INSTANCE;
+        }
+        ScanStrategy scanStrategy;
+        if(FORMAT_GZIP.equals(format)){
+            // the members are decoded again on the scans not kept in memory
+            scanStrategy = ScanStrategyGzip.INSTANCE;
+        } else if(FORMAT_DECIMAL.equals(format)){
+            scanStrategy = ScanStrategyDecimal.INSTANCE;
+        } else {
+            switch(io){
+                case IO_MMAP:
+                    scanStrategy = ScanStrategyMemoryMapped.INSTANCE;
+                    break;
+                case IO_ASYNC:
+                    scanStrategy = ScanStrategyAsync.INSTANCE;
+                    break;
+                case IO_DIRECT:
+                    scanStrategy = ScanStrategyDirect.INSTANCE;
+                    break;
+                case IO_READ:
+                default:
+                    scanStrategy = ScanStrategyRead.INSTANCE;
+            }
+        }
+        return (memoryCache>0) ? new ScanStrategyCached(scanStrategy, ((long) memoryCache) << 20) : scanStrategy;
+    }
+    private static MedianFinderStrategy getStrategy(String algorithm, int cache, boolean multithread,
+            int threads, PivotSelectionStrategy pivotStrategy, ScanStrategy scanStrategy, boolean multiset,
+            int blockSize, boolean index, boolean exact, boolean workStealing) {
+        if(ALGORITHM_HISTOGRAM.equals(algorithm)){
+            return new MedianFinderStrategyHistogram(MedianFinderStrategyHistogram.DEFAULT_MAX_COLLECT_SIZE,
+                    scanStrategy, multiset);
+        } else if(ALGORITHM_SPILL.equals(algorithm)){
+            return new MedianFinderStrategySpill(MedianFinderStrategySpill.DEFAULT_MAX_COLLECT_SIZE,
+                    scanStrategy, multiset);
+        } else if(ALGORITHM_SKETCH.equals(algorithm)){
+            return new MedianFinderStrategySketch(QuantileSketch.DEFAULT_K, multithread ? threads : 1,
+                    scanStrategy, exact, multiset);
+        } else if(multithread && workStealing){
+            return new MedianFinderStrategyPivotWithCacheWorkStealing(cache, threads, pivotStrategy, scanStrategy,
+                    multiset, blockSize, index);
+        } else if(multithread && threads!=1){
+            return new MedianFinderStrategyPivotWithCacheMultiThreaded(cache, threads, pivotStrategy, scanStrategy,
+                    multiset, blockSize, index);
         } else {
             return (cache>1) ?
-                    new MedianFinderStrategyPivotWithCache(cache, pivotStrategy) :
-                    new MedianFinderStrategyPivotWithSingleBeforeAfter(pivotStrategy);
+                    new MedianFinderStrategyPivotWithCache(cache, pivotStrategy, scanStrategy, multiset, blockSize, index) :
+                    new MedianFinderStrategyPivotWithSingleBeforeAfter(pivotStrategy, multiset);
         }
     }
 
@@ -157,6 +497,23 @@ public class Main {
                 +" -D"+PIVOT_PROPERTY_NAME+"="+PIVOT_DEFAULT_VALUE
                 +" -D"+BESTOFSAMPLES_PROPERTY_NAME+"="+BESTOFSAMPLES_DEFAULT_VALUE
                 +" -D"+PRINTTIME_PROPERTY_NAME+"="+PRINTTIME_DEFAULT_VALUE
+                +" -D"+IO_PROPERTY_NAME+"="+IO_DEFAULT_VALUE
+                +" -D"+ALGORITHM_PROPERTY_NAME+"="+ALGORITHM_DEFAULT_VALUE
+                +" -D"+MULTISET_PROPERTY_NAME+"="+MULTISET_DEFAULT_VALUE
+                +" -D"+FORMAT_PROPERTY_NAME+"="+FORMAT_DEFAULT_VALUE
+                +" -D"+MEMORYCACHE_PROPERTY_NAME+"="+MEMORYCACHE_DEFAULT_VALUE
+                +" -D"+BLOCKSIZE_PROPERTY_NAME+"="+BLOCKSIZE_DEFAULT_VALUE
+                +" -D"+INDEX_PROPERTY_NAME+"="+INDEX_DEFAULT_VALUE
+                +" -D"+EXACT_PROPERTY_NAME+"="+EXACT_DEFAULT_VALUE
+                +" -D"+WORKSTEALING_PROPERTY_NAME+"="+WORKSTEALING_DEFAULT_VALUE
+                +" -D"+VIRTUALTHREADS_PROPERTY_NAME+"="+VIRTUALTHREADS_DEFAULT_VALUE
+                +" -D"+QUANTILES_PROPERTY_NAME+"=0.5,0.9,0.99"
+                +" -D"+COLUMNS_PROPERTY_NAME+"=2,4"
+                +" -D"+DELIMITER_PROPERTY_NAME+"="+DELIMITER_DEFAULT_VALUE
+                +" -D"+HEADER_PROPERTY_NAME+"="+HEADER_DEFAULT_VALUE
+                +" <file> [<file>...]"
+                +"\n\tUse '"+STDIN_FILENAME+"' as the file to read the numbers from the standard input. The input is read only once, keeping the numbers in memory or on a temporary file, and only the properties "+FORMAT_PROPERTY_NAME+", "+MULTISET_PROPERTY_NAME+" and "+PRINTTIME_PROPERTY_NAME+" are used."
+                +"\n\tWith several files, their medians are found on a shared pool of threads and each is printed after the name of the file. The property "+QUANTILES_PROPERTY_NAME+" isn't used."
                 +"\n\tProperties:"
                 +"\n\t\t"+CACHE_PROPERTY_NAME+" - size of the memory cache. In case of multithreading the cache will be multiplied by the number of threads. The defualt is "+CACHE_DEFAULT_VALUE+"."
                 +"\n\t\t"+MULTITHREAD_PROPERTY_NAME+" - true to use multithread, false otherwise. The default is "+MULTITHREAD_DEFAULT_VALUE+"."
@@ -168,6 +525,37 @@ public class Main {
                 +"\n\t\t     The default vaule is "+PIVOT_DEFAULT_VALUE+"."
                 +"\n\t\t"+BESTOFSAMPLES_PROPERTY_NAME+" - sets the number of samples to be fetch, when using the pivot strategy 'bestOf'. The default is "+BESTOFSAMPLES_DEFAULT_VALUE+"."
                 +"\n\t\t"+PRINTTIME_PROPERTY_NAME+" - prints the execution time. The default is "+PRINTTIME_DEFAULT_VALUE+"."
+                +"\n\t\t"+IO_PROPERTY_NAME+" - how the file is read. The options are:"
+                +"\n\t\t       - 'read' will read the file into a small buffer on each scan."
+                +"\n\t\t       - 'mmap' will map the file in memory and scan the mapping, without copies."
+                +"\n\t\t       - 'async' will read the next part of the file while parsing the previous, for files out of the page cache."
+                +"\n\t\t       - 'direct' will read the file with direct I/O, without going through the page cache, for files much bigger than the memory. Leave "+MEMORYCACHE_PROPERTY_NAME+" at zero to keep the memory used small."
+                +"\n\t\t     The default vaule is "+IO_DEFAULT_VALUE+"."
+                +"\n\t\t"+ALGORITHM_PROPERTY_NAME+" - algorithm used to find the median. The options are:"
+                +"\n\t\t       - 'pivot' will move a pivot until it reaches the median, scanning the file once per move."
+                +"\n\t\t       - 'histogram' will narrow the range of the median with histograms. Needs two scans when the numbers around the median fit in memory, at most five."
+                +"\n\t\t       - 'spill' will write the numbers close to the median to a temporary file on each scan, so only the first scan reads the whole file."
+                +"\n\t\t       - 'sketch' will estimate the median with a quantile sketch on a single scan, within "+String.format("%.2f", 100 * QuantileSketch.getRankError(QuantileSketch.DEFAULT_K))+"% of the ranks of the median with 99% confidence. See "+EXACT_PROPERTY_NAME+"."
+                +"\n\t\t         The properties "+CACHE_PROPERTY_NAME+", "+MULTITHREAD_PROPERTY_NAME+", "+THREADS_PROPERTY_NAME+" and "+PIVOT_PROPERTY_NAME+" are not used by 'histogram' and 'spill'. Only "+MULTITHREAD_PROPERTY_NAME+" and "+THREADS_PROPERTY_NAME+" are used by 'sketch'."
+                +"\n\t\t     The default vaule is "+ALGORITHM_DEFAULT_VALUE+"."
+                +"\n\t\t"+MULTISET_PROPERTY_NAME+" - true to accept repeated numbers, false to fail when the median is repeated. The default is "+MULTISET_DEFAULT_VALUE+"."
+                +"\n\t\t"+FORMAT_PROPERTY_NAME+" - format of the file. The options are:"
+                +"\n\t\t       - 'text' one number per line."
+                +"\n\t\t       - 'binary' little endian 64 bit numbers, always memory mapped. Text files can be converted with:"
+                +"\n\t\t         java -cp MedianFinder-1.0.jar net.nfpj.medianfinder.DataFileGenerator "+DataFileGenerator.TO_BINARY+" <text file> <binary file>"
+                +"\n\t\t       - 'gzip' text compressed with gzip. The files with several members, e.g. written by bgzip, are decoded in parallel. The property "+IO_PROPERTY_NAME+" is not used."
+                +"\n\t\t       - 'decimal' one decimal number per line, with an optional fraction and exponent, e.g. 12.5 or 1.5e-4. The property "+IO_PROPERTY_NAME+" is not used."
+                +"\n\t\t     The default vaule is "+FORMAT_DEFAULT_VALUE+"."
+                +"\n\t\t"+MEMORYCACHE_PROPERTY_NAME+" - megabytes of memory used to keep the numbers parsed on the first scan of a text file, so the following scans don't read the file again, e.g. "+(ScanStrategyCached.DEFAULT_MAX_MEMORY >> 20)+". Zero to read the file on every scan. The default is "+MEMORYCACHE_DEFAULT_VALUE+"."
+                +"\n\t\t"+BLOCKSIZE_PROPERTY_NAME+" - size in bytes of the blocks with the minimum and maximum recorded on the first scan, used by the 'pivot' algorithm to skip the blocks with all the numbers on one side of the pivot. Zero to read the whole file on every scan. The default is "+BLOCKSIZE_DEFAULT_VALUE+"."
+                +"\n\t\t"+INDEX_PROPERTY_NAME+" - true to keep the blocks and a sample of the file on a '"+FileIndex.EXTENSION+"' file next to it, used by the 'pivot' algorithm on the following queries of the same file. The default is "+INDEX_DEFAULT_VALUE+"."
+                +"\n\t\t"+EXACT_PROPERTY_NAME+" - true to find the exact median with the 'sketch' algorithm, with a second scan of the numbers around the estimate. The default is "+EXACT_DEFAULT_VALUE+"."
+                +"\n\t\t"+WORKSTEALING_PROPERTY_NAME+" - true to split the file on blocks of "+BLOCKSIZE_PROPERTY_NAME+" bytes taken by the threads as they finish the previous, instead of a partition per thread. Used by the 'pivot' algorithm with "+MULTITHREAD_PROPERTY_NAME+". The default is "+WORKSTEALING_DEFAULT_VALUE+"."
+                +"\n\t\t"+VIRTUALTHREADS_PROPERTY_NAME+" - true to find the medians of several files each on its own virtual thread, with at most "+THREADS_PROPERTY_NAME+" scans running at the same time. Needs Java 21 or later, "+(VirtualThreadExecutor.isAvailable() ? "available" : "not available")+" on this version. The default is "+VIRTUALTHREADS_DEFAULT_VALUE+"."
+                +"\n\t\t"+QUANTILES_PROPERTY_NAME+" - comma separated quantiles, between zero and one, to find instead of the median, all with the same scans. Prints one line per quantile with the quantile and its number, the one on the rank ceil(quantile * count) - 1. Needs the 'pivot' algorithm. Not set by default."
+                +"\n\t\t"+COLUMNS_PROPERTY_NAME+" - comma separated columns, from one, of a delimited file, e.g. a CSV file, with the numbers to use. The empty fields are ignored, and so are the spaces and quotes around the numbers. With one column any algorithm can be used; with several, the median of each is found with the 'histogram' algorithm, all with the same scans, and printed after the column. Needs the format 'text' or 'decimal'. Not set by default."
+                +"\n\t\t"+DELIMITER_PROPERTY_NAME+" - delimiter of the fields, a single character or '"+DELIMITER_TAB+"'. Used with "+COLUMNS_PROPERTY_NAME+". The default is "+DELIMITER_DEFAULT_VALUE+"."
+                +"\n\t\t"+HEADER_PROPERTY_NAME+" - true to ignore the first line of the file. Used with "+COLUMNS_PROPERTY_NAME+". The default is "+HEADER_DEFAULT_VALUE+"."
         );
         System.out.println();
     }
@@ -186,12 +574,27 @@ public class Main {
         public String pivot;
         public int bestOfSamples;
         public boolean printTime;
+        public String io;
+        public String algorithm;
+        public boolean multiset;
+        public String format;
+        public int memoryCache;
+        public int blockSize;
+        public boolean index;
+        public boolean exact;
+        public boolean workStealing;
+        public boolean virtualThreads;
+        public double[] quantiles;
+        public int[] columns;
+        public byte delimiter;
+        public boolean header;
 
         @Override
         public String toString() {
             return "Configuration{" + "cache=" + cache + ", multithread=" + multithread +
                     ", threads=" + threads + ", pivot=" + pivot + ", bestOfSamples=" + bestOfSamples +
-                    ", printTime=" + printTime + '}';
+                    ", printTime=" + printTime + ", io=" + io + ", algorithm=" + algorithm +
+                    ", multiset=" + multiset + ", format=" + format + ", memoryCache=" + memoryCache + ", blockSize=" + blockSize + ", index=" + index + ", exact=" + exact + ", workStealing=" + workStealing + ", virtualThreads=" + virtualThreads + ", quantiles=" + Arrays.toString(quantiles) + ", columns=" + Arrays.toString(columns) + ", delimiter=" + delimiter + ", header=" + header + '}';
         }
     }
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Phaser;
+
+/**
+ * A long lived {@link MedianFinderStrategyPivotWithCacheMultiThreaded}, for
+ * services finding medians at high rates. The engine owns its worker threads,
+ * started once and synchronized on each scan by a {@link Phaser} instead of
+ * submitting tasks, and keeps the partitions, their caches, the merged caches
+ * and the samples between queries. The scanners, with their file handles and
+ * read buffers, are kept open while the following queries are on the same
+ * file, unchanged.
+ * <p>
+ * One query runs at a time, the others wait. The engine must be closed to
+ * release the threads and the file handles.
+ *
+ * @author njacinto
+ */
+public class MedianEngine extends MedianFinderStrategyPivotWithCacheMultiThreaded implements Closeable {
+
+    private final Phaser phaser;
+    private final Thread[] workers;
+    // the partitions of each target scanned on the round, for each partition
+    // of the file
+    private final Data[][] open;
+    private final int[] openLen;
+    private final Throwable[] errors;
+    private final FileScanner[] scanners;
+    private File scannedFile;
+    private long scannedLength, scannedModified;
+    private int numPartitions;
+    // pooled between queries, by target and partition
+    private final ArrayList<Data[]> dataPool = new ArrayList<>();
+    private final ArrayList<Merged> mergedPool = new ArrayList<>();
+    private final long[][] samplePool;
+    private volatile boolean closed = false;
+
+    public MedianEngine() {
+        this(DEFAULT_NUMBERS_CACHE_SIZE, 0, new PivotSelectionStrategyBestOfN(15), ScanStrategyRead.INSTANCE,
+                false, DEFAULT_BLOCK_SIZE, false);
+    }
+
+    public MedianEngine(int numberOfThreads) {
+        this(DEFAULT_NUMBERS_CACHE_SIZE, numberOfThreads, new PivotSelectionStrategyBestOfN(15),
+                ScanStrategyRead.INSTANCE, false, DEFAULT_BLOCK_SIZE, false);
+    }
+
+    /**
+     *
+     * @param numbersCacheSize the number of numbers kept before and after the
+     * pivot, on each partition
+     * @param numberOfThreads the number of partitions scanned in parallel,
+     * one of them by the thread of the query. Zero to use the number of
+     * processors.
+     * @param pivotSelection the strategy used to find the initial pivot
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers
+     * @param blockSize the size of the blocks with the minimum and maximum
+     * recorded on the first scan
+     * @param useIndex true to keep the blocks and a sample of the file on a
+     * {@link FileIndex}
+     */
+    public MedianEngine(int numbersCacheSize, int numberOfThreads, PivotSelectionStrategy pivotSelection,
+            ScanStrategy scanStrategy, boolean allowDuplicates, long blockSize, boolean useIndex) {
+        super(numbersCacheSize, numberOfThreads, pivotSelection, scanStrategy, allowDuplicates, blockSize, useIndex);
+        this.phaser = new Phaser(numThreads);
+        this.open = new Data[numThreads][1];
+        this.openLen = new int[numThreads];
+        this.errors = new Throwable[numThreads];
+        this.scanners = new FileScanner[numThreads];
+        this.samplePool = new long[numThreads + 1][];
+        this.workers = new Thread[numThreads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            final int idx = i + 1;
+            workers[i] = new Thread(() -> work(idx), "MedianEngine-" + idx);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    protected synchronized long[] find(File file, Target[] targets) throws MedianFinderException, IOException {
+        if (closed) {
+            throw new IllegalStateException("The engine is closed.");
+        }
+        final FileIndex index = useIndex ? FileIndex.load(file, blockSize) : null;
+        final int partitions = partitions(file, index);
+        boolean done = false;
+        try {
+            open(file, partitions);
+            final long pivot = pivotSelection.getPivot(file, scanners[0], index);
+            final Data[] dataList = split(file, scanners[0], index, partitions, targets, pivot);
+            for (int i = 0; i < partitions; i++) {
+                open[i][0] = dataList[i];
+                openLen[i] = 1;
+            }
+            run(partitions);
+            if (useIndex && index == null) {
+                createIndex(file, dataList).save(file);
+            }
+            start(targets, dataList, index);
+            //
+            int len;
+            do {
+                len = 0;
+                for (int i = 0; i < partitions; i++) {
+                    if (open[i].length < targets.length) {
+                        open[i] = new Data[targets.length];
+                    }
+                    openLen[i] = 0;
+                    for (Target target : targets) {
+                        if (!target.found && target.data[i].check) {
+                            target.data[i].clearCounters(target.pivot);
+                            open[i][openLen[i]++] = target.data[i];
+                        }
+                    }
+                }
+                run(partitions);
+                for (Target target : targets) {
+                    if (!target.found) {
+                        next(target);
+                        len++;
+                    }
+                }
+            } while (len > 0);
+            done = true;
+        } finally {
+            for (Data[] list : open) {
+                Arrays.fill(list, null);
+            }
+            if (!done) {
+                // a scan stopped halfway may leave the scanners inconsistent
+                closeScanners();
+            }
+        }
+        return Target.values(targets);
+    }
+
+    /**
+     * Opens the scanners of the partitions, unless they are open on the same
+     * file and it didn't change.
+     */
+    private void open(File file, int partitions) throws IOException {
+        if (scanners[0] != null && !(file.equals(scannedFile) && file.length() == scannedLength
+                && file.lastModified() == scannedModified)) {
+            closeScanners();
+        }
+        scannedFile = file;
+        scannedLength = file.length();
+        scannedModified = file.lastModified();
+        for (int i = 0; i < partitions; i++) {
+            if (scanners[i] == null) {
+                scanners[i] = scanStrategy.open(file);
+            }
+        }
+    }
+
+    /**
+     * Scans the open partitions, the first on the calling thread and the
+     * others on the workers, throwing the first error.
+     */
+    private void run(int partitions) throws IOException {
+        numPartitions = partitions;
+        phaser.arriveAndAwaitAdvance();
+        scan(0);
+        phaser.arriveAndAwaitAdvance();
+        for (int i = 0; i < errors.length; i++) {
+            final Throwable error = errors[i];
+            if (error != null) {
+                Arrays.fill(errors, null);
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                } else if (error instanceof RuntimeException) {
+                    throw (RuntimeException) error;
+                } else if (error instanceof Error) {
+                    throw (Error) error;
+                }
+                throw new RuntimeException(error);
+            }
+        }
+    }
+
+    private void scan(int idx) {
+        try {
+            if (idx < numPartitions && openLen[idx] > 0) {
+                Data.scan(scanners[idx], open[idx], openLen[idx]);
+            }
+        } catch (Throwable ex) {
+            errors[idx] = ex;
+        }
+    }
+
+    /**
+     * The loop of a worker, scanning its partition on each round until the
+     * engine is closed.
+     */
+    private void work(int idx) {
+        while (true) {
+            phaser.arriveAndAwaitAdvance();
+            if (closed) {
+                phaser.arriveAndDeregister();
+                return;
+            }
+            scan(idx);
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    @Override
+    protected Data newData(int target, int partition, long pos, long limit) {
+        while (dataPool.size() <= target) {
+            dataPool.add(new Data[numThreads]);
+        }
+        final Data[] list = dataPool.get(target);
+        if (list[partition] == null) {
+            list[partition] = new Data(pos, limit, numbersCacheSize);
+        } else {
+            list[partition].reset(pos, limit);
+        }
+        return list[partition];
+    }
+
+    @Override
+    protected Merged newMerged(int target, int partitions) {
+        while (mergedPool.size() <= target) {
+            mergedPool.add(null);
+        }
+        Merged merged = mergedPool.get(target);
+        if (merged == null || merged.left.length < numbersCacheSize * partitions) {
+            merged = new Merged(numbersCacheSize * numThreads);
+            mergedPool.set(target, merged);
+        }
+        return merged;
+    }
+
+    @Override
+    protected long[] newSample(int partition, int size) {
+        if (samplePool[partition] == null || samplePool[partition].length < size) {
+            samplePool[partition] = new long[size];
+        }
+        return samplePool[partition];
+    }
+
+    private void closeScanners() {
+        for (int i = 0; i < scanners.length; i++) {
+            if (scanners[i] != null) {
+                try {
+                    scanners[i].close();
+                } catch (IOException ex) {
+                    // nothing else to do, the next query opens a new one
+                }
+                scanners[i] = null;
+            }
+        }
+        scannedFile = null;
+    }
+
+    /**
+     * Stops the worker threads and closes the files. Waits for the query
+     * running.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        phaser.arriveAndDeregister();
+        closeScanners();
+        dataPool.clear();
+        mergedPool.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "MedianEngine{" + "numThreads=" + numThreads + ", scanStrategy=" + scanStrategy
+                + ", allowDuplicates=" + allowDuplicates + ", blockSize=" + blockSize + ", useIndex=" + useIndex
+                + ", closed=" + closed + '}';
+    }
+}
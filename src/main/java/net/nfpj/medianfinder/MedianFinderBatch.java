@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the medians of several files on one pool of threads, shared by all
+ * the files of all the batches until closed. The files smaller than the split
+ * size are scanned by a single task each, the bigger ones are split on
+ * partitions scanned in parallel on the same pool. The biggest files start
+ * first, so the small ones fill the threads left free at the end.
+ * <p>
+ * The pool is a {@link ForkJoinPool}, so the tasks of the big files waiting
+ * for their partitions run other tasks instead of blocking the thread. With
+ * virtual threads, each file gets its own virtual thread and the scans run on
+ * a {@link VirtualThreadExecutor}, so the big files wait for their partitions
+ * on a virtual thread and only the scans are limited to the number of
+ * threads.
+ *
+ * @author njacinto
+ */
+public class MedianFinderBatch implements Closeable {
+
+    public static final long DEFAULT_SPLIT_SIZE = 64L << 20;
+    //
+    private final ExecutorService pool;
+    // runs the files split on partitions, which wait for them
+    private final ExecutorService requests;
+    private final int numThreads;
+    private final long splitSize;
+    private final MedianFinderStrategy strategy;
+    private final MedianFinderStrategy splitStrategy;
+
+    public MedianFinderBatch() {
+        this(0);
+    }
+
+    public MedianFinderBatch(int numberOfThreads) {
+        this(numberOfThreads, DEFAULT_SPLIT_SIZE, MedianFinderStrategyPivotWithCache.INSTANCE);
+    }
+
+    /**
+     *
+     * @param numberOfThreads the number of threads of the pool. Zero to use
+     * the number of processors.
+     * @param splitSize the size from which the files are split on partitions
+     * scanned in parallel
+     * @param strategy the strategy used to find the medians. Only the files
+     * of a {@link MedianFinderStrategyPivotWithCache} are split, the others
+     * are scanned by a single task.
+     */
+    public MedianFinderBatch(int numberOfThreads, long splitSize, MedianFinderStrategy strategy) {
+        this(numberOfThreads, splitSize, strategy, false);
+    }
+
+    /**
+     *
+     * @param numberOfThreads the number of scans running at the same time.
+     * Zero to use the number of processors.
+     * @param splitSize the size from which the files are split on partitions
+     * scanned in parallel
+     * @param strategy the strategy used to find the medians. Only the files
+     * of a {@link MedianFinderStrategyPivotWithCache} are split, the others
+     * are scanned by a single task.
+     * @param virtualThreads true to run the files on virtual threads, when
+     * available on this version of Java
+     * @see VirtualThreadExecutor#isAvailable()
+     */
+    public MedianFinderBatch(int numberOfThreads, long splitSize, MedianFinderStrategy strategy,
+            boolean virtualThreads) {
+        if (numberOfThreads < 0) {
+            throw new IllegalArgumentException("The number of threads can't be negative.");
+        }
+        if (splitSize < 1) {
+            throw new IllegalArgumentException("The split size must be bigger than zero.");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("The strategy can't be null.");
+        }
+        this.numThreads = (numberOfThreads > 0) ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+        final ExecutorService virtual = virtualThreads ? VirtualThreadExecutor.newVirtualThreadPerTaskExecutor() : null;
+        if (virtual != null) {
+            this.pool = new VirtualThreadExecutor(numThreads);
+            this.requests = virtual;
+        } else {
+            this.pool = new ForkJoinPool(numThreads);
+            this.requests = pool;
+        }
+        this.splitSize = splitSize;
+        if (strategy instanceof MedianFinderStrategyPivotWithCache) {
+            MedianFinderStrategyPivotWithCache pivot = (MedianFinderStrategyPivotWithCache) strategy;
+            this.strategy = pivot.singleThreaded();
+            this.splitStrategy = pivot.onExecutor(pool, numThreads);
+        } else {
+            this.strategy = strategy;
+            this.splitStrategy = strategy;
+        }
+    }
+
+    /**
+     * Finds the median of each file. A file that fails doesn't stop the
+     * others, its error is kept on the result.
+     *
+     * @param files the files
+     * @return the results, on the same order as the files
+     */
+    public List<Result> findMedians(List<File> files) {
+        if (files == null) {
+            throw new IllegalArgumentException("The list of files can't be null.");
+        }
+        final int len = files.size();
+        final long[] sizes = new long[len];
+        final Integer[] order = new Integer[len];
+        for (int i = 0; i < len; i++) {
+            sizes[i] = files.get(i).length();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(sizes[b], sizes[a]));
+        //
+        final List<Future<Result>> tasks = new ArrayList<>(Collections.nCopies(len, null));
+        for (Integer i : order) {
+            final File file = files.get(i);
+            final boolean split = sizes[i] >= splitSize && splitStrategy != strategy;
+            final MedianFinderStrategy fileStrategy = split ? splitStrategy : strategy;
+            tasks.set(i, (split ? requests : pool).submit(() -> {
+                // the errors are kept as thrown, the pool would wrap them
+                try {
+                    return new Result(file, fileStrategy.findMedian(file), null);
+                } catch (Exception ex) {
+                    return new Result(file, 0, ex);
+                }
+            }));
+        }
+        final List<Result> results = new ArrayList<>(len);
+        for (int i = 0; i < len; i++) {
+            try {
+                results.add(tasks.get(i).get());
+            } catch (ExecutionException ex) {
+                results.add(new Result(files.get(i), 0, ex.getCause()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < len; j++) {
+                    tasks.get(j).cancel(true);
+                    results.add(new Result(files.get(j), 0, ex));
+                }
+                break;
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Stops the threads of the pool, after the running tasks finish.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        requests.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "MedianFinderBatch{" + "threads=" + numThreads + ", splitSize=" + splitSize
+                + ", strategy=" + strategy + ", pool=" + pool + '}';
+    }
+
+    /**
+     * The median of a file, or the error that prevented finding it.
+     */
+    public static class Result {
+
+        private final File file;
+        private final long median;
+        private final Throwable error;
+
+        public Result(File file, long median, Throwable error) {
+            this.file = file;
+            this.median = median;
+            this.error = error;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the median
+         * @throws IllegalStateException if the median wasn't found
+         */
+        public long getMedian() {
+            if (error != null) {
+                throw new IllegalStateException("The median of " + file + " wasn't found.", error);
+            }
+            return median;
+        }
+
+        /**
+         * @return the error, or null if the median was found
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isFound() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" + "file=" + file + ", median=" + median + ", error=" + error + '}';
+        }
+    }
+}
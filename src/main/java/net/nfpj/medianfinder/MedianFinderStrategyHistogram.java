@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the median using histograms over the range of the numbers. The first
+ * scan counts the numbers on two histograms of the full range of a long, one
+ * with buckets defined by the high order bits and one with buckets of about
+ * the same relative width, defined by the bits after the highest bit set of
+ * each number, and keeps the one leaving fewer numbers around the median.
+ * Each following scan looks only at the numbers inside the bucket of the
+ * median, splitting it again, until the numbers left fit in memory and are
+ * collected and sorted.
+ * With 2^16 buckets per scan, the number of scans doesn't depend on a pivot:
+ * two scans (histogram and collect) when the bucket of the median holds less
+ * than the maximum numbers collected, e.g. up to hundreds of millions of
+ * numbers spread over a range of a few orders of magnitude, and never more
+ * than five, when the numbers are concentrated on a single bucket.
+ *
+ * @author njacinto
+ */
+public class MedianFinderStrategyHistogram implements MedianFinderStrategy {
+
+    public static final MedianFinderStrategyHistogram INSTANCE = new MedianFinderStrategyHistogram();
+    public static final int DEFAULT_MAX_COLLECT_SIZE = 1 << 20;
+    //
+    private static final int BUCKET_BITS = 16;
+    private static final int NUMBER_OF_BUCKETS = 1 << BUCKET_BITS;
+
+    private final int maxCollectSize;
+    private final ScanStrategy scanStrategy;
+    private final boolean allowDuplicates;
+
+    public MedianFinderStrategyHistogram() {
+        this(DEFAULT_MAX_COLLECT_SIZE, ScanStrategyRead.INSTANCE);
+    }
+
+    public MedianFinderStrategyHistogram(ScanStrategy scanStrategy) {
+        this(DEFAULT_MAX_COLLECT_SIZE, scanStrategy);
+    }
+
+    /**
+     *
+     * @param maxCollectSize the maximum number of numbers kept in memory to
+     * find the median on the last scan.
+     * @param scanStrategy the strategy used to read the file
+     */
+    public MedianFinderStrategyHistogram(int maxCollectSize, ScanStrategy scanStrategy) {
+        this(maxCollectSize, scanStrategy, false);
+    }
+
+    /**
+     *
+     * @param maxCollectSize the maximum number of numbers kept in memory to
+     * find the median on the last scan.
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers, finding the
+     * median of the multiset
+     */
+    public MedianFinderStrategyHistogram(int maxCollectSize, ScanStrategy scanStrategy, boolean allowDuplicates) {
+        if (scanStrategy == null) {
+            throw new IllegalArgumentException("ScanStrategy cannot be null.");
+        }
+        this.maxCollectSize = maxCollectSize > 0 ? maxCollectSize : DEFAULT_MAX_COLLECT_SIZE;
+        this.scanStrategy = scanStrategy;
+        this.allowDuplicates = allowDuplicates;
+    }
+
+    @Override
+    public long findMedian(File file) throws MedianFinderException, IOException {
+        final long fileSize = file.length();
+        try (FileScanner scanner = scanStrategy.open(file)) {
+            final Search search = new Search(file);
+            while (!search.found) {
+                scanner.scan(0, fileSize, search.handler);
+                search.next();
+            }
+            return search.median;
+        }
+    }
+
+    /**
+     * Finds the medians of the columns of a delimited file, with the scan
+     * strategy a {@link ScanStrategyDelimited}. The columns share the scans:
+     * each scan reads the file once and gives each column to the step of its
+     * own search, so all the medians take as many scans as the column that
+     * needs more of them, never more than five.
+     *
+     * @return the medians, in the order of the columns of the scan strategy
+     * @throws IllegalArgumentException if the scan strategy doesn't read
+     * delimited files
+     */
+    public long[] findMedians(File file) throws MedianFinderException, IOException {
+        if (!(scanStrategy instanceof ScanStrategyDelimited)) {
+            throw new IllegalArgumentException("The scan strategy must be a ScanStrategyDelimited: " + scanStrategy);
+        }
+        final long fileSize = file.length();
+        try (ScanStrategyDelimited.DelimitedFileScanner scanner = ((ScanStrategyDelimited) scanStrategy).open(file)) {
+            final Search[] searches = new Search[((ScanStrategyDelimited) scanStrategy).getColumns().length];
+            final NumberHandler[] handlers = new NumberHandler[searches.length];
+            for (int i = 0; i < searches.length; i++) {
+                searches[i] = new Search(file);
+            }
+            int open;
+            do {
+                open = 0;
+                for (int i = 0; i < searches.length; i++) {
+                    handlers[i] = searches[i].found ? null : searches[i].handler;
+                    open += searches[i].found ? 0 : 1;
+                }
+                if (open > 0) {
+                    scanner.scan(0, fileSize, handlers);
+                    for (Search search : searches) {
+                        if (!search.found) {
+                            search.next();
+                        }
+                    }
+                }
+            } while (open > 0);
+            final long[] medians = new long[searches.length];
+            for (int i = 0; i < searches.length; i++) {
+                medians[i] = searches[i].median;
+            }
+            return medians;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MedianFinderStrategyHistogram{" + "maxCollectSize=" + maxCollectSize + ", scanStrategy=" + scanStrategy
+                + ", allowDuplicates=" + allowDuplicates + '}';
+    }
+
+    private void checkDuplicate(boolean duplicate, long num) {
+        if (duplicate && !allowDuplicates) {
+            throw new DuplicateNumberException("Duplicate number found: " + num);
+        }
+    }
+
+    //
+    /**
+     * The search of the median of a sequence of numbers. Each scan gives the
+     * numbers to the handler of the current step, the first a histogram of
+     * the full range of the numbers, and the next step is chosen when the
+     * scan ends.
+     */
+    private class Search {
+
+        final File file;
+        NumberHandler handler;
+        boolean found;
+        long median;
+        long count, lowRank, highRank;
+        long below, min, max;
+
+        Search(File file) {
+            this.file = file;
+            this.handler = new FirstHistograms();
+        }
+
+        /**
+         * Uses the numbers of the last scan to find the median or the
+         * handler of the next scan.
+         */
+        void next() {
+            if (handler instanceof FirstHistograms) {
+                next(((FirstHistograms) handler).narrowest());
+            } else if (handler instanceof Histogram) {
+                next((Histogram) handler);
+            } else if (handler instanceof Extremes) {
+                // the middle numbers are the biggest of one bucket and the
+                // smallest of the next one
+                final Extremes extremes = (Extremes) handler;
+                checkDuplicate(extremes.lowCount > 1, extremes.lowMax);
+                checkDuplicate(extremes.highCount > 1, extremes.highMin);
+                found(scanStrategy.mean(extremes.lowMax, extremes.highMin));
+            } else {
+                // last scan, the numbers left fit in memory
+                final Collector collector = (Collector) handler;
+                final long[] values = collector.values;
+                final int len = collector.len, lowIdx = (int) (lowRank - below), highIdx = (int) (highRank - below);
+                Arrays.sort(values, 0, len);
+                // only the middle numbers can't be repeated
+                final long low = values[lowIdx], high = values[highIdx];
+                checkDuplicate(lowIdx != highIdx && low == high, low);
+                checkDuplicate(lowIdx > 0 && values[lowIdx - 1] == low, low);
+                checkDuplicate(highIdx < len - 1 && values[highIdx + 1] == high, high);
+                found(scanStrategy.mean(low, high));
+            }
+        }
+
+        private void next(Histogram histogram) {
+            if (count == 0) {
+                // first scan, over the full range of the numbers
+                count = histogram.countInRange;
+                if (count == 0) {
+                    throw new MedianFinderException("No numbers found on file: " + file);
+                }
+                lowRank = (count - 1) >> 1;
+                highRank = count >> 1;
+                min = histogram.min;
+                max = histogram.max;
+            }
+            // find the buckets of the two middle numbers
+            final long[] counts = histogram.counts;
+            int lowBucket = -1, highBucket = -1;
+            long acc = below;
+            for (int i = 0; i < counts.length && highBucket < 0; i++) {
+                if (lowBucket < 0 && acc + counts[i] > lowRank) {
+                    lowBucket = i;
+                    below = acc;
+                }
+                if (acc + counts[i] > highRank) {
+                    highBucket = i;
+                }
+                acc += counts[i];
+            }
+            if (lowBucket != highBucket) {
+                if (histogram.bucketStart(lowBucket) == histogram.bucketEnd(lowBucket)
+                        && histogram.bucketStart(highBucket) == histogram.bucketEnd(highBucket)) {
+                    // buckets of a single number each, the middle numbers are known
+                    checkDuplicate(counts[lowBucket] > 1, histogram.bucketStart(lowBucket));
+                    checkDuplicate(counts[highBucket] > 1, histogram.bucketStart(highBucket));
+                    found(scanStrategy.mean(histogram.bucketStart(lowBucket), histogram.bucketStart(highBucket)));
+                    return;
+                }
+                handler = new Extremes(histogram.bucketStart(lowBucket), histogram.bucketEnd(lowBucket),
+                        histogram.bucketStart(highBucket), histogram.bucketEnd(highBucket));
+                return;
+            }
+            final long lo = Math.max(histogram.bucketStart(lowBucket), min);
+            final long hi = Math.min(histogram.bucketEnd(lowBucket), max);
+            final long countInRange = counts[lowBucket];
+            if (lo == hi) {
+                checkDuplicate(countInRange > 1, lo);
+                found(lo);
+            } else if (countInRange <= maxCollectSize) {
+                handler = new Collector(lo, hi, (int) countInRange);
+            } else {
+                handler = new Histogram(lo, hi);
+            }
+        }
+
+        private void found(long median) {
+            this.median = median;
+            this.found = true;
+            this.handler = null;
+        }
+    }
+
+    /**
+     * Counts the numbers inside a range on buckets of the same size.
+     */
+    private static class Histogram implements NumberHandler {
+
+        final long lo, hi;
+        final int shift;
+        final long[] counts;
+        long countInRange = 0;
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+
+        Histogram(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+            // smallest shift that puts the range on the available buckets
+            final int rangeBits = 64 - Long.numberOfLeadingZeros(hi - lo);
+            this.shift = rangeBits > BUCKET_BITS ? rangeBits - BUCKET_BITS : 0;
+            this.counts = new long[(int) ((hi - lo) >>> shift) + 1];
+        }
+
+        Histogram(int size) {
+            this.lo = Long.MIN_VALUE;
+            this.hi = Long.MAX_VALUE;
+            this.shift = 0;
+            this.counts = new long[size];
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                if (num >= lo && num <= hi) {
+                    counts[bucket(num)]++;
+                    if (num < min) {
+                        min = num;
+                    }
+                    if (num > max) {
+                        max = num;
+                    }
+                    countInRange++;
+                }
+            }
+        }
+
+        int bucket(long num) {
+            return (int) ((num - lo) >>> shift);
+        }
+
+        long bucketStart(int bucket) {
+            return lo + ((long) bucket << shift);
+        }
+
+        long bucketEnd(int bucket) {
+            final long endOffset = ((long) bucket << shift) + ((1L << shift) - 1);
+            // the last bucket can be smaller than the others
+            return Long.compareUnsigned(endOffset, hi - lo) > 0 ? hi : lo + endOffset;
+        }
+    }
+
+    /**
+     * Counts all the numbers on buckets of about the same relative width,
+     * given by the first bits after the highest bit set of each number, so
+     * the numbers of a range much smaller than a long aren't all counted on
+     * the same bucket. The numbers below 2^PRECISION have a bucket each.
+     */
+    private static class LogHistogram extends Histogram {
+
+        private static final int PRECISION = 9;
+        private static final int MANTISSA_MASK = (1 << PRECISION) - 1;
+        // the buckets of the negative numbers, followed by the buckets of the others
+        private static final int HALF = (64 - PRECISION) << PRECISION;
+
+        LogHistogram() {
+            super(2 * HALF);
+        }
+
+        @Override
+        int bucket(long num) {
+            return num >= 0 ? HALF + magnitude(num) : HALF - 1 - magnitude(~num);
+        }
+
+        @Override
+        long bucketStart(int bucket) {
+            return bucket >= HALF ? magnitudeStart(bucket - HALF) : ~magnitudeEnd(HALF - 1 - bucket);
+        }
+
+        @Override
+        long bucketEnd(int bucket) {
+            return bucket >= HALF ? magnitudeEnd(bucket - HALF) : ~magnitudeStart(HALF - 1 - bucket);
+        }
+
+        private static int magnitude(long num) {
+            if (num <= MANTISSA_MASK) {
+                return (int) num;
+            }
+            final int shift = 63 - Long.numberOfLeadingZeros(num) - PRECISION;
+            return ((shift + 1) << PRECISION) | (int) ((num >>> shift) & MANTISSA_MASK);
+        }
+
+        private static long magnitudeStart(int magnitude) {
+            if (magnitude <= MANTISSA_MASK) {
+                return magnitude;
+            }
+            final int shift = (magnitude >>> PRECISION) - 1;
+            return (long) ((magnitude & MANTISSA_MASK) | (1 << PRECISION)) << shift;
+        }
+
+        private static long magnitudeEnd(int magnitude) {
+            if (magnitude <= MANTISSA_MASK) {
+                return magnitude;
+            }
+            final int shift = (magnitude >>> PRECISION) - 1;
+            return magnitudeStart(magnitude) + ((1L << shift) - 1);
+        }
+    }
+
+    /**
+     * The histograms of the first scan, over the full range of a long. The
+     * buckets of the high order bits fit the numbers spread over that range,
+     * e.g. the decimals encoded as sortable longs, and the buckets of the
+     * same relative width fit the numbers of smaller ranges.
+     */
+    private static class FirstHistograms implements NumberHandler {
+
+        final Histogram linear = new Histogram(Long.MIN_VALUE, Long.MAX_VALUE);
+        final Histogram log = new LogHistogram();
+
+        @Override
+        public void handle(long[] nums, int len) {
+            linear.handle(nums, len);
+            log.handle(nums, len);
+        }
+
+        /**
+         * @return the histogram with fewer numbers on the buckets of the two
+         * middle numbers
+         */
+        Histogram narrowest() {
+            return middleCount(log) < middleCount(linear) ? log : linear;
+        }
+
+        private static long middleCount(Histogram histogram) {
+            final long lowRank = (histogram.countInRange - 1) >> 1, highRank = histogram.countInRange >> 1;
+            final long[] counts = histogram.counts;
+            long acc = 0, middle = 0;
+            for (int i = 0; i < counts.length && acc <= highRank; i++) {
+                if (acc + counts[i] > lowRank) {
+                    middle += counts[i];
+                }
+                acc += counts[i];
+            }
+            return middle;
+        }
+    }
+
+    /**
+     * Finds the biggest number of a range and the smallest of another.
+     */
+    private static class Extremes implements NumberHandler {
+
+        final long lowLo, lowHi, highLo, highHi;
+        long lowMax = Long.MIN_VALUE, highMin = Long.MAX_VALUE;
+        long lowCount = 0, highCount = 0;
+
+        Extremes(long lowLo, long lowHi, long highLo, long highHi) {
+            this.lowLo = lowLo;
+            this.lowHi = lowHi;
+            this.highLo = highLo;
+            this.highHi = highHi;
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                if (num >= lowLo && num <= lowHi) {
+                    if (num > lowMax) {
+                        lowMax = num;
+                        lowCount = 1;
+                    } else if (num == lowMax) {
+                        lowCount++;
+                    }
+                } else if (num >= highLo && num <= highHi) {
+                    if (num < highMin) {
+                        highMin = num;
+                        highCount = 1;
+                    } else if (num == highMin) {
+                        highCount++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the numbers inside a range.
+     */
+    private static class Collector implements NumberHandler {
+
+        final long lo, hi;
+        final long[] values;
+        int len = 0;
+
+        Collector(long lo, long hi, int size) {
+            this.lo = lo;
+            this.hi = hi;
+            this.values = new long[size];
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                if (num >= lo && num <= hi) {
+                    values[this.len++] = num;
+                }
+            }
+        }
+    }
+}
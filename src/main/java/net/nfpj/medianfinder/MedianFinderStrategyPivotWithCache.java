@@ -20,13 +20,16 @@ package net.nfpj.medianfinder;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Finds the median using the pivot and keeping a cache of numbers left and
  * right of the pivot. The cache will contain the numbers before and after the
  * pivot, allowing to jump several numbers in each iteration.
+ * Besides the median, it finds the number on any rank and several quantiles
+ * at once, each with its own pivot and caches, reading the file once per scan
+ * for all of them.
  *
  * @author njacinto
  */
@@ -34,9 +37,14 @@ public class MedianFinderStrategyPivotWithCache implements MedianFinderStrategy
 
     public static final MedianFinderStrategyPivotWithCache INSTANCE = new MedianFinderStrategyPivotWithCache();
     protected static final int DEFAULT_NUMBERS_CACHE_SIZE = 1024;
+    public static final long DEFAULT_BLOCK_SIZE = 1 << 20;
 
     protected final PivotSelectionStrategy pivotSelection;
     protected final int numbersCacheSize;
+    protected final ScanStrategy scanStrategy;
+    protected final boolean allowDuplicates;
+    protected final long blockSize;
+    protected final boolean useIndex;
 
     public MedianFinderStrategyPivotWithCache() {
         this(DEFAULT_NUMBERS_CACHE_SIZE, new PivotSelectionStrategyBestOfN(15));
@@ -53,130 +61,411 @@ public class MedianFinderStrategyPivotWithCache implements MedianFinderStrategy
     }
 
     public MedianFinderStrategyPivotWithCache(int numbersCacheSize, PivotSelectionStrategy pivotSelection) {
+        this(numbersCacheSize, pivotSelection, ScanStrategyRead.INSTANCE);
+    }
+
+    public MedianFinderStrategyPivotWithCache(int numbersCacheSize, PivotSelectionStrategy pivotSelection,
+            ScanStrategy scanStrategy) {
+        this(numbersCacheSize, pivotSelection, scanStrategy, false);
+    }
+
+    /**
+     *
+     * @param numbersCacheSize the number of numbers kept before and after the
+     * pivot
+     * @param pivotSelection the strategy used to find the initial pivot
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers, finding the
+     * median of the multiset. If false a {@link DuplicateNumberException} is
+     * thrown when a repeated number is found on the pivot.
+     */
+    public MedianFinderStrategyPivotWithCache(int numbersCacheSize, PivotSelectionStrategy pivotSelection,
+            ScanStrategy scanStrategy, boolean allowDuplicates) {
+        this(numbersCacheSize, pivotSelection, scanStrategy, allowDuplicates, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     *
+     * @param numbersCacheSize the number of numbers kept before and after the
+     * pivot
+     * @param pivotSelection the strategy used to find the initial pivot
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers
+     * @param blockSize the size of the blocks with the minimum and maximum
+     * recorded on the first scan. The following scans skip the blocks with
+     * all the numbers on one side of the pivot. Zero to scan the whole file
+     * every time.
+     */
+    public MedianFinderStrategyPivotWithCache(int numbersCacheSize, PivotSelectionStrategy pivotSelection,
+            ScanStrategy scanStrategy, boolean allowDuplicates, long blockSize) {
+        this(numbersCacheSize, pivotSelection, scanStrategy, allowDuplicates, blockSize, false);
+    }
+
+    /**
+     *
+     * @param numbersCacheSize the number of numbers kept before and after the
+     * pivot
+     * @param pivotSelection the strategy used to find the initial pivot
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers
+     * @param blockSize the size of the blocks with the minimum and maximum
+     * recorded on the first scan
+     * @param useIndex true to keep the blocks and a sample of the file on a
+     * {@link FileIndex}, written on the first query and used by the following
+     * ones to skip the sampling and the first full scan. Needs a block size
+     * bigger than zero.
+     */
+    public MedianFinderStrategyPivotWithCache(int numbersCacheSize, PivotSelectionStrategy pivotSelection,
+            ScanStrategy scanStrategy, boolean allowDuplicates, long blockSize, boolean useIndex) {
         if (pivotSelection == null) {
             throw new IllegalArgumentException("PivotSelectionStrategy cannot be null.");
         }
+        if (scanStrategy == null) {
+            throw new IllegalArgumentException("ScanStrategy cannot be null.");
+        }
         this.pivotSelection = pivotSelection;
         this.numbersCacheSize = numbersCacheSize > 1 ? numbersCacheSize & ~1 : DEFAULT_NUMBERS_CACHE_SIZE;
+        this.scanStrategy = scanStrategy;
+        this.allowDuplicates = allowDuplicates;
+        this.blockSize = blockSize;
+        this.useIndex = useIndex && blockSize > 0;
     }
 
     @Override
     public long findMedian(File file) throws MedianFinderException, IOException {
-        RandomAccessFile in = new RandomAccessFile(file, "r");
-        final byte[] readBuff = new byte[Constants.BUFFER_SIZE];
-        long pivot;
-        Data dta = new Data(0, file.length(), numbersCacheSize);
-        int buffInitPos = 0;
-        long countScans = 0;
-        //
-        pivot = pivotSelection.getPivot(file, in);
+        return find(file, new Target[]{Target.median()})[0];
+    }
+
+    /**
+     * Finds the number on the rank, the k-th smallest number of the file.
+     *
+     * @param rank the rank, from zero
+     * @throws MedianFinderException if the file has less numbers than the rank
+     */
+    public long findRank(File file, long rank) throws MedianFinderException, IOException {
+        return find(file, new Target[]{Target.rank(rank)})[0];
+    }
+
+    /**
+     * Finds the numbers on several quantiles, all of them with the same scans
+     * of the file. The number of a quantile q is the one on the rank
+     * ceil(q * count) - 1 (nearest rank), so 0.5 gives the lower of the middle
+     * numbers.
+     *
+     * @param quantiles the quantiles, between zero and one
+     * @return the numbers on the quantiles, in the same order
+     */
+    public long[] findQuantiles(File file, double... quantiles) throws MedianFinderException, IOException {
+        if (quantiles == null) {
+            throw new IllegalArgumentException("Quantiles cannot be null.");
+        }
+        final Target[] targets = new Target[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            targets[i] = Target.quantile(quantiles[i]);
+        }
+        return targets.length == 0 ? new long[0] : find(file, targets);
+    }
+
+    /**
+     * Finds the numbers of the targets. The first scan uses the pivot of the
+     * pivot selection strategy for the first target and, when there are more
+     * targets or the first isn't the median, takes a sample of the file used
+     * to choose the pivots of the others. The following scans are shared by
+     * all the targets not found yet.
+     */
+    protected long[] find(File file, Target[] targets) throws MedianFinderException, IOException {
+        final Data dta = newData(0, 0, 0, file.length());
+        dta.allowDuplicates = allowDuplicates;
+        final Data[] dataList = new Data[]{dta};
         //
-        int eolIdx, stIdx;
-        int readLen;
-        boolean medianFound = false;
-        while (!medianFound) {
-            dta.clearCounters();
-            buffInitPos = 0;
-            in.seek(0);
-            countScans++;
-            while ((readLen = in.read(readBuff, buffInitPos, readBuff.length - buffInitPos)) != -1) {
-                readLen += buffInitPos;
-                stIdx = eolIdx = 0;
-                buffInitPos = 0;
-                while (eolIdx < readLen) {
-                    for (; eolIdx < readLen && readBuff[eolIdx] != Constants.EOL; eolIdx++);
-                    if (stIdx < eolIdx) {
-                        if (eolIdx < readLen) {
-                            dta.count++;
-                            long num = NumberUtil.toLong(readBuff, stIdx, eolIdx - 1);
-                            //System.out.println(num);
-                            if (pivot > num) {
-                                //System.out.println(num);
-                                dta.countLeft++;
-                                dta.updateCacheLeft(num);
-                            } else if (pivot < num) {
-                                dta.countRight++;
-                                dta.updateCacheRight(num);
-                            } else if (dta.dupCount > 0) {
-                                throw new DuplicateNumberException("Duplicate number found: " + num);
-                            } else {
-                                ++dta.dupCount;
-                            }
-                            stIdx = ++eolIdx;
-                        } else if (stIdx < readLen) {
-                            buffInitPos = readLen - stIdx;
-                            System.arraycopy(readBuff, stIdx, readBuff, 0, buffInitPos);
+        final FileIndex index = useIndex ? FileIndex.load(file, blockSize) : null;
+        try (FileScanner scanner = scanStrategy.open(file)) {
+            final long pivot = pivotSelection.getPivot(file, scanner, index);
+            if (index != null) {
+                dta.split(index, 0, index.blockLimits.length);
+            } else {
+                dta.split(scanner, blockSize);
+                if (useIndex || Target.needSample(targets)) {
+                    dta.sample = newSample(0, FileIndex.SAMPLE_SIZE);
+                }
+            }
+            dta.clearCounters(pivot);
+            dta.scan(scanner);
+            if (useIndex && index == null) {
+                createIndex(file, dataList).save(file);
+            }
+            start(targets, dataList, index);
+            //
+            final Data[] open = new Data[targets.length];
+            int len;
+            do {
+                len = 0;
+                for (Target target : targets) {
+                    if (!target.found) {
+                        target.data[0].clearCounters(target.pivot);
+                        open[len++] = target.data[0];
+                    }
+                }
+                if (len > 0) {
+                    Data.scan(scanner, open, len);
+                    for (Target target : targets) {
+                        if (!target.found) {
+                            next(target);
                         }
-                    } else {
-                        stIdx = ++eolIdx;
                     }
                 }
+            } while (len > 0);
+        }
+        return Target.values(targets);
+    }
+
+    /**
+     * Sets the ranks of the targets with the count of the first scan, and
+     * checks if the first scan found them. The targets not found get their
+     * pivot and the partitions for the next scan. The first target continues
+     * from the first scan, the others start on the numbers of the sample on
+     * their ranks.
+     *
+     * @param dataList the partitions of the first scan
+     * @param index the index of the file, or null to use the sample of the
+     * partitions
+     */
+    protected void start(Target[] targets, Data[] dataList, FileIndex index) {
+        final Merged merged = newMerged(0, dataList.length);
+        merged.merge(dataList);
+        final long pivot = dataList[0].pivot;
+        long[] sample = null;
+        int sampleLen = 0;
+        if (index != null) {
+            sampleLen = index.sample.length;
+            sample = newSample(dataList.length, sampleLen);
+            System.arraycopy(index.sample, 0, sample, 0, sampleLen);
+        } else if (dataList[0].sample != null) {
+            for (Data dta : dataList) {
+                sampleLen += dta.sampleLen;
             }
-            if (buffInitPos > 0) {
-                dta.count++;
-                long num = NumberUtil.toLong(readBuff, 0, buffInitPos - 1);
-                if (pivot > num) {
-                    dta.countLeft++;
-                    dta.updateCacheLeft(num);
-                } else if (pivot < num) {
-                    dta.countRight++;
-                    dta.updateCacheRight(num);
-                } else if (dta.dupCount > 0) {
-                    throw new DuplicateNumberException("Duplicate number found: " + num);
-                } else {
-                    ++dta.dupCount;
-                }
+            sample = newSample(dataList.length, sampleLen);
+            sampleLen = 0;
+            for (Data dta : dataList) {
+                System.arraycopy(dta.sample, 0, sample, sampleLen, dta.sampleLen);
+                sampleLen += dta.sampleLen;
+                dta.sample = null;
             }
-            if ((dta.count & 1) == 0 && ((dta.countLeft - dta.countRight) == 1 || (dta.countRight - dta.countLeft) == 1)) {
-                long num = 0;
-                if (dta.countLeft > dta.countRight) {
-                    num = dta.prevNd == dta.prevNdLim ? dta.cache[dta.prevNd-1]
-                            : NumberUtil.getBigger(dta.cache, 0, dta.prevNd);
-                } else {
-                    num = dta.nextSt == dta.nextStLim ? dta.cache[dta.nextSt + 1]
-                            : NumberUtil.getSmaller(dta.cache, dta.nextSt + 1, dta.cache.length);
+        }
+        if (sampleLen > 0) {
+            Arrays.sort(sample, 0, sampleLen);
+        } else {
+            sample = null;
+        }
+        for (int i = 0; i < targets.length; i++) {
+            final Target target = targets[i];
+            target.setCount(merged.count);
+            if (resolve(pivot, merged, target.lowRank, target.highRank)) {
+                target.found = true;
+                target.value = merged.value;
+                continue;
+            }
+            target.merged = i == 0 ? merged : newMerged(i, dataList.length);
+            if (i == 0) {
+                target.data = dataList;
+            } else {
+                target.data = new Data[dataList.length];
+                for (int j = 0; j < dataList.length; j++) {
+                    target.data[j] = newData(i, j, dataList[j].pos, dataList[j].limit);
+                    target.data[j].share(dataList[j]);
                 }
-                pivot = (pivot + num) / 2;
-                medianFound = true;
-            } else if (dta.countLeft > dta.countRight) {
-                //                System.out.println("Pivot = " + pivot
-                //                        + " Prev = " + prev + " count = " + count
-                //                        + " countLeft = " + countLeft + " countRight = " + countRight);
-                int idx = (int) (dta.prevNd - ((dta.countLeft - dta.countRight) >> 1));
-                if (dta.prevNd < dta.prevNdLim) {
-                    Arrays.sort(dta.cache, 0, dta.prevNd);
+            }
+            if (sample != null && (i > 0 || targets.length > 1 || !target.isMedian())) {
+                // jump close to the rank, the cache can only move the pivot a few numbers
+                target.pivot = sample[(int) Math.min(sampleLen - 1,
+                        (double) target.lowRank / merged.count * sampleLen)];
+                for (Data dta : target.data) {
+                    dta.check = true;
+                    dta.resetCacheLeftRight(dta.cache.length >> 1);
                 }
-                pivot = dta.cache[idx > 0 ? idx : 0];
+            } else {
+                target.pivot = merged.value;
+                moved(target, merged.movedLeft);
+            }
+        }
+    }
+
+    /**
+     * Resolves the target with the last scan of its partitions, moving its
+     * pivot if it's not found.
+     */
+    protected void next(Target target) {
+        target.merged.merge(target.data);
+        target.found = resolve(target.pivot, target.merged, target.lowRank, target.highRank);
+        target.pivot = target.value = target.merged.value;
+        if (!target.found) {
+            moved(target, target.merged.movedLeft);
+        }
+    }
+
+    /**
+     * Prepares the partitions of the target for a pivot moved to one side.
+     * Partitions with all the numbers on the other side of the pivot keep the
+     * same counters, and the cache is used mostly on the side the pivot is
+     * moving to.
+     */
+    private void moved(Target target, boolean movedLeft) {
+        for (Data dta : target.data) {
+            if (movedLeft) {
+                dta.check = dta.countRight != dta.count;
                 dta.prevNdLim = dta.nextStLim = dta.cache.length - 1;
-            } else if (dta.countLeft < dta.countRight) {
-                //                System.out.println("Pivot = " + pivot
-                //                        + " Next = " + next + " count = " + count
-                //                        + " countLeft = " + countLeft + " countRight = " + countRight);
-                int idx = (int) (dta.nextSt + 1 + ((dta.countRight - dta.countLeft) >> 1));
-                if (dta.nextSt >= dta.nextStLim) {
-                    Arrays.sort(dta.cache, dta.nextSt, dta.cache.length);
-                }
-                pivot = dta.cache[idx < dta.cache.length ? idx : dta.cache.length - 1];
-                dta.prevNdLim = dta.nextStLim = 1;
             } else {
-                medianFound = true;
+                dta.check = dta.countLeft != dta.count;
+                dta.prevNdLim = dta.nextStLim = 1;
             }
         }
-//        System.out.println("Pivot = " + pivot + " count = " + dta.count
-//                + " countLeft = " + dta.countLeft + " countRight = " + dta.countRight
-//                + " File scans = " + countScans);
-        return pivot;
+    }
+
+    /**
+     * @return a partition of the target, with the numbers from pos to limit
+     */
+    protected Data newData(int target, int partition, long pos, long limit) {
+        return new Data(pos, limit, numbersCacheSize);
+    }
+
+    /**
+     * @return the merged caches of the partitions of the target
+     */
+    protected Merged newMerged(int target, int partitions) {
+        return new Merged(numbersCacheSize * partitions);
+    }
+
+    /**
+     * @return an array for the sample of the partition, or for all the
+     * samples when the partition is the number of partitions. It may be
+     * bigger than the size.
+     */
+    protected long[] newSample(int partition, int size) {
+        return new long[size];
+    }
+
+    /**
+     * @return the same strategy, scanning the file on the calling thread
+     */
+    public MedianFinderStrategyPivotWithCache singleThreaded() {
+        return this;
+    }
+
+    /**
+     * @return the same strategy, with the file split on partitions scanned
+     * in parallel on the executor
+     * @see MedianFinderStrategyPivotWithCacheMultiThreaded
+     */
+    public MedianFinderStrategyPivotWithCacheMultiThreaded onExecutor(ExecutorService executor, int numberOfThreads) {
+        return new MedianFinderStrategyPivotWithCacheMultiThreaded(numbersCacheSize, numberOfThreads, pivotSelection,
+                scanStrategy, allowDuplicates, blockSize, useIndex, executor);
     }
 
     @Override
     public String toString() {
-        return "MedianFinderStrategyPivotWithCache{" + "pivotSelection=" + pivotSelection + ", numbersCacheSize=" + numbersCacheSize + '}';
+        return "MedianFinderStrategyPivotWithCache{" + "pivotSelection=" + pivotSelection + ", numbersCacheSize=" + numbersCacheSize
+                + ", scanStrategy=" + scanStrategy + ", allowDuplicates=" + allowDuplicates + ", blockSize=" + blockSize
+                + ", useIndex=" + useIndex + '}';
+    }
+
+    /**
+     * Creates the index of the file with the blocks recorded on the first scan.
+     *
+     * @param dataList the partitions, in the order of the file. Partitions
+     * sharing the blocks of the previous one add them once.
+     */
+    protected FileIndex createIndex(File file, Data[] dataList) {
+        int blocks = 0, samples = 0;
+        long count = 0, sum = 0;
+        long[] last = null;
+        for (Data dta : dataList) {
+            blocks += (dta.blockLimits == last) ? 0 : dta.blockLimits.length;
+            last = dta.blockLimits;
+            samples += dta.sampleLen;
+            count += dta.count;
+            sum += dta.sum;
+        }
+        final long[] blockLimits = new long[blocks], blockCount = new long[blocks],
+                blockMin = new long[blocks], blockMax = new long[blocks];
+        final long[] sample = new long[samples];
+        int idx = 0, sampleIdx = 0;
+        last = null;
+        for (Data dta : dataList) {
+            System.arraycopy(dta.sample, 0, sample, sampleIdx, dta.sampleLen);
+            sampleIdx += dta.sampleLen;
+            if (dta.blockLimits == last) {
+                continue;
+            }
+            last = dta.blockLimits;
+            final int len = dta.blockLimits.length;
+            System.arraycopy(dta.blockLimits, 0, blockLimits, idx, len);
+            System.arraycopy(dta.blockCount, 0, blockCount, idx, len);
+            System.arraycopy(dta.blockMin, 0, blockMin, idx, len);
+            System.arraycopy(dta.blockMax, 0, blockMax, idx, len);
+            idx += len;
+        }
+        return new FileIndex(file.length(), file.lastModified(), blockSize, count, sum,
+                blockLimits, blockCount, blockMin, blockMax, sample);
+    }
+
+    /**
+     * Uses the counters and the caches of the last scan to find the median or,
+     * when the middle numbers are not on the caches, the pivot for the next
+     * scan. The ranks of the middle numbers are compared with the ranks taken
+     * by the numbers equal to the pivot, so repeated numbers are resolved
+     * correctly.
+     *
+     * @param pivot the pivot used on the last scan
+     * @param merged the counters and caches of the last scan
+     * @return true if the median was found. The median, or the pivot for the
+     * next scan, is set on {@link Merged#value}.
+     */
+    protected boolean resolve(long pivot, Merged merged) {
+        return resolve(pivot, merged, (merged.count - 1) >> 1, merged.count >> 1);
+    }
+
+    /**
+     * Same as {@link #resolve(long, Merged)}, for the mean of the numbers on
+     * two ranks. With the same rank it finds the number on that rank.
+     *
+     * @param lowRank the rank of the lower number, from zero
+     * @param highRank the rank of the higher number
+     */
+    protected boolean resolve(long pivot, Merged merged, long lowRank, long highRank) {
+        if (merged.dupCount > 1 && !allowDuplicates) {
+            throw new DuplicateNumberException("Duplicate number found: " + pivot);
+        }
+        merged.value = pivot;
+        if (merged.count == 0) {
+            return true;
+        }
+        if (lowRank < merged.countLeft - merged.leftDepth) {
+            // beyond the cache, move as far as possible
+            merged.value = merged.left[merged.leftLen - merged.leftDepth];
+            merged.movedLeft = true;
+            return false;
+        }
+        if (highRank >= merged.countLeft + merged.dupCount + merged.rightDepth) {
+            merged.value = merged.right[merged.rightDepth - 1];
+            merged.movedLeft = false;
+            return false;
+        }
+        final long low = merged.valueAt(lowRank, pivot);
+        final long high = merged.valueAt(highRank, pivot);
+        if (allowDuplicates || low == pivot || high == pivot) {
+            merged.value = (lowRank == highRank) ? low : scanStrategy.mean(low, high);
+            return true;
+        }
+        // moves to the number, the next scan checks it isn't repeated
+        merged.value = low;
+        merged.movedLeft = low < pivot;
+        return false;
     }
 
     //
-    protected static class Data {
+    protected static class Data implements NumberHandler {
 
-        final long pos, limit;
+        long pos, limit;
         final long[] cache;
         int prevNdLim, nextStLim;
         int prevNd, nextSt;
@@ -184,7 +473,20 @@ public class MedianFinderStrategyPivotWithCache implements MedianFinderStrategy
         long countLeft = 0;
         long countRight = 0;
         long dupCount = 0;
+        long pivot;
         boolean check = true;
+        boolean allowDuplicates = false;
+        // zone map, the end, count, minimum and maximum of each block
+        long[] blockLimits, blockCount, blockMin, blockMax;
+        boolean blockStats = false;
+        long min, max, sum;
+        // systematic sample taken with the stats, every stride numbers
+        long[] sample;
+        int sampleLen, sampleStride = 1;
+        long sampleNext;
+        // the numbers up to the bounds may be missing on the caches because
+        // their blocks were skipped
+        long skipLeftBound, skipRightBound;
 
         Data(long pos, long limit, int numbersCacheSize) {
             this(pos, limit, numbersCacheSize, numbersCacheSize >> 1);
@@ -197,6 +499,38 @@ public class MedianFinderStrategyPivotWithCache implements MedianFinderStrategy
             resetCacheLeftRight(leftSize);
         }
 
+        /**
+         * Prepares the partition for another query, keeping the cache.
+         */
+        void reset(long pos, long limit) {
+            this.pos = pos;
+            this.limit = limit;
+            check = true;
+            allowDuplicates = false;
+            blockLimits = blockCount = blockMin = blockMax = null;
+            blockStats = false;
+            min = max = sum = 0;
+            sample = null;
+            sampleLen = 0;
+            sampleStride = 1;
+            sampleNext = 0;
+            clearCounters(0);
+            resetCacheLeftRight(cache.length >> 1);
+        }
+
+        /**
+         * Shares the blocks and stats of the partition of another target,
+         * which must have been scanned.
+         */
+        void share(Data other) {
+            this.allowDuplicates = other.allowDuplicates;
+            this.blockLimits = other.blockLimits;
+            this.blockCount = other.blockCount;
+            this.blockMin = other.blockMin;
+            this.blockMax = other.blockMax;
+            this.blockStats = other.blockStats;
+        }
+
         void resetCacheLeftRight(int leftSize) {
             prevNdLim = leftSize;
             nextStLim = cache.length - leftSize;
@@ -211,6 +545,253 @@ public class MedianFinderStrategyPivotWithCache implements MedianFinderStrategy
             countLeft = 0;
             countRight = 0;
             dupCount = 0;
+            skipLeftBound = Long.MIN_VALUE;
+            skipRightBound = Long.MAX_VALUE;
+        }
+
+        void clearCounters(long pivot) {
+            clearCounters();
+            this.pivot = pivot;
+        }
+
+        /**
+         * Splits the partition on blocks of about the given size.
+         */
+        void split(FileScanner scanner, long blockSize) throws IOException {
+            if (blockSize <= 0) {
+                return;
+            }
+            long[] limits = new long[(int) ((limit - pos) / blockSize) + 1];
+            int len = 0;
+            for (long start = pos; start < limit; start = limits[len++]) {
+                long end = scanner.findEndOfBlock(start + blockSize);
+                if (len == limits.length) {
+                    limits = Arrays.copyOf(limits, len * 2);
+                }
+                limits[len] = (end <= start || end > limit) ? limit : end;
+            }
+            blockLimits = Arrays.copyOf(limits, len);
+            blockCount = new long[len];
+            blockMin = new long[len];
+            blockMax = new long[len];
+        }
+
+        /**
+         * Uses the blocks of the index, from the first to the last
+         * (exclusive), which must cover the partition.
+         */
+        void split(FileIndex index, int first, int last) {
+            blockLimits = Arrays.copyOfRange(index.blockLimits, first, last);
+            blockCount = Arrays.copyOfRange(index.blockCount, first, last);
+            blockMin = Arrays.copyOfRange(index.blockMin, first, last);
+            blockMax = Arrays.copyOfRange(index.blockMax, first, last);
+            blockStats = true;
+        }
+
+        /**
+         * Scans the partition. The blocks with all the numbers on one side of
+         * the pivot are not read, their count is added and their number
+         * closest to the pivot is offered to the cache.
+         */
+        void scan(FileScanner scanner) throws IOException {
+            if (blockLimits == null) {
+                scanner.scan(pos, limit, this);
+                return;
+            }
+            for (int i = 0; i < blockLimits.length; i++) {
+                scan(scanner, i);
+            }
+            blockStats = true;
+        }
+
+        /**
+         * Scans a block of the partition, recording its stats if they are not
+         * known yet.
+         */
+        void scan(FileScanner scanner, int block) throws IOException {
+            final long start = (block == 0) ? pos : blockLimits[block - 1];
+            if (!blockStats) {
+                final long before = count;
+                min = Long.MAX_VALUE;
+                max = Long.MIN_VALUE;
+                scanner.scan(start, blockLimits[block], this);
+                blockCount[block] = count - before;
+                blockMin[block] = min;
+                blockMax[block] = max;
+            } else if (skips(block)) {
+                skip(block);
+            } else {
+                scanner.scan(start, blockLimits[block], this);
+            }
+        }
+
+        /**
+         * Scans the partition once for the targets, all with the blocks and
+         * the stats of the partition. A block is read if any of them needs
+         * it, and given only to the ones that need it.
+         *
+         * @param list the partition of each target
+         * @param len the number of targets
+         */
+        static void scan(FileScanner scanner, Data[] list, int len) throws IOException {
+            if (len == 1) {
+                list[0].scan(scanner);
+                return;
+            }
+            final Data first = list[0];
+            if (first.blockLimits == null) {
+                scanner.scan(first.pos, first.limit, new FanOut(list, len));
+                return;
+            }
+            final FanOut fanOut = new FanOut(new Data[len], 0);
+            for (int i = 0; i < first.blockLimits.length; i++) {
+                scan(scanner, list, len, i, fanOut);
+            }
+        }
+
+        /**
+         * Scans a block once for the targets, which must have the stats of
+         * the blocks unless there's only one.
+         *
+         * @param fanOut the handler given the batches, with space for all the
+         * targets
+         */
+        static void scan(FileScanner scanner, Data[] list, int len, int block, FanOut fanOut) throws IOException {
+            if (len == 1) {
+                list[0].scan(scanner, block);
+                return;
+            }
+            final Data first = list[0];
+            final long start = (block == 0) ? first.pos : first.blockLimits[block - 1];
+            final Data[] readers = fanOut.list;
+            int readersLen = 0;
+            for (int j = 0; j < len; j++) {
+                if (list[j].skips(block)) {
+                    list[j].skip(block);
+                } else {
+                    readers[readersLen++] = list[j];
+                }
+            }
+            if (readersLen == 1) {
+                scanner.scan(start, first.blockLimits[block], readers[0]);
+            } else if (readersLen > 1) {
+                fanOut.len = readersLen;
+                scanner.scan(start, first.blockLimits[block], fanOut);
+            }
+        }
+
+        /**
+         * @return true if all the numbers of the block are on one side of the
+         * pivot
+         */
+        private boolean skips(int block) {
+            return blockCount[block] == 0 || blockMax[block] < pivot || blockMin[block] > pivot;
+        }
+
+        private void skip(int block) {
+            final long num = blockCount[block];
+            count += num;
+            if (num == 0) {
+                return;
+            }
+            if (blockMax[block] < pivot) {
+                countLeft += num;
+                updateCacheLeft(blockMax[block]);
+                skipLeftBound = Math.max(skipLeftBound, blockMax[block]);
+            } else {
+                countRight += num;
+                updateCacheRight(blockMin[block]);
+                skipRightBound = Math.min(skipRightBound, blockMin[block]);
+            }
+        }
+
+        /**
+         * Counts the batch without branching on the pivot, then sends to the
+         * caches only the numbers inside the window they still accept. Once
+         * the caches are full most numbers are outside the window, so the
+         * remaining branch is well predicted.
+         */
+        @Override
+        public void handle(long[] nums, int len) {
+            final long pivot = this.pivot;
+            long left = 0, equal = 0;
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                left += (num < pivot) ? 1 : 0;
+                equal += (num == pivot) ? 1 : 0;
+            }
+            if (blockLimits != null && !blockStats) {
+                long min = this.min, max = this.max, sum = this.sum;
+                for (int i = 0; i < len; i++) {
+                    min = Math.min(min, nums[i]);
+                    max = Math.max(max, nums[i]);
+                    sum += nums[i];
+                }
+                this.min = min;
+                this.max = max;
+                this.sum = sum;
+            }
+            if (sample != null) {
+                sample(nums, len);
+            }
+            if (equal > 0 && !allowDuplicates && dupCount + equal > 1) {
+                throw new DuplicateNumberException("Duplicate number found: " + pivot);
+            }
+            count += len;
+            countLeft += left;
+            countRight += len - left - equal;
+            dupCount += equal;
+            // [low, high] as an unsigned range, the window only shrinks
+            long low = windowLow();
+            long span = windowHigh() - low;
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                if (Long.compareUnsigned(num - low, span) <= 0) {
+                    if (num < pivot) {
+                        updateCacheLeft(num);
+                    } else if (num > pivot) {
+                        updateCacheRight(num);
+                    } else {
+                        continue;
+                    }
+                    low = windowLow();
+                    span = windowHigh() - low;
+                }
+            }
+        }
+
+        /**
+         * Adds to the sample the numbers of the batch on the stride. When the
+         * sample is full every other number is dropped and the stride
+         * doubles, so the sample stays evenly spread over the partition.
+         */
+        private void sample(long[] nums, int len) {
+            int i = (int) (sampleNext - count);
+            for (; i < len; i += sampleStride) {
+                if (sampleLen == sample.length) {
+                    for (int j = 0; j < sampleLen >> 1; j++) {
+                        sample[j] = sample[j << 1];
+                    }
+                    sampleLen >>= 1;
+                    sampleStride <<= 1;
+                }
+                sample[sampleLen++] = nums[i];
+            }
+            sampleNext = count + i;
+        }
+
+        /**
+         * @return the smallest number the left cache still accepts
+         */
+        private long windowLow() {
+            return prevNd < prevNdLim ? Long.MIN_VALUE : cache[0];
+        }
+
+        /**
+         * @return the biggest number the right cache still accepts
+         */
+        private long windowHigh() {
+            return nextSt >= nextStLim ? Long.MAX_VALUE : cache[cache.length - 1];
         }
 
         public void updateCacheLeft(long num) {
@@ -223,12 +804,14 @@ public class MedianFinderStrategyPivotWithCache implements MedianFinderStrategy
                 int idx = Arrays.binarySearch(cache, 0, prevNdLim, num);
                 if (idx < 0) {
                     idx = -(idx + 2);
-                    if (idx > -1) {
-                        if (idx > 0) {
-                            System.arraycopy(cache, 1, cache, 0, idx);
-                        }
-                        cache[idx] = num;
+                }
+                // equal numbers are kept, the cache holds the biggest numbers
+                // with repetitions
+                if (idx > -1) {
+                    if (idx > 0) {
+                        System.arraycopy(cache, 1, cache, 0, idx);
                     }
+                    cache[idx] = num;
                 }
             }
         }
@@ -243,15 +826,212 @@ public class MedianFinderStrategyPivotWithCache implements MedianFinderStrategy
                 int idx = Arrays.binarySearch(cache, nextStLim, cache.length, num);
                 if (idx < 0) {
                     idx = -(idx + 1);
-                    if (idx < cache.length) {
-                        if (idx > nextStLim) {
-                            System.arraycopy(cache, idx, cache,
-                                    idx + 1, cache.length - idx - 1);
-                        }
-                        cache[idx] = num;
+                }
+                if (idx < cache.length) {
+                    if (idx < cache.length - 1) {
+                        System.arraycopy(cache, idx, cache,
+                                idx + 1, cache.length - idx - 1);
+                    }
+                    cache[idx] = num;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the batches to several partitions, of different targets.
+     */
+    protected static class FanOut implements NumberHandler {
+
+        final Data[] list;
+        int len;
+
+        FanOut(Data[] list, int len) {
+            this.list = list;
+            this.len = len;
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < this.len; i++) {
+                list[i].handle(nums, len);
+            }
+        }
+    }
+
+    /**
+     * A number to find, on a rank or the mean of two ranks, with its pivot
+     * and partitions. The ranks are known after the first scan.
+     */
+    protected static class Target {
+
+        final long rank;
+        final double quantile;
+        long lowRank, highRank;
+        long pivot, value;
+        boolean found;
+        Data[] data;
+        Merged merged;
+
+        private Target(long rank, double quantile) {
+            this.rank = rank;
+            this.quantile = quantile;
+        }
+
+        static Target median() {
+            return new Target(-1, Double.NaN);
+        }
+
+        static Target rank(long rank) {
+            if (rank < 0) {
+                throw new IllegalArgumentException("The rank must be bigger or equal to zero.");
+            }
+            return new Target(rank, Double.NaN);
+        }
+
+        static Target quantile(double quantile) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("Invalid quantile " + quantile + ". Must be between zero and one.");
+            }
+            return new Target(-1, quantile);
+        }
+
+        boolean isMedian() {
+            return rank < 0 && Double.isNaN(quantile);
+        }
+
+        void setCount(long count) {
+            if (isMedian()) {
+                lowRank = (count - 1) >> 1;
+                highRank = count >> 1;
+            } else if (rank >= 0) {
+                if (rank >= count) {
+                    throw new MedianFinderException("Rank " + rank + " not found, the file has " + count + " numbers.");
+                }
+                lowRank = highRank = rank;
+            } else {
+                if (count == 0) {
+                    throw new MedianFinderException("No numbers found.");
+                }
+                lowRank = highRank = Math.max(0, Math.min(count - 1, (long) Math.ceil(quantile * count) - 1));
+            }
+        }
+
+        /**
+         * @return true if the first scan should sample the file, to choose the
+         * pivots of targets other than the median
+         */
+        static boolean needSample(Target[] targets) {
+            return targets.length > 1 || !targets[0].isMedian();
+        }
+
+        static long[] values(Target[] targets) {
+            final long[] values = new long[targets.length];
+            for (int i = 0; i < targets.length; i++) {
+                values[i] = targets[i].value;
+            }
+            return values;
+        }
+    }
+
+    /**
+     * The counters and the caches of all the partitions of the last scan. The
+     * caches are merged and sorted. Only the numbers closest to the pivot are
+     * exact on the merged cache (the depth), the others may be missing numbers
+     * that didn't fit the cache of a partition.
+     */
+    protected static class Merged {
+
+        final long[] left, right;
+        int leftLen, rightLen;
+        int leftDepth, rightDepth;
+        long count, countLeft, countRight, dupCount;
+        long value;
+        boolean movedLeft;
+
+        Merged(int size) {
+            this.left = new long[size];
+            this.right = new long[size];
+        }
+
+        void merge(Data[] dataList) {
+            count = countLeft = countRight = dupCount = 0;
+            leftLen = rightLen = 0;
+            leftDepth = rightDepth = Integer.MAX_VALUE;
+            // the numbers beyond the bounds may be missing on the merged cache
+            long leftBound = Long.MIN_VALUE, rightBound = Long.MAX_VALUE;
+            for (Data dta : dataList) {
+                count += dta.count;
+                countLeft += dta.countLeft;
+                countRight += dta.countRight;
+                dupCount += dta.dupCount;
+                final int leftSize = dta.prevNd;
+                System.arraycopy(dta.cache, 0, left, leftLen, leftSize);
+                leftLen += leftSize;
+                if (leftSize < dta.countLeft) {
+                    // full, and sorted, or with skipped blocks where only
+                    // the biggest number is exact
+                    final boolean full = dta.prevNd == dta.prevNdLim;
+                    final int exact = dta.skipLeftBound == Long.MIN_VALUE ? leftSize : Math.min(leftSize, 1);
+                    if (exact < leftDepth) {
+                        leftDepth = exact;
+                    }
+                    final long bound = Math.max(full ? dta.cache[0] : Long.MIN_VALUE, dta.skipLeftBound);
+                    if (bound > leftBound) {
+                        leftBound = bound;
                     }
                 }
+                final int rightSize = dta.cache.length - 1 - dta.nextSt;
+                System.arraycopy(dta.cache, dta.nextSt + 1, right, rightLen, rightSize);
+                rightLen += rightSize;
+                if (rightSize < dta.countRight) {
+                    final boolean full = dta.nextSt < dta.nextStLim;
+                    final int exact = dta.skipRightBound == Long.MAX_VALUE ? rightSize : Math.min(rightSize, 1);
+                    if (exact < rightDepth) {
+                        rightDepth = exact;
+                    }
+                    final long bound = Math.min(full ? dta.cache[dta.cache.length - 1] : Long.MAX_VALUE,
+                            dta.skipRightBound);
+                    if (bound < rightBound) {
+                        rightBound = bound;
+                    }
+                }
+            }
+            Arrays.sort(left, 0, leftLen);
+            Arrays.sort(right, 0, rightLen);
+            if (leftDepth < leftLen) {
+                // all the numbers bigger than the bound are on the cache, plus
+                // the first number equal to it
+                int idx = Arrays.binarySearch(left, 0, leftLen, leftBound);
+                for (; idx < leftLen - 1 && left[idx + 1] == leftBound; idx++);
+                if (leftLen - idx > leftDepth) {
+                    leftDepth = leftLen - idx;
+                }
+            } else {
+                leftDepth = leftLen;
+            }
+            if (rightDepth < rightLen) {
+                int idx = Arrays.binarySearch(right, 0, rightLen, rightBound);
+                for (; idx > 0 && right[idx - 1] == rightBound; idx--);
+                if (idx + 1 > rightDepth) {
+                    rightDepth = idx + 1;
+                }
+            } else {
+                rightDepth = rightLen;
+            }
+        }
+
+        /**
+         * @return the number on the rank. The rank must be inside the depth
+         * of the caches.
+         */
+        long valueAt(long rank, long pivot) {
+            if (rank < countLeft) {
+                return left[leftLen - (int) (countLeft - rank)];
+            } else if (rank < countLeft + dupCount) {
+                return pivot;
             }
+            return right[(int) (rank - countLeft - dupCount)];
         }
     }
 }
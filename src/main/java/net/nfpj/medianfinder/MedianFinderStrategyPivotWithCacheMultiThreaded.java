@@ -20,8 +20,6 @@ package net.nfpj.medianfinder;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -37,8 +35,11 @@ import java.util.concurrent.Future;
 public class MedianFinderStrategyPivotWithCacheMultiThreaded extends MedianFinderStrategyPivotWithCache {
 
     public static final MedianFinderStrategyPivotWithCacheMultiThreaded INSTANCE = new MedianFinderStrategyPivotWithCacheMultiThreaded();
+    // the smaller files are read by a single thread
+    protected static final long MIN_PARTITIONED_FILE_SIZE = 4096;
     //
     protected final int numThreads;
+    protected final ExecutorService executor;
 
     public MedianFinderStrategyPivotWithCacheMultiThreaded() {
         this(DEFAULT_NUMBERS_CACHE_SIZE, Runtime.getRuntime().availableProcessors(),
@@ -62,257 +63,234 @@ public class MedianFinderStrategyPivotWithCacheMultiThreaded extends MedianFinde
 
     public MedianFinderStrategyPivotWithCacheMultiThreaded(int numbersCacheSize, int numberOfThreads,
             PivotSelectionStrategy pivotSelection) {
-        super(numbersCacheSize, pivotSelection);
+        this(numbersCacheSize, numberOfThreads, pivotSelection, ScanStrategyRead.INSTANCE);
+    }
+
+    public MedianFinderStrategyPivotWithCacheMultiThreaded(int numbersCacheSize, int numberOfThreads,
+            PivotSelectionStrategy pivotSelection, ScanStrategy scanStrategy) {
+        this(numbersCacheSize, numberOfThreads, pivotSelection, scanStrategy, false);
+    }
+
+    public MedianFinderStrategyPivotWithCacheMultiThreaded(int numbersCacheSize, int numberOfThreads,
+            PivotSelectionStrategy pivotSelection, ScanStrategy scanStrategy, boolean allowDuplicates) {
+        this(numbersCacheSize, numberOfThreads, pivotSelection, scanStrategy, allowDuplicates, DEFAULT_BLOCK_SIZE);
+    }
+
+    public MedianFinderStrategyPivotWithCacheMultiThreaded(int numbersCacheSize, int numberOfThreads,
+            PivotSelectionStrategy pivotSelection, ScanStrategy scanStrategy, boolean allowDuplicates,
+            long blockSize) {
+        this(numbersCacheSize, numberOfThreads, pivotSelection, scanStrategy, allowDuplicates, blockSize, false);
+    }
+
+    public MedianFinderStrategyPivotWithCacheMultiThreaded(int numbersCacheSize, int numberOfThreads,
+            PivotSelectionStrategy pivotSelection, ScanStrategy scanStrategy, boolean allowDuplicates,
+            long blockSize, boolean useIndex) {
+        this(numbersCacheSize, numberOfThreads, pivotSelection, scanStrategy, allowDuplicates, blockSize, useIndex, null);
+    }
+
+    /**
+     *
+     * @param numbersCacheSize the number of numbers kept before and after the
+     * pivot, on each partition
+     * @param numberOfThreads the number of partitions scanned in parallel.
+     * Zero to use the number of processors.
+     * @param pivotSelection the strategy used to find the initial pivot
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers
+     * @param blockSize the size of the blocks with the minimum and maximum
+     * recorded on the first scan
+     * @param useIndex true to keep the blocks and a sample of the file on a
+     * {@link FileIndex}
+     * @param executor the executor that scans the partitions, shared with
+     * other queries and not shut down. Null to create one for each query.
+     * Waiting for the partitions blocks the calling thread, so the queries
+     * shouldn't run on a fixed pool shared with their partitions; a
+     * {@link java.util.concurrent.ForkJoinPool} runs other tasks while
+     * waiting.
+     */
+    public MedianFinderStrategyPivotWithCacheMultiThreaded(int numbersCacheSize, int numberOfThreads,
+            PivotSelectionStrategy pivotSelection, ScanStrategy scanStrategy, boolean allowDuplicates,
+            long blockSize, boolean useIndex, ExecutorService executor) {
+        super(numbersCacheSize, pivotSelection, scanStrategy, allowDuplicates, blockSize, useIndex);
         this.numThreads = (numberOfThreads > 0) ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+        this.executor = executor;
     }
 
     @Override
-    public long findMedian(File file) throws MedianFinderException, IOException {
-        final long fileSize = file.length();
-        int numPartitions = (fileSize<4096) ? 1 : this.numThreads;
-        final Data[] dataList = new Data[numPartitions];
-        final long avgBlockSize = fileSize / numPartitions;
-        //
-        boolean medianFound = false;
-        long pivot = 0;
+    public MedianFinderStrategyPivotWithCache singleThreaded() {
+        return new MedianFinderStrategyPivotWithCache(numbersCacheSize, pivotSelection, scanStrategy,
+                allowDuplicates, blockSize, useIndex);
+    }
+
+    @Override
+    protected long[] find(File file, Target[] targets) throws MedianFinderException, IOException {
+        final FileIndex index = useIndex ? FileIndex.load(file, blockSize) : null;
+        final int numPartitions = partitions(file, index);
         //
-        ExecutorService executor = Executors.newFixedThreadPool(numPartitions);
+        final ExecutorService executor = (this.executor != null) ? this.executor
+                : Executors.newFixedThreadPool(numPartitions);
         //
-        final RandomAccessFile[] in = new RandomAccessFile[numPartitions];
+        final FileScanner[] scanners = new FileScanner[numPartitions];
         try {
             for (int i = 0; i < numPartitions; i++) {
-                in[i] = new RandomAccessFile(file, "r");
+                scanners[i] = scanStrategy.open(file);
             }
-            pivot = pivotSelection.getPivot(file, in[0]);
+            final long pivot = pivotSelection.getPivot(file, scanners[0], index);
+            final Data[] dataList = split(file, scanners[0], index, numPartitions, targets, pivot);
             //
-            long pos = 0;
-            for (int i = 0; i < numPartitions - 1; ++i) {
-                dataList[i] = new Data(pos, findEndOfBlock(in[0], avgBlockSize + pos), numbersCacheSize);
-                pos = dataList[i].limit;
+            final Future<?>[] tasks = new Future<?>[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                final int idx = i;
+                tasks[i] = executor.submit(() -> {
+                    dataList[idx].scan(scanners[idx]);
+                    return null;
+                });
+            }
+            waitFor(tasks);
+            if (useIndex && index == null) {
+                createIndex(file, dataList).save(file);
             }
-            dataList[numPartitions - 1] = new Data(pos, file.length(), numbersCacheSize);
+            start(targets, dataList, index);
             //
-            final long allPositiveLimit = numbersCacheSize * 4;
-            final long allNegativeLimit = -allPositiveLimit;
-            long[] cache = new long[numbersCacheSize * 4];
-            Future[] tasks = new Future[numPartitions];
-            long count, countLeft, countRight, dupCount;
-//            long countIt = 0;
-            while (!medianFound) {
-//                countIt++;
-                count = 0;
-                countLeft = 0;
-                countRight = 0;
-                dupCount = 0;
-                final long p = pivot;
+            // the partitions of the targets not found yet, for each partition of the file
+            final Data[][] open = new Data[numPartitions][targets.length];
+            final int[] openLen = new int[numPartitions];
+            int len;
+            do {
+                len = 0;
                 for (int i = 0; i < numPartitions; i++) {
-                    if (dataList[i].check) {
+                    openLen[i] = 0;
+                    for (Target target : targets) {
+                        // partitions with all the numbers on the other side
+                        // of the pivot keep the same counters
+                        if (!target.found && target.data[i].check) {
+                            target.data[i].clearCounters(target.pivot);
+                            open[i][openLen[i]++] = target.data[i];
+                        }
+                    }
+                    tasks[i] = null;
+                    if (openLen[i] > 0) {
                         final int idx = i;
                         tasks[i] = executor.submit(() -> {
-                            try {
-                                countLeftRight(in[idx], dataList[idx], p);
-                            } catch (IOException ex) {
-                                throw new RuntimeException(ex);
-                            }
+                            Data.scan(scanners[idx], open[idx], openLen[idx]);
+                            return null;
                         });
                     }
                 }
-
-                for (int i = 0; i < numPartitions; i++) {
-                    try {
-                        tasks[i].get();
-                    } catch (ExecutionException ex) {
-                        if (ex.getCause() instanceof MedianFinderException) {
-                            throw (MedianFinderException) ex.getCause();
-                        } else if (ex.getCause() instanceof RuntimeException) {
-                            throw (RuntimeException) ex.getCause();
-                        } else {
-                            throw new RuntimeException(ex);
-                        }
-                    } catch (InterruptedException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                    count += dataList[i].count;
-                    countLeft += dataList[i].countLeft;
-                    countRight += dataList[i].countRight;
-                    dupCount += dataList[i].dupCount;
-                }
-                if (dupCount > 1) {
-                    throw new DuplicateNumberException("Duplicate number found.");
-                }
-                //
-                if ((count & 1) == 0 && ((countLeft - countRight) == 1 || (countRight - countLeft) == 1)) {
-                    long other;
-                    if (countLeft > countRight) {
-                        other = Long.MIN_VALUE;
-                        for (int i = 0; i < numPartitions; i++) {
-                            other = NumberUtil.getBiggerThan(other, dataList[i].cache, 0, dataList[i].prevNd);
-                        }
-                    } else {
-                        other = Long.MAX_VALUE;
-                        for (int i = 0; i < numPartitions; i++) {
-                            other = NumberUtil.getSmallerThan(other, dataList[i].cache,
-                                    dataList[i].nextSt + 1, dataList[i].cache.length);
-                        }
-                    }
-                    pivot = (pivot + other) / 2;
-                    medianFound = true;
-                } else if (countLeft > countRight) {
-                    //                System.out.println("Pivot = " + pivot
-                    //                        + " Prev = " + prev + " count = " + count
-                    //                        + " countLeft = " + countLeft + " countRight = " + countRight);
-                    int maxIdx = dataList[0].prevNdLim;
-                    int cacheIdx = 0;
-                    for (int i = 0; i < numPartitions; i++) {
-                        //
-                        dataList[i].check = dataList[i].countRight != dataList[i].count;
-                        if (dataList[i].prevNd > 0) {
-                            System.arraycopy(dataList[i].cache, 0, cache, cacheIdx, dataList[i].prevNd);
-                            cacheIdx += dataList[i].prevNd;
-                        }
-                        dataList[i].prevNdLim = dataList[i].nextStLim = dataList[i].cache.length - 1;
+                waitFor(tasks);
+                for (Target target : targets) {
+                    if (!target.found) {
+                        next(target);
+                        len++;
                     }
-                    Arrays.sort(cache, 0, cacheIdx);
-                    int idx = (int) (cacheIdx - ((countLeft - countRight) >> 1));
-                    if (idx > allNegativeLimit) {
-                        int minIdx = cacheIdx - maxIdx;
-                        if (minIdx < 0) {
-                            minIdx = 0;
-                        }
-                        pivot = cache[idx < 0 ? 0 : idx < cacheIdx ? idx : cacheIdx - 1];
-                    } else {
-                        pivot = cache[0];
-                        for (int i = 0; i < numPartitions; i++) {
-                            dataList[i].check = true;
-                            dataList[i].prevNdLim = dataList[i].nextStLim = numbersCacheSize >> 1;
-                        }
-                    }
-                } else if (countLeft < countRight) {
-                    //                System.out.println("Pivot = " + pivot
-                    //                        + " Next = " + next + " count = " + count
-                    //                        + " countLeft = " + countLeft + " countRight = " + countRight);
-                    int maxIdx = dataList[0].cache.length - dataList[0].nextStLim;
-                    int cacheIdx = 0;
-                    for (int i = 0; i < numPartitions; i++) {
-                        //
-                        dataList[i].check = dataList[i].countLeft != dataList[i].count;
-                        final int nextSt = dataList[i].nextSt + 1;
-                        if (nextSt < dataList[i].cache.length) {
-                            System.arraycopy(dataList[i].cache, nextSt, cache, cacheIdx,
-                                    dataList[i].cache.length - nextSt);
-                            cacheIdx += dataList[i].cache.length - nextSt;
-                        }
-                        dataList[i].prevNdLim = dataList[i].nextStLim = 1;
-                    }
-                    Arrays.sort(cache, 0, cacheIdx);
-                    int idx = (int) ((countRight - countLeft) >> 1) - 1;
-                    if (idx < allPositiveLimit) {
-                        if (maxIdx > cacheIdx) {
-                            maxIdx = cacheIdx;
-                        }
-                        pivot = cache[idx < maxIdx ? idx > -1 ? idx : 0 : maxIdx - 1];
-                    } else {
-                        pivot = cache[cacheIdx - 1];
-                        for (int i = 0; i < numPartitions; i++) {
-                            dataList[i].check = true;
-                            dataList[i].prevNdLim = dataList[i].nextStLim = numbersCacheSize >> 1;
-                        }
-                    }
-                } else {
-                    medianFound = true;
                 }
-            }
-            //System.out.println("CountIt: " + countIt);
+            } while (len > 0);
         } finally {
-            executor.shutdownNow();
+            if (executor != this.executor) {
+                executor.shutdownNow();
+            }
             for (int i = 0; i < numPartitions; i++) {
-                if (in[i] != null) {
-                    in[i].close();
+                if (scanners[i] != null) {
+                    scanners[i].close();
                 }
             }
         }
-        return medianFound ? pivot : -1;
+        return Target.values(targets);
     }
 
-    @Override
-    public String toString() {
-        return "MedianFinderStrategyPivotWithCacheMultiThreaded{" + "numThreads=" + numThreads + '}';
+    /**
+     * @return the number of partitions of the file
+     */
+    protected int partitions(File file, FileIndex index) {
+        int numPartitions = (file.length() < MIN_PARTITIONED_FILE_SIZE) ? 1 : this.numThreads;
+        if (index != null && index.blockLimits.length < numPartitions) {
+            numPartitions = Math.max(1, index.blockLimits.length);
+        }
+        return numPartitions;
     }
 
-
-
-    private void countLeftRight(RandomAccessFile in, Data dta, long pivot) throws MedianFinderException, IOException {
-        final byte[] readBuff = new byte[Constants.BUFFER_SIZE];
-        int buffInitPos = 0;
-        dta.clearCounters();
-        //
-        int eolIdx, stIdx;
-        int readLen;
-        long remaining = dta.limit - dta.pos;
-        in.seek(dta.pos);
-        while (remaining > 0 && (readLen = in.read(readBuff, buffInitPos,
-                (readBuff.length - buffInitPos < remaining) ? readBuff.length - buffInitPos : (int) remaining)) != -1) {
-            remaining -= readLen;
-            readLen += buffInitPos;
-            stIdx = eolIdx = 0;
-            buffInitPos = 0;
-            while (eolIdx < readLen) {
-                for (; eolIdx < readLen && readBuff[eolIdx] != Constants.EOL; eolIdx++);
-                if (stIdx < eolIdx) {
-                    if (eolIdx < readLen) {
-                        dta.count++;
-                        long num = NumberUtil.toLong(readBuff, stIdx, eolIdx - 1);
-                        //System.out.println(num);
-                        if (pivot > num) {
-                            dta.countLeft++;
-                            dta.updateCacheLeft(num);
-                        } else if (pivot < num) {
-                            dta.countRight++;
-                            dta.updateCacheRight(num);
-                        } else if (dta.dupCount > 0) {
-                            throw new DuplicateNumberException("Duplicate number found: " + num);
-                        } else {
-                            ++dta.dupCount;
-                        }
-                        stIdx = ++eolIdx;
-                    } else if (stIdx < readLen) {
-                        buffInitPos = readLen - stIdx;
-                        System.arraycopy(readBuff, stIdx, readBuff, 0, buffInitPos);
-                    }
-                } else {
-                    stIdx = ++eolIdx;
+    /**
+     * Splits the file on the partitions of the first scan, on the blocks of
+     * the index or on lines found with the scanner.
+     */
+    protected Data[] split(File file, FileScanner scanner, FileIndex index, int numPartitions, Target[] targets,
+            long pivot) throws IOException {
+        final Data[] dataList = new Data[numPartitions];
+        if (index != null) {
+            // the partitions end on the blocks of the index, no probing
+            final int blocks = index.blockLimits.length;
+            for (int i = 0, first = 0; i < numPartitions; i++) {
+                final int last = (int) ((long) (i + 1) * blocks / numPartitions);
+                dataList[i] = newData(0, i, first == 0 ? 0 : index.blockLimits[first - 1],
+                        index.blockLimits[last - 1]);
+                dataList[i].split(index, first, last);
+                first = last;
+            }
+        } else {
+            final long[] limits = partitionLimits(scanner, file.length(), numPartitions);
+            for (int i = 0; i < numPartitions; i++) {
+                dataList[i] = newData(0, i, limits[i], limits[i + 1]);
+                dataList[i].split(scanner, blockSize);
+                if (useIndex || Target.needSample(targets)) {
+                    // the sample is shared by the partitions
+                    dataList[i].sample = newSample(i, Math.max(2, (FileIndex.SAMPLE_SIZE / numPartitions) & ~1));
                 }
             }
         }
-        if (buffInitPos > 0) {
-            dta.count++;
-            long num = NumberUtil.toLong(readBuff, 0, buffInitPos - 1);
-            if (pivot > num) {
-                dta.countLeft++;
-                dta.updateCacheLeft(num);
-            } else if (pivot < num) {
-                dta.countRight++;
-                dta.updateCacheRight(num);
-            } else if (dta.dupCount > 0) {
-                throw new DuplicateNumberException("Duplicate number found: " + num);
-            } else {
-                ++dta.dupCount;
-            }
+        for (Data dta : dataList) {
+            dta.allowDuplicates = allowDuplicates;
+            dta.clearCounters(pivot);
         }
+        return dataList;
     }
 
-    private static long findEndOfBlock(RandomAccessFile in, long pos) throws IOException {
-        byte[] arr = new byte[Constants.BUFFER_SIZE];
-        in.seek(pos);
-        int len = in.read(arr);
-        if (len > 0) {
-            int eolIdx = 0;
-            for (; eolIdx < len && arr[eolIdx] != Constants.EOL; eolIdx++);
-            if (eolIdx < len) {
-                return pos + eolIdx;
+    /**
+     * Splits the file in partitions of about the same size, each ending where
+     * a block of the scanner can end.
+     *
+     * @return the start of each partition followed by the end of the last
+     */
+    protected static long[] partitionLimits(FileScanner scanner, long fileSize, int numPartitions)
+            throws IOException {
+        final long[] limits = new long[numPartitions + 1];
+        limits[numPartitions] = fileSize;
+        final long avgBlockSize = fileSize / numPartitions;
+        for (int i = 1; i < numPartitions; i++) {
+            limits[i] = Math.min(fileSize, Math.max(limits[i - 1],
+                    scanner.findEndOfBlock(limits[i - 1] + avgBlockSize)));
+        }
+        return limits;
+    }
+
+    /**
+     * Waits for the tasks, throwing the exception of the first that failed.
+     */
+    protected static void waitFor(Future<?>[] tasks) throws IOException {
+        for (Future<?> task : tasks) {
+            if (task == null) {
+                continue;
+            }
+            try {
+                task.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                } else if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                } else {
+                    throw new RuntimeException(ex);
+                }
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
             }
         }
-        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "MedianFinderStrategyPivotWithCacheMultiThreaded{" + "numThreads=" + numThreads
+                + ", scanStrategy=" + scanStrategy + ", allowDuplicates=" + allowDuplicates + ", blockSize=" + blockSize
+                + ", useIndex=" + useIndex + ", executor=" + executor + '}';
     }
 
 }
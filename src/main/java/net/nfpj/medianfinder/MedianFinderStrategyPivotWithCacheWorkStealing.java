@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Same as {@link MedianFinderStrategyPivotWithCacheMultiThreaded}, but instead
+ * of a partition of the file for each thread, the file is split on small
+ * blocks, ending on a line, taken by the threads one at a time until there
+ * are no more. A thread that finishes its blocks early, or had its blocks
+ * skipped, takes the blocks left by the others, so each scan takes about the
+ * same time on each thread even when the numbers, the skipped blocks or the
+ * load of the machine aren't even.
+ * <p>
+ * Each thread keeps the counters and the cache of the numbers it read, of
+ * blocks from anywhere on the file, merged at the end of the scan as the
+ * partitions of the multithreaded strategy. The blocks are the blocks with the
+ * minimum and maximum of the zone map, so they are always used, with the
+ * default size when the block size is zero.
+ *
+ * @author njacinto
+ */
+public class MedianFinderStrategyPivotWithCacheWorkStealing extends MedianFinderStrategyPivotWithCacheMultiThreaded {
+
+    public static final MedianFinderStrategyPivotWithCacheWorkStealing INSTANCE = new MedianFinderStrategyPivotWithCacheWorkStealing();
+
+    public MedianFinderStrategyPivotWithCacheWorkStealing() {
+        this(DEFAULT_NUMBERS_CACHE_SIZE, 0);
+    }
+
+    public MedianFinderStrategyPivotWithCacheWorkStealing(int numbersCacheSize, int numberOfThreads) {
+        this(numbersCacheSize, numberOfThreads, new PivotSelectionStrategyBestOfN(15), ScanStrategyRead.INSTANCE,
+                false, DEFAULT_BLOCK_SIZE, false);
+    }
+
+    public MedianFinderStrategyPivotWithCacheWorkStealing(int numbersCacheSize, int numberOfThreads,
+            PivotSelectionStrategy pivotSelection, ScanStrategy scanStrategy, boolean allowDuplicates,
+            long blockSize, boolean useIndex) {
+        this(numbersCacheSize, numberOfThreads, pivotSelection, scanStrategy, allowDuplicates, blockSize, useIndex,
+                null);
+    }
+
+    /**
+     *
+     * @param numbersCacheSize the number of numbers kept before and after the
+     * pivot, on each thread
+     * @param numberOfThreads the number of threads taking the blocks. Zero to
+     * use the number of processors.
+     * @param pivotSelection the strategy used to find the initial pivot
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers
+     * @param blockSize the size of the blocks taken by the threads. Zero for
+     * the default.
+     * @param useIndex true to keep the blocks and a sample of the file on a
+     * {@link FileIndex}
+     * @param executor the executor running the threads, shared with other
+     * queries and not shut down. Null to create one for each query.
+     */
+    public MedianFinderStrategyPivotWithCacheWorkStealing(int numbersCacheSize, int numberOfThreads,
+            PivotSelectionStrategy pivotSelection, ScanStrategy scanStrategy, boolean allowDuplicates,
+            long blockSize, boolean useIndex, ExecutorService executor) {
+        super(numbersCacheSize, numberOfThreads, pivotSelection, scanStrategy, allowDuplicates,
+                (blockSize > 0) ? blockSize : DEFAULT_BLOCK_SIZE, useIndex, executor);
+    }
+
+    @Override
+    public MedianFinderStrategyPivotWithCacheMultiThreaded onExecutor(ExecutorService executor, int numberOfThreads) {
+        return new MedianFinderStrategyPivotWithCacheWorkStealing(numbersCacheSize, numberOfThreads, pivotSelection,
+                scanStrategy, allowDuplicates, blockSize, useIndex, executor);
+    }
+
+    @Override
+    protected long[] find(File file, Target[] targets) throws MedianFinderException, IOException {
+        final FileIndex index = useIndex ? FileIndex.load(file, blockSize) : null;
+        final int numWorkers = (file.length() < MIN_PARTITIONED_FILE_SIZE) ? 1 : this.numThreads;
+        //
+        final ExecutorService executor = (this.executor != null) ? this.executor
+                : Executors.newFixedThreadPool(numWorkers);
+        //
+        final FileScanner[] scanners = new FileScanner[numWorkers];
+        try {
+            for (int i = 0; i < numWorkers; i++) {
+                scanners[i] = scanStrategy.open(file);
+            }
+            final long pivot = pivotSelection.getPivot(file, scanners[0], index);
+            // all the workers read the blocks of the whole file
+            final Data[] dataList = new Data[numWorkers];
+            for (int i = 0; i < numWorkers; i++) {
+                dataList[i] = newData(0, i, 0, file.length());
+                if (i > 0) {
+                    dataList[i].share(dataList[0]);
+                } else if (index != null) {
+                    dataList[i].split(index, 0, index.blockLimits.length);
+                } else {
+                    dataList[i].split(scanners[0], blockSize);
+                }
+                if (index == null && (useIndex || Target.needSample(targets))) {
+                    dataList[i].sample = newSample(i, Math.max(2, (FileIndex.SAMPLE_SIZE / numWorkers) & ~1));
+                }
+                dataList[i].allowDuplicates = allowDuplicates;
+                dataList[i].clearCounters(pivot);
+            }
+            //
+            final Data[][] open = new Data[numWorkers][targets.length];
+            for (int i = 0; i < numWorkers; i++) {
+                open[i][0] = dataList[i];
+            }
+            scan(executor, scanners, open, 1);
+            for (Data dta : dataList) {
+                dta.blockStats = true;
+            }
+            if (useIndex && index == null) {
+                createIndex(file, dataList).save(file);
+            }
+            start(targets, dataList, index);
+            //
+            int len;
+            do {
+                len = 0;
+                for (Target target : targets) {
+                    if (!target.found) {
+                        // the blocks of a worker change on every scan, so
+                        // all the workers count again
+                        for (int i = 0; i < numWorkers; i++) {
+                            target.data[i].clearCounters(target.pivot);
+                            open[i][len] = target.data[i];
+                        }
+                        len++;
+                    }
+                }
+                if (len > 0) {
+                    scan(executor, scanners, open, len);
+                    for (Target target : targets) {
+                        if (!target.found) {
+                            next(target);
+                        }
+                    }
+                }
+            } while (len > 0);
+        } finally {
+            if (executor != this.executor) {
+                executor.shutdownNow();
+            }
+            for (int i = 0; i < numWorkers; i++) {
+                if (scanners[i] != null) {
+                    scanners[i].close();
+                }
+            }
+        }
+        return Target.values(targets);
+    }
+
+    /**
+     * Scans the blocks of the file, each worker taking the next block not
+     * taken until there are none left.
+     *
+     * @param open the partitions of the targets, for each worker
+     * @param len the number of targets
+     */
+    private static void scan(ExecutorService executor, FileScanner[] scanners, Data[][] open, int len)
+            throws IOException {
+        final int blocks = open[0][0].blockLimits.length;
+        final AtomicInteger next = new AtomicInteger();
+        final Future<?>[] tasks = new Future<?>[open.length];
+        for (int i = 0; i < open.length; i++) {
+            final int idx = i;
+            tasks[i] = executor.submit(() -> {
+                final FanOut fanOut = new FanOut(new Data[len], 0);
+                for (int block; (block = next.getAndIncrement()) < blocks;) {
+                    Data.scan(scanners[idx], open[idx], len, block, fanOut);
+                }
+                return null;
+            });
+        }
+        waitFor(tasks);
+    }
+
+    @Override
+    public String toString() {
+        return "MedianFinderStrategyPivotWithCacheWorkStealing{" + "numThreads=" + numThreads
+                + ", scanStrategy=" + scanStrategy + ", allowDuplicates=" + allowDuplicates + ", blockSize=" + blockSize
+                + ", useIndex=" + useIndex + ", executor=" + executor + '}';
+    }
+}
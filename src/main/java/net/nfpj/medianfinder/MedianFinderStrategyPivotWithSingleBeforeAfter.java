@@ -35,16 +35,29 @@ public class MedianFinderStrategyPivotWithSingleBeforeAfter implements MedianFin
             = new MedianFinderStrategyPivotWithSingleBeforeAfter();
 
     private final PivotSelectionStrategy pivotSelection;
+    private final boolean allowDuplicates;
 
     public MedianFinderStrategyPivotWithSingleBeforeAfter() {
         this(PivotSelectionStrategyBestOfN.BEST_OF_7);
     }
 
     public MedianFinderStrategyPivotWithSingleBeforeAfter(PivotSelectionStrategy pivotSelection) {
+        this(pivotSelection, false);
+    }
+
+    /**
+     *
+     * @param pivotSelection the strategy used to find the initial pivot
+     * @param allowDuplicates true to accept repeated numbers, finding the
+     * median of the multiset
+     */
+    public MedianFinderStrategyPivotWithSingleBeforeAfter(PivotSelectionStrategy pivotSelection,
+            boolean allowDuplicates) {
         if (pivotSelection == null) {
             throw new IllegalArgumentException("PivotSelectionStrategy cannot be null.");
         }
         this.pivotSelection = pivotSelection;
+        this.allowDuplicates = allowDuplicates;
     }
 
     @Override
@@ -58,7 +71,7 @@ public class MedianFinderStrategyPivotWithSingleBeforeAfter implements MedianFin
         pivot = pivotSelection.getPivot(file, in);
         //
         int eolIdx, stIdx;
-        int dupCount;
+        long dupCount;
         int readLen;
         boolean medianFound = false;
         while (!medianFound) {
@@ -75,11 +88,11 @@ public class MedianFinderStrategyPivotWithSingleBeforeAfter implements MedianFin
                 stIdx = eolIdx = 0;
                 buffInitPos = 0;
                 while (eolIdx < readLen) {
-                    for (; eolIdx < readLen && readBuff[eolIdx] != Constants.EOL; eolIdx++);
+                    eolIdx = NumberUtil.indexOfEol(readBuff, eolIdx, readLen);
                     if (stIdx < eolIdx) {
                         if (eolIdx < readLen) {
                             count++;
-                            long num = NumberUtil.toLong(readBuff, stIdx, eolIdx - 1);
+                            long num = NumberUtil.toLongSwar(readBuff, stIdx, eolIdx - 1);
                             //System.out.println(num);
                             if (pivot > num) {
                                 //System.out.println(num);
@@ -92,7 +105,7 @@ public class MedianFinderStrategyPivotWithSingleBeforeAfter implements MedianFin
                                 if (num < next) {
                                     next = num;
                                 }
-                            } else if (dupCount > 0) {
+                            } else if (dupCount > 0 && !allowDuplicates) {
                                 throw new DuplicateNumberException("Duplicate number found: " + num);
                             } else {
                                 dupCount++;
@@ -109,7 +122,7 @@ public class MedianFinderStrategyPivotWithSingleBeforeAfter implements MedianFin
             }
             if (buffInitPos > 0) {
                 count++;
-                long num = NumberUtil.toLong(readBuff, 0, buffInitPos - 1);
+                long num = NumberUtil.toLongSwar(readBuff, 0, buffInitPos - 1);
                 if (pivot > num) {
                     countLeft++;
                     if (num > prev) {
@@ -120,17 +133,33 @@ public class MedianFinderStrategyPivotWithSingleBeforeAfter implements MedianFin
                     if (num < next) {
                         next = num;
                     }
+                } else if (dupCount > 0 && !allowDuplicates) {
+                    throw new DuplicateNumberException("Duplicate number found: " + num);
+                } else {
+                    dupCount++;
                 }
             }
-            if ((count & 1) == 0 && ((countLeft - countRight) == 1 || (countRight - countLeft) == 1)) {
-                pivot = ((countLeft > countRight) ? (pivot + prev) : (pivot + next)) / 2;
-                medianFound = true;
-            } else if (countLeft > countRight) {
+            if (count == 0) {
+                break;
+            }
+            // ranks of the middle numbers, the numbers equal to the pivot
+            // take the ranks from countLeft to countLeft + dupCount - 1
+            final long lowRank = (count - 1) >> 1;
+            final long highRank = count >> 1;
+            if (lowRank < countLeft - 1) {
                 pivot = prev;
-            } else if (countLeft < countRight) {
+            } else if (highRank > countLeft + dupCount) {
                 pivot = next;
             } else {
-                medianFound = true;
+                final long low = lowRank < countLeft ? prev : lowRank < countLeft + dupCount ? pivot : next;
+                final long high = highRank < countLeft ? prev : highRank < countLeft + dupCount ? pivot : next;
+                if (allowDuplicates || low == pivot || high == pivot) {
+                    pivot = (lowRank == highRank) ? low : NumberUtil.mean(low, high);
+                    medianFound = true;
+                } else {
+                    // moves to the median, the next scan checks it isn't repeated
+                    pivot = low;
+                }
             }
         }
 //        System.out.println("Pivot = " + pivot + " count = " + count
@@ -140,6 +169,7 @@ public class MedianFinderStrategyPivotWithSingleBeforeAfter implements MedianFin
 
     @Override
     public String toString() {
-        return "MedianFinderStrategyPivotWithSingleBeforeAfter{" + "pivotSelection=" + pivotSelection + '}';
+        return "MedianFinderStrategyPivotWithSingleBeforeAfter{" + "pivotSelection=" + pivotSelection
+                + ", allowDuplicates=" + allowDuplicates + '}';
     }
 }
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds an approximate median with a single scan. Each thread builds a
+ * {@link QuantileSketch} over a partition of the file and the sketches are
+ * merged, giving the median within a known rank error (see
+ * {@link #estimate(File)}).
+ * When the exact median is needed a second scan counts the numbers before the
+ * range of ranks around the median given by the sketch and collects the ones
+ * inside it, so the median is found sorting a small part of the file. If the
+ * median falls outside of the range, which happens with less than 1% chance,
+ * or the range has too many numbers, the median is found with
+ * {@link MedianFinderStrategySpill}.
+ * Repeated numbers are only detected when finding the exact median.
+ *
+ * @author njacinto
+ */
+public class MedianFinderStrategySketch implements MedianFinderStrategy {
+
+    public static final MedianFinderStrategySketch INSTANCE = new MedianFinderStrategySketch();
+    public static final int DEFAULT_MAX_COLLECT_SIZE = 1 << 22;
+
+    private final int k;
+    private final int numThreads;
+    private final ScanStrategy scanStrategy;
+    private final boolean exact;
+    private final boolean allowDuplicates;
+
+    public MedianFinderStrategySketch() {
+        this(QuantileSketch.DEFAULT_K);
+    }
+
+    public MedianFinderStrategySketch(int k) {
+        this(k, Runtime.getRuntime().availableProcessors(), ScanStrategyRead.INSTANCE);
+    }
+
+    public MedianFinderStrategySketch(int k, int numberOfThreads, ScanStrategy scanStrategy) {
+        this(k, numberOfThreads, scanStrategy, false, false);
+    }
+
+    /**
+     *
+     * @param k the size of the sketches, see {@link QuantileSketch}
+     * @param numberOfThreads the number of threads, each scanning a partition
+     * of the file. Zero to use the number of processors.
+     * @param scanStrategy the strategy used to read the file
+     * @param exact true to find the exact median with a second scan, false to
+     * return the estimate of the sketch
+     * @param allowDuplicates true to accept repeated numbers, when finding
+     * the exact median
+     */
+    public MedianFinderStrategySketch(int k, int numberOfThreads, ScanStrategy scanStrategy, boolean exact,
+            boolean allowDuplicates) {
+        if (scanStrategy == null) {
+            throw new IllegalArgumentException("ScanStrategy cannot be null.");
+        }
+        if (k < QuantileSketch.MIN_K) {
+            throw new IllegalArgumentException("The k of the sketch must be at least " + QuantileSketch.MIN_K);
+        }
+        this.k = k;
+        this.numThreads = (numberOfThreads > 0) ? numberOfThreads : Runtime.getRuntime().availableProcessors();
+        this.scanStrategy = scanStrategy;
+        this.exact = exact;
+        this.allowDuplicates = allowDuplicates;
+    }
+
+    @Override
+    public long findMedian(File file) throws MedianFinderException, IOException {
+        final long[] limits = partition(file);
+        final ExecutorService executor = Executors.newFixedThreadPool(limits.length - 1);
+        try {
+            final Estimate estimate = estimate(file, limits, executor);
+            return exact ? refine(file, limits, executor, estimate) : estimate.median;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Finds the approximate median with a single scan of the file.
+     */
+    public Estimate estimate(File file) throws MedianFinderException, IOException {
+        final long[] limits = partition(file);
+        final ExecutorService executor = Executors.newFixedThreadPool(limits.length - 1);
+        try {
+            return estimate(file, limits, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MedianFinderStrategySketch{" + "k=" + k + ", numThreads=" + numThreads + ", scanStrategy=" + scanStrategy
+                + ", exact=" + exact + ", allowDuplicates=" + allowDuplicates + '}';
+    }
+
+    /**
+     * Splits the file in one partition per thread, as the multithreaded
+     * strategy does.
+     *
+     * @return the start of each partition followed by the end of the last
+     */
+    private long[] partition(File file) throws IOException {
+        final long fileSize = file.length();
+        final int numPartitions = (fileSize < MedianFinderStrategyPivotWithCacheMultiThreaded.MIN_PARTITIONED_FILE_SIZE)
+                ? 1 : numThreads;
+        try (FileScanner scanner = scanStrategy.open(file)) {
+            return MedianFinderStrategyPivotWithCacheMultiThreaded.partitionLimits(scanner, fileSize, numPartitions);
+        }
+    }
+
+    private Estimate estimate(File file, long[] limits, ExecutorService executor) throws IOException {
+        final QuantileSketch[] sketches = new QuantileSketch[limits.length - 1];
+        for (int i = 0; i < sketches.length; i++) {
+            sketches[i] = new QuantileSketch(k);
+        }
+        scan(file, limits, sketches, executor);
+        final QuantileSketch sketch = sketches[0];
+        for (int i = 1; i < sketches.length; i++) {
+            sketch.merge(sketches[i]);
+        }
+        if (sketch.getCount() == 0) {
+            throw new MedianFinderException("No numbers found on file: " + file);
+        }
+        return new Estimate(sketch, scanStrategy);
+    }
+
+    /**
+     * Scans the range of ranks around the median given by the estimate.
+     */
+    private long refine(File file, long[] limits, ExecutorService executor, Estimate estimate) throws IOException {
+        final Bracket[] brackets = new Bracket[limits.length - 1];
+        for (int i = 0; i < brackets.length; i++) {
+            brackets[i] = new Bracket(estimate.low, estimate.high, DEFAULT_MAX_COLLECT_SIZE / brackets.length);
+        }
+        scan(file, limits, brackets, executor);
+        long below = 0, inside = 0;
+        boolean overflow = false;
+        for (Bracket bracket : brackets) {
+            below += bracket.below;
+            inside += bracket.len;
+            overflow |= bracket.values == null;
+        }
+        final long lowRank = (estimate.count - 1) >> 1;
+        final long highRank = estimate.count >> 1;
+        if (overflow || lowRank < below || highRank >= below + inside) {
+            return new MedianFinderStrategySpill(MedianFinderStrategySpill.DEFAULT_MAX_COLLECT_SIZE, scanStrategy,
+                    allowDuplicates).findMedian(file);
+        }
+        final long[] values = new long[(int) inside];
+        int len = 0;
+        for (Bracket bracket : brackets) {
+            System.arraycopy(bracket.values, 0, values, len, bracket.len);
+            len += bracket.len;
+        }
+        Arrays.sort(values);
+        // all the numbers equal to the middle ones are inside the range
+        final int lowIdx = (int) (lowRank - below), highIdx = (int) (highRank - below);
+        final long low = values[lowIdx], high = values[highIdx];
+        checkDuplicate(lowIdx != highIdx && low == high, low);
+        checkDuplicate(lowIdx > 0 && values[lowIdx - 1] == low, low);
+        checkDuplicate(highIdx < len - 1 && values[highIdx + 1] == high, high);
+        return scanStrategy.mean(low, high);
+    }
+
+    private void checkDuplicate(boolean duplicate, long num) {
+        if (duplicate && !allowDuplicates) {
+            throw new DuplicateNumberException("Duplicate number found: " + num);
+        }
+    }
+
+    /**
+     * Scans each partition with its handler, on the executor.
+     */
+    private void scan(File file, long[] limits, NumberHandler[] handlers, ExecutorService executor)
+            throws IOException {
+        final Future<?>[] tasks = new Future<?>[handlers.length];
+        for (int i = 0; i < handlers.length; i++) {
+            final int idx = i;
+            tasks[i] = executor.submit((Callable<Void>) () -> {
+                try (FileScanner scanner = scanStrategy.open(file)) {
+                    scanner.scan(limits[idx], limits[idx + 1], handlers[idx]);
+                }
+                return null;
+            });
+        }
+        MedianFinderStrategyPivotWithCacheMultiThreaded.waitFor(tasks);
+    }
+
+    //
+    /**
+     * The approximate median of a file. The median is within
+     * {@link #rankError} of the count from the rank of the true median, with
+     * 99% confidence, and the true median is between {@link #low} and
+     * {@link #high} with the same confidence.
+     */
+    public static class Estimate {
+
+        final long median;
+        final long count;
+        final double rankError;
+        final long low, high;
+
+        Estimate(QuantileSketch sketch, ScanStrategy scanStrategy) {
+            this.count = sketch.getCount();
+            this.rankError = sketch.getRankError();
+            final long lowRank = (count - 1) >> 1;
+            final long highRank = count >> 1;
+            this.median = scanStrategy.mean(sketch.getValueAtRank(lowRank), sketch.getValueAtRank(highRank));
+            final long margin = (long) Math.ceil(rankError * count);
+            this.low = sketch.getValueAtRank(Math.max(0, lowRank - margin));
+            this.high = sketch.getValueAtRank(Math.min(count - 1, highRank + margin));
+        }
+
+        public long getMedian() {
+            return median;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the normalized rank error, zero if the median is exact
+         */
+        public double getRankError() {
+            return rankError;
+        }
+
+        public long getLow() {
+            return low;
+        }
+
+        public long getHigh() {
+            return high;
+        }
+
+        @Override
+        public String toString() {
+            return "Estimate{" + "median=" + median + ", count=" + count + ", rankError=" + rankError
+                    + ", low=" + low + ", high=" + high + '}';
+        }
+    }
+
+    /**
+     * Counts the numbers before the range and collects the ones inside it,
+     * dropping them if they don't fit.
+     */
+    private static class Bracket implements NumberHandler {
+
+        final long lo, hi;
+        final int maxCollectSize;
+        long below;
+        long[] values = new long[Constants.BATCH_SIZE];
+        int len;
+
+        Bracket(long lo, long hi, int maxCollectSize) {
+            this.lo = lo;
+            this.hi = hi;
+            this.maxCollectSize = maxCollectSize;
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                below += (num < lo) ? 1 : 0;
+                if (num >= lo && num <= hi && values != null) {
+                    if (this.len == values.length) {
+                        if (this.len >= maxCollectSize) {
+                            values = null;
+                            continue;
+                        }
+                        values = Arrays.copyOf(values, Math.min(maxCollectSize, this.len << 1));
+                    }
+                    values[this.len++] = num;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Finds the median shrinking a set of candidates kept on spill files. Before
+ * each scan, samples of the candidates give the bounds of a range that should
+ * hold the median. The scan counts the numbers before and after the range and
+ * writes the numbers inside it to a new spill file, on the format of
+ * {@link ScanStrategyBinary}, which becomes the candidates of the next scan.
+ * Only the first scan reads the original file, the following ones read a
+ * small and decreasing part of it, and once the numbers inside the range fit
+ * in memory they are collected and sorted.
+ * When the median is outside of the range the candidates are scanned again
+ * with the range moved to that side, which always removes the numbers of the
+ * previous range.
+ *
+ * @author njacinto
+ */
+public class MedianFinderStrategySpill implements MedianFinderStrategy {
+
+    public static final MedianFinderStrategySpill INSTANCE = new MedianFinderStrategySpill();
+    public static final int DEFAULT_MAX_COLLECT_SIZE = 1 << 20;
+    public static final int DEFAULT_SAMPLE_SIZE = 1024;
+
+    private final int maxCollectSize;
+    private final ScanStrategy scanStrategy;
+    private final boolean allowDuplicates;
+    private final File spillDirectory;
+
+    public MedianFinderStrategySpill() {
+        this(DEFAULT_MAX_COLLECT_SIZE, ScanStrategyRead.INSTANCE);
+    }
+
+    public MedianFinderStrategySpill(ScanStrategy scanStrategy) {
+        this(DEFAULT_MAX_COLLECT_SIZE, scanStrategy);
+    }
+
+    public MedianFinderStrategySpill(int maxCollectSize, ScanStrategy scanStrategy) {
+        this(maxCollectSize, scanStrategy, false);
+    }
+
+    public MedianFinderStrategySpill(int maxCollectSize, ScanStrategy scanStrategy, boolean allowDuplicates) {
+        this(maxCollectSize, scanStrategy, allowDuplicates, null);
+    }
+
+    /**
+     *
+     * @param maxCollectSize the maximum number of numbers kept in memory,
+     * before writing them to a spill file
+     * @param scanStrategy the strategy used to read the file
+     * @param allowDuplicates true to accept repeated numbers, finding the
+     * median of the multiset
+     * @param spillDirectory the directory of the spill files, null to use the
+     * default temporary directory
+     */
+    public MedianFinderStrategySpill(int maxCollectSize, ScanStrategy scanStrategy, boolean allowDuplicates,
+            File spillDirectory) {
+        if (scanStrategy == null) {
+            throw new IllegalArgumentException("ScanStrategy cannot be null.");
+        }
+        this.maxCollectSize = maxCollectSize > 0 ? maxCollectSize : DEFAULT_MAX_COLLECT_SIZE;
+        this.scanStrategy = scanStrategy;
+        this.allowDuplicates = allowDuplicates;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public long findMedian(File file) throws MedianFinderException, IOException {
+        File source = file;
+        ScanStrategy sourceScanStrategy = scanStrategy;
+        // the range of the candidates, all the numbers of the file inside it
+        long srcLo = Long.MIN_VALUE, srcHi = Long.MAX_VALUE, srcCount = -1;
+        long below = 0, count = -1, lowRank = 0, highRank = 0;
+        long lo = 0, hi = 0;
+        boolean sampled = true, shrinking = true;
+        try {
+            while (true) {
+                Partition partition;
+                try (FileScanner scanner = sourceScanStrategy.open(source)) {
+                    if (sampled) {
+                        final long[] samples = sample(scanner, source.length(), srcLo, srcHi);
+                        if (samples.length == 0) {
+                            throw new MedianFinderException("No numbers found on file: " + file);
+                        }
+                        // the median of n samples is within sqrt(n)/2 positions
+                        // of the median of the candidates most of the time
+                        final int margin = shrinking ? 2 * (int) Math.sqrt(samples.length) : 0;
+                        final int mid = (samples.length - 1) >> 1;
+                        lo = samples[Math.max(0, mid - margin)];
+                        hi = samples[Math.min(samples.length - 1, mid + margin)];
+                    }
+                    partition = new Partition(lo, hi);
+                    boolean scanned = false;
+                    try {
+                        scanner.scan(0, source.length(), partition);
+                        scanned = true;
+                    } finally {
+                        partition.close();
+                        if (!scanned) {
+                            partition.delete();
+                        }
+                    }
+                }
+                if (count < 0) {
+                    count = partition.count;
+                    if (count == 0) {
+                        throw new MedianFinderException("No numbers found on file: " + file);
+                    }
+                    lowRank = (count - 1) >> 1;
+                    highRank = count >> 1;
+                }
+                final long belowRange = below + partition.below;
+                final long aboveRange = belowRange + partition.inside;
+                if (highRank < belowRange || lowRank >= aboveRange) {
+                    // scan the candidates again with the range on the side of the median
+                    partition.delete();
+                    if (highRank < belowRange) {
+                        lo = srcLo;
+                        hi = partition.lo - 1;
+                    } else {
+                        lo = partition.hi + 1;
+                        hi = srcHi;
+                    }
+                    sampled = false;
+                    continue;
+                }
+                if (lowRank < belowRange || highRank >= aboveRange) {
+                    // the middle numbers are on both sides of a bound
+                    partition.delete();
+                    final long low = lowRank < belowRange ? partition.maxBelow : partition.maxInside;
+                    final long high = lowRank < belowRange ? partition.minInside : partition.minAbove;
+                    checkDuplicate(lowRank < belowRange ? partition.maxBelowCount > 1 : partition.maxInsideCount > 1, low);
+                    checkDuplicate(lowRank < belowRange ? partition.minInsideCount > 1 : partition.minAboveCount > 1, high);
+                    return scanStrategy.mean(low, high);
+                }
+                if (partition.lo == partition.hi) {
+                    partition.delete();
+                    checkDuplicate(partition.inside > 1, partition.lo);
+                    return partition.lo;
+                }
+                below = belowRange;
+                if (partition.spillFile == null) {
+                    return select(partition.values, partition.len, (int) (lowRank - below), (int) (highRank - below));
+                }
+                if (source != file) {
+                    source.delete();
+                }
+                // a range that doesn't remove candidates isn't sampled with margins again
+                shrinking = partition.inside < srcCount || srcCount < 0;
+                source = partition.spillFile;
+                sourceScanStrategy = ScanStrategyBinary.INSTANCE;
+                srcLo = partition.lo;
+                srcHi = partition.hi;
+                srcCount = partition.inside;
+                sampled = true;
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            if (source != file) {
+                source.delete();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MedianFinderStrategySpill{" + "maxCollectSize=" + maxCollectSize + ", scanStrategy=" + scanStrategy
+                + ", allowDuplicates=" + allowDuplicates + ", spillDirectory=" + spillDirectory + '}';
+    }
+
+    /**
+     * Reads numbers from positions evenly spread on the file.
+     *
+     * @return the sorted numbers inside the range
+     */
+    private long[] sample(FileScanner scanner, long size, long lo, long hi) throws IOException {
+        final long[] samples = new long[DEFAULT_SAMPLE_SIZE];
+        final long step = Math.max(1, size / DEFAULT_SAMPLE_SIZE);
+        int len = 0;
+        for (long pos = 0; pos < size && len < samples.length; pos += step) {
+            long num = scanner.firstNumber(pos);
+            if (num != Long.MIN_VALUE && num >= lo && num <= hi) {
+                samples[len++] = num;
+            }
+        }
+        Arrays.sort(samples, 0, len);
+        return Arrays.copyOf(samples, len);
+    }
+
+    private long select(long[] values, int len, int lowIdx, int highIdx) {
+        Arrays.sort(values, 0, len);
+        final long low = values[lowIdx], high = values[highIdx];
+        checkDuplicate(lowIdx != highIdx && low == high, low);
+        checkDuplicate(lowIdx > 0 && values[lowIdx - 1] == low, low);
+        checkDuplicate(highIdx < len - 1 && values[highIdx + 1] == high, high);
+        return scanStrategy.mean(low, high);
+    }
+
+    private void checkDuplicate(boolean duplicate, long num) {
+        if (duplicate && !allowDuplicates) {
+            throw new DuplicateNumberException("Duplicate number found: " + num);
+        }
+    }
+
+    //
+    /**
+     * Counts the numbers before and after a range and keeps the numbers inside
+     * it, in memory while they fit, on a spill file otherwise. The extremes
+     * around the bounds of the range are kept to resolve a median split by
+     * one of them.
+     */
+    private class Partition implements NumberHandler, Closeable {
+
+        final long lo, hi;
+        final long[] batch = new long[Constants.BATCH_SIZE];
+        long count, below, inside;
+        long maxBelow = Long.MIN_VALUE, maxBelowCount, minAbove = Long.MAX_VALUE, minAboveCount;
+        long minInside = Long.MAX_VALUE, minInsideCount, maxInside = Long.MIN_VALUE, maxInsideCount;
+        long[] values = new long[Math.min(maxCollectSize, Constants.BATCH_SIZE)];
+        int len;
+        File spillFile;
+        BinaryFileWriter writer;
+
+        Partition(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            int batchLen = 0;
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                if (num < lo) {
+                    if (num > maxBelow) {
+                        maxBelow = num;
+                        maxBelowCount = 0;
+                    }
+                    maxBelowCount += (num == maxBelow) ? 1 : 0;
+                    below++;
+                } else if (num > hi) {
+                    if (num < minAbove) {
+                        minAbove = num;
+                        minAboveCount = 0;
+                    }
+                    minAboveCount += (num == minAbove) ? 1 : 0;
+                } else {
+                    if (num < minInside) {
+                        minInside = num;
+                        minInsideCount = 0;
+                    }
+                    minInsideCount += (num == minInside) ? 1 : 0;
+                    if (num > maxInside) {
+                        maxInside = num;
+                        maxInsideCount = 0;
+                    }
+                    maxInsideCount += (num == maxInside) ? 1 : 0;
+                    batch[batchLen++] = num;
+                }
+            }
+            count += len;
+            inside += batchLen;
+            if (batchLen > 0) {
+                add(batchLen);
+            }
+        }
+
+        private void add(int batchLen) {
+            if (writer == null) {
+                if (this.len + batchLen <= maxCollectSize) {
+                    if (this.len + batchLen > values.length) {
+                        values = Arrays.copyOf(values, (int) Math.min(maxCollectSize, 2L * (this.len + batchLen)));
+                    }
+                    System.arraycopy(batch, 0, values, this.len, batchLen);
+                    this.len += batchLen;
+                    return;
+                }
+                try {
+                    spillFile = File.createTempFile("medianfinder", ".spill", spillDirectory);
+                    writer = new BinaryFileWriter(spillFile);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                writer.handle(values, this.len);
+                values = null;
+                this.len = 0;
+            }
+            writer.handle(batch, batchLen);
+        }
+
+        void delete() {
+            if (spillFile != null) {
+                spillFile.delete();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
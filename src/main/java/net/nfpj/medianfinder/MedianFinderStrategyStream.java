@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Finds the median of a stream, reading it only once, so it can be used at the
+ * end of a pipe or with inputs that can't be read again. The numbers are kept
+ * in memory while they fit, and the median is found sorting them. Otherwise
+ * they are written to a spill file, on the format of
+ * {@link ScanStrategyBinary}, and the median of the spill file is found with
+ * {@link MedianFinderStrategySpill}, so the following scans read the compact
+ * binary copy instead of the stream.
+ *
+ * @author njacinto
+ */
+public class MedianFinderStrategyStream implements MedianFinderStrategy {
+
+    public static final MedianFinderStrategyStream INSTANCE = new MedianFinderStrategyStream();
+    public static final int DEFAULT_MAX_COLLECT_SIZE = MedianFinderStrategySpill.DEFAULT_MAX_COLLECT_SIZE;
+
+    private final int maxCollectSize;
+    private final boolean binary;
+    private final boolean allowDuplicates;
+    private final File spillDirectory;
+
+    public MedianFinderStrategyStream() {
+        this(DEFAULT_MAX_COLLECT_SIZE);
+    }
+
+    public MedianFinderStrategyStream(int maxCollectSize) {
+        this(maxCollectSize, false, false);
+    }
+
+    public MedianFinderStrategyStream(int maxCollectSize, boolean binary, boolean allowDuplicates) {
+        this(maxCollectSize, binary, allowDuplicates, null);
+    }
+
+    /**
+     *
+     * @param maxCollectSize the maximum number of numbers kept in memory,
+     * before writing them to a spill file
+     * @param binary true if the stream has the numbers on the format of
+     * {@link ScanStrategyBinary}, false if it has one number per line
+     * @param allowDuplicates true to accept repeated numbers, finding the
+     * median of the multiset
+     * @param spillDirectory the directory of the spill files, null to use the
+     * default temporary directory
+     */
+    public MedianFinderStrategyStream(int maxCollectSize, boolean binary, boolean allowDuplicates,
+            File spillDirectory) {
+        this.maxCollectSize = maxCollectSize > 0 ? maxCollectSize : DEFAULT_MAX_COLLECT_SIZE;
+        this.binary = binary;
+        this.allowDuplicates = allowDuplicates;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public long findMedian(File file) throws MedianFinderException, IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return findMedian(in.getChannel());
+        }
+    }
+
+    /**
+     * Finds the median of the numbers of the stream, reading it until its
+     * end. The stream is not closed.
+     */
+    public long findMedian(InputStream in) throws MedianFinderException, IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("InputStream cannot be null.");
+        }
+        return findMedian(in instanceof FileInputStream ? ((FileInputStream) in).getChannel()
+                : Channels.newChannel(in));
+    }
+
+    /**
+     * Finds the median of the numbers of the channel, reading it until its
+     * end. The channel is not closed.
+     */
+    public long findMedian(ReadableByteChannel in) throws MedianFinderException, IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("ReadableByteChannel cannot be null.");
+        }
+        final Collector collector = new Collector();
+        try {
+            try {
+                if (binary) {
+                    scanBinary(in, collector);
+                } else {
+                    scanText(in, collector);
+                }
+            } finally {
+                collector.close();
+            }
+            if (collector.count == 0) {
+                throw new MedianFinderException("No numbers found on stream.");
+            }
+            if (collector.spillFile == null) {
+                return select(collector.values, collector.len);
+            }
+            return new MedianFinderStrategySpill(maxCollectSize, ScanStrategyBinary.INSTANCE, allowDuplicates,
+                    spillDirectory).findMedian(collector.spillFile);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            collector.delete();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MedianFinderStrategyStream{" + "maxCollectSize=" + maxCollectSize + ", binary=" + binary
+                + ", allowDuplicates=" + allowDuplicates + ", spillDirectory=" + spillDirectory + '}';
+    }
+
+    /**
+     * Parses the lines of the channel. A line not ending on the buffer is
+     * moved to its beginning and completed by the next read.
+     */
+    private void scanText(ReadableByteChannel in, NumberHandler handler) throws IOException {
+        final byte[] readBuff = new byte[Constants.BUFFER_SIZE];
+        final ByteBuffer buff = ByteBuffer.wrap(readBuff);
+        final long[] nums = new long[Constants.BATCH_SIZE];
+        int numsLen = 0;
+        int buffInitPos = 0;
+        int eolIdx, stIdx;
+        int readLen;
+        while (in.read(buff) != -1) {
+            readLen = buff.position();
+            stIdx = eolIdx = 0;
+            buffInitPos = 0;
+            while (eolIdx < readLen) {
+                eolIdx = NumberUtil.indexOfEol(readBuff, eolIdx, readLen);
+                if (stIdx < eolIdx) {
+                    if (eolIdx < readLen) {
+                        nums[numsLen++] = NumberUtil.toLongSwar(readBuff, stIdx, eolIdx - 1);
+                        if (numsLen == nums.length) {
+                            handler.handle(nums, numsLen);
+                            numsLen = 0;
+                        }
+                        stIdx = ++eolIdx;
+                    } else if (stIdx < readLen) {
+                        buffInitPos = readLen - stIdx;
+                        System.arraycopy(readBuff, stIdx, readBuff, 0, buffInitPos);
+                    }
+                } else {
+                    stIdx = ++eolIdx;
+                }
+            }
+            if (buffInitPos == readBuff.length) {
+                throw new MedianFinderException("Line longer than " + readBuff.length + " bytes found on stream.");
+            }
+            buff.position(buffInitPos);
+        }
+        if (buffInitPos > 0) {
+            nums[numsLen++] = NumberUtil.toLongSwar(readBuff, 0, buffInitPos - 1);
+        }
+        if (numsLen > 0) {
+            handler.handle(nums, numsLen);
+        }
+    }
+
+    /**
+     * Reads the numbers of the channel, ignoring the bytes at the end that
+     * don't make a whole number.
+     */
+    private void scanBinary(ReadableByteChannel in, NumberHandler handler) throws IOException {
+        final ByteBuffer buff = ByteBuffer.allocateDirect(Constants.BATCH_SIZE * ScanStrategyBinary.NUMBER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final long[] nums = new long[Constants.BATCH_SIZE];
+        while (in.read(buff) != -1) {
+            if (buff.hasRemaining()) {
+                continue;
+            }
+            buff.flip();
+            buff.asLongBuffer().get(nums);
+            buff.clear();
+            handler.handle(nums, nums.length);
+        }
+        buff.flip();
+        final int len = buff.remaining() / ScanStrategyBinary.NUMBER_SIZE;
+        if (len > 0) {
+            buff.asLongBuffer().get(nums, 0, len);
+            handler.handle(nums, len);
+        }
+    }
+
+    private long select(long[] values, int len) {
+        Arrays.sort(values, 0, len);
+        final int lowIdx = (len - 1) >> 1, highIdx = len >> 1;
+        final long low = values[lowIdx], high = values[highIdx];
+        checkDuplicate(lowIdx != highIdx && low == high, low);
+        checkDuplicate(lowIdx > 0 && values[lowIdx - 1] == low, low);
+        checkDuplicate(highIdx < len - 1 && values[highIdx + 1] == high, high);
+        return NumberUtil.mean(low, high);
+    }
+
+    private void checkDuplicate(boolean duplicate, long num) {
+        if (duplicate && !allowDuplicates) {
+            throw new DuplicateNumberException("Duplicate number found: " + num);
+        }
+    }
+
+    //
+    /**
+     * Keeps the numbers in memory while they fit, writing all of them to a
+     * spill file once they don't.
+     */
+    private class Collector implements NumberHandler, Closeable {
+
+        long[] values = new long[Math.min(maxCollectSize, Constants.BATCH_SIZE)];
+        int len;
+        long count;
+        File spillFile;
+        BinaryFileWriter writer;
+
+        @Override
+        public void handle(long[] nums, int len) {
+            count += len;
+            if (writer == null) {
+                if (this.len + len <= maxCollectSize) {
+                    if (this.len + len > values.length) {
+                        values = Arrays.copyOf(values, (int) Math.min(maxCollectSize, 2L * (this.len + len)));
+                    }
+                    System.arraycopy(nums, 0, values, this.len, len);
+                    this.len += len;
+                    return;
+                }
+                try {
+                    spillFile = File.createTempFile("medianfinder", ".spill", spillDirectory);
+                    writer = new BinaryFileWriter(spillFile);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                writer.handle(values, this.len);
+                values = null;
+                this.len = 0;
+            }
+            writer.handle(nums, len);
+        }
+
+        void delete() {
+            if (spillFile != null) {
+                spillFile.delete();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+/**
+ * Receives the numbers read by a {@link FileScanner}. The numbers are handed
+ * in batches to avoid a call per number on the scan loop.
+ *
+ * @author njacinto
+ */
+public interface NumberHandler {
+
+    /**
+     * @param nums the buffer with the numbers. The content is only valid
+     *              during the call, the buffer is reused by the scanner.
+     * @param len the number of valid numbers on the buffer
+     */
+    void handle(long[] nums, int len);
+}
@@ -18,6 +18,12 @@
  */
 package net.nfpj.medianfinder;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
 /**
  *
  * @author njacinto
@@ -25,6 +31,24 @@ package net.nfpj.medianfinder;
 public final class NumberUtil {
 
     public static final int ZERO_ASCII = '0';
+    // word at a time (SWAR) constants, one byte per lane
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long EOLS = ONES * Constants.EOL;
+    private static final long ZEROS = ONES * ZERO_ASCII;
+    private static final VarHandle ARRAY_LONG_VIEW =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONG_VIEW =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    // the powers of ten represented exactly by a double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // the biggest integer represented exactly by a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // the digits of the mantissa kept while parsing, fitting on a long
+    private static final int MAX_MANTISSA_DIGITS = 18;
 
     private NumberUtil() {
     }
@@ -38,6 +62,250 @@ public final class NumberUtil {
         return (arr[firstCharIdx] == '-') ? -l : l + (m * (arr[lastCharIdx] - ZERO_ASCII));
     }
 
+    public static long toLong(ByteBuffer buff, int firstCharIdx, int lastCharIdx) {
+        long l = 0;
+        long m = 1;
+        for (; lastCharIdx > firstCharIdx; m *= 10) {
+            l += m * (buff.get(lastCharIdx--) - ZERO_ASCII);
+        }
+        return (buff.get(firstCharIdx) == '-') ? -l : l + (m * (buff.get(lastCharIdx) - ZERO_ASCII));
+    }
+
+    /**
+     * Finds the first end of line reading 8 bytes per step.
+     *
+     * @param arr the buffer with the characters
+     * @param from the first index to check
+     * @param to the index after the last one to check
+     * @return the index of the end of line or {@code to} if there is none
+     */
+    public static int indexOfEol(byte[] arr, int from, int to) {
+        for (; from + Long.BYTES <= to; from += Long.BYTES) {
+            long eols = eolLanes((long) ARRAY_LONG_VIEW.get(arr, from));
+            if (eols != 0) {
+                return from + (Long.numberOfTrailingZeros(eols) >>> 3);
+            }
+        }
+        for (; from < to && arr[from] != Constants.EOL; from++);
+        return from;
+    }
+
+    /**
+     * Finds the first occurrence of a byte reading 8 bytes per step.
+     *
+     * @param arr the buffer with the characters
+     * @param from the first index to check
+     * @param to the index after the last one to check
+     * @param value the byte to find
+     * @return the index of the byte or {@code to} if there is none
+     */
+    public static int indexOf(byte[] arr, int from, int to, byte value) {
+        final long pattern = ONES * (value & 0xff);
+        for (; from + Long.BYTES <= to; from += Long.BYTES) {
+            long x = (long) ARRAY_LONG_VIEW.get(arr, from) ^ pattern;
+            long lanes = (x - ONES) & ~x & HIGH_BITS;
+            if (lanes != 0) {
+                return from + (Long.numberOfTrailingZeros(lanes) >>> 3);
+            }
+        }
+        for (; from < to && arr[from] != value; from++);
+        return from;
+    }
+
+    /**
+     * @see #indexOfEol(byte[], int, int)
+     */
+    public static int indexOfEol(ByteBuffer buff, int from, int to) {
+        for (; from + Long.BYTES <= to; from += Long.BYTES) {
+            long eols = eolLanes((long) BUFFER_LONG_VIEW.get(buff, from));
+            if (eols != 0) {
+                return from + (Long.numberOfTrailingZeros(eols) >>> 3);
+            }
+        }
+        for (; from < to && buff.get(from) != Constants.EOL; from++);
+        return from;
+    }
+
+    /**
+     * Same as {@link #toLong(byte[], int, int)} but converting up to 8 digits
+     * per step. The bytes after {@code lastCharIdx} may be read, so it falls
+     * back to {@link #toLong(byte[], int, int)} close to the end of the array.
+     */
+    public static long toLongSwar(byte[] arr, int firstCharIdx, int lastCharIdx) {
+        final boolean negative = arr[firstCharIdx] == '-';
+        int idx = negative ? firstCharIdx + 1 : firstCharIdx;
+        if (idx + Long.BYTES > arr.length) {
+            return toLong(arr, firstCharIdx, lastCharIdx);
+        }
+        final int end = lastCharIdx + 1;
+        long l = 0;
+        int head = (end - idx) & (Long.BYTES - 1);
+        if (head != 0) {
+            l = eightDigits(padDigits((long) ARRAY_LONG_VIEW.get(arr, idx), head));
+            idx += head;
+        }
+        for (; idx < end; idx += Long.BYTES) {
+            l = l * 100_000_000L + eightDigits((long) ARRAY_LONG_VIEW.get(arr, idx));
+        }
+        return negative ? -l : l;
+    }
+
+    /**
+     * @see #toLongSwar(byte[], int, int)
+     */
+    public static long toLongSwar(ByteBuffer buff, int firstCharIdx, int lastCharIdx) {
+        final boolean negative = buff.get(firstCharIdx) == '-';
+        int idx = negative ? firstCharIdx + 1 : firstCharIdx;
+        if (idx + Long.BYTES > buff.limit()) {
+            return toLong(buff, firstCharIdx, lastCharIdx);
+        }
+        final int end = lastCharIdx + 1;
+        long l = 0;
+        int head = (end - idx) & (Long.BYTES - 1);
+        if (head != 0) {
+            l = eightDigits(padDigits((long) BUFFER_LONG_VIEW.get(buff, idx), head));
+            idx += head;
+        }
+        for (; idx < end; idx += Long.BYTES) {
+            l = l * 100_000_000L + eightDigits((long) BUFFER_LONG_VIEW.get(buff, idx));
+        }
+        return negative ? -l : l;
+    }
+
+    /**
+     * Parses a decimal number, with an optional sign, fraction and exponent,
+     * e.g. -12.5 or 2.5e-3. The numbers with up to 15 significant digits and
+     * small exponents, as most prices and latencies, are converted without
+     * allocations with a single multiplication or division, which is
+     * correctly rounded because both operands are exact. The other numbers
+     * fall back to {@link Double#parseDouble(String)}.
+     *
+     * @param arr the buffer with the characters
+     * @param firstCharIdx the index of the first character
+     * @param lastCharIdx the index of the last character
+     * @return the number
+     * @throws NumberFormatException if the characters are not a number
+     */
+    public static double toDouble(byte[] arr, int firstCharIdx, int lastCharIdx) {
+        int idx = firstCharIdx;
+        final boolean negative = arr[idx] == '-';
+        if (negative || arr[idx] == '+') {
+            idx++;
+        }
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        boolean exact = true, valid = false;
+        int d;
+        for (; idx <= lastCharIdx && (d = arr[idx] - ZERO_ASCII) >= 0 && d <= 9; idx++) {
+            valid = true;
+            if (digits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + d;
+                digits += (mantissa != 0) ? 1 : 0;
+            } else {
+                exponent++;
+                exact &= d == 0;
+            }
+        }
+        if (idx <= lastCharIdx && arr[idx] == '.') {
+            for (idx++; idx <= lastCharIdx && (d = arr[idx] - ZERO_ASCII) >= 0 && d <= 9; idx++) {
+                valid = true;
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + d;
+                    digits += (mantissa != 0) ? 1 : 0;
+                    exponent--;
+                } else {
+                    exact &= d == 0;
+                }
+            }
+        }
+        if (valid && idx < lastCharIdx && (arr[idx] | 0x20) == 'e') {
+            final boolean negativeExponent = arr[++idx] == '-';
+            if (negativeExponent || arr[idx] == '+') {
+                idx++;
+            }
+            int e = 0;
+            valid = idx <= lastCharIdx;
+            for (; idx <= lastCharIdx && (d = arr[idx] - ZERO_ASCII) >= 0 && d <= 9; idx++) {
+                if (e < 100_000) {
+                    e = e * 10 + d;
+                }
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (!valid || idx <= lastCharIdx || !exact || mantissa > MAX_EXACT_MANTISSA
+                || exponent < -22 || exponent > 22) {
+            if (valid && idx > lastCharIdx && mantissa == 0 && exact) {
+                return 0.0;
+            }
+            // long mantissa, big exponent, infinity, not a number or invalid
+            return Double.parseDouble(new String(arr, firstCharIdx, lastCharIdx - firstCharIdx + 1,
+                    StandardCharsets.US_ASCII));
+        }
+        final double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * The mean of two numbers rounded toward zero, as {@code (low + high) / 2}
+     * but without overflowing when the sum doesn't fit on a long.
+     */
+    public static long mean(long low, long high) {
+        if (low == high) {
+            return low;
+        }
+        // the floor of the mean, moved up for the negative odd sums
+        final long floor = (low >> 1) + (high >> 1) + (low & high & 1);
+        return (floor < 0 && ((low ^ high) & 1) != 0) ? floor + 1 : floor;
+    }
+
+    /**
+     * Encodes a double on a long with the same order, so the numbers can be
+     * compared, sorted and cached as longs. The negative zero is encoded as
+     * zero, and all the values not a number as the same value, bigger than
+     * the positive infinity.
+     *
+     * @see #fromSortableLong(long)
+     */
+    public static long toSortableLong(double value) {
+        final long bits = Double.doubleToLongBits(value + 0.0);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Decodes a double encoded by {@link #toSortableLong(double)}.
+     */
+    public static double fromSortableLong(long value) {
+        return Double.longBitsToDouble(value ^ ((value >> 63) & Long.MAX_VALUE));
+    }
+
+    /**
+     * Sets the high bit of the lanes holding an end of line. Only the lowest
+     * flagged lane is reliable, which is the one needed for little endian words.
+     */
+    private static long eolLanes(long word) {
+        long x = word ^ EOLS;
+        return (x - ONES) & ~x & HIGH_BITS;
+    }
+
+    /**
+     * Keeps the first {@code digits} characters of the word as its last ones,
+     * filling the lanes before them with zeros.
+     */
+    private static long padDigits(long word, int digits) {
+        return (word << ((Long.BYTES - digits) << 3)) | (ZEROS >>> (digits << 3));
+    }
+
+    /**
+     * Converts 8 ASCII digits, the most significant one on the lowest byte.
+     */
+    private static long eightDigits(long word) {
+        word -= ZEROS;
+        word = (word * 10 + (word >>> 8)) & 0x00FF00FF00FF00FFL;
+        word = (word * 100 + (word >>> 16)) & 0x0000FFFF0000FFFFL;
+        return (word * 10000 + (word >>> 32)) & 0xFFFFFFFFL;
+    }
+
     public static long getSmaller(long[] arr, int from, int to) {
         long num = arr[from];
         for (int i = from + 1; i < to; i++) {
@@ -29,4 +29,24 @@ import java.io.RandomAccessFile;
 public interface PivotSelectionStrategy {
 
     long getPivot(File file, RandomAccessFile in) throws IOException;
+
+    /**
+     * Finds the pivot reading the file through a scanner, which knows the
+     * format of the file. By default the file is read as text.
+     */
+    default long getPivot(File file, FileScanner scanner) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return getPivot(file, in);
+        }
+    }
+
+    /**
+     * Finds the pivot using the index of the file when there's one. By default
+     * the index is not used.
+     *
+     * @param index the index of the file, or null
+     */
+    default long getPivot(File file, FileScanner scanner, FileIndex index) throws IOException {
+        return getPivot(file, scanner);
+    }
 }
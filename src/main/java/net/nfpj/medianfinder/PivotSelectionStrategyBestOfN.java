@@ -100,6 +100,44 @@ public class PivotSelectionStrategyBestOfN implements PivotSelectionStrategy {
         return PivotSelectionStrategyMiddle.INSTANCE.getPivot(file, in);
     }
 
+    @Override
+    public long getPivot(File file, FileScanner scanner) throws IOException {
+        if (n > 1) {
+            final long[] values = new long[n];
+            final long fileSize = file.length();
+            long step = fileSize / n;
+            if (step > DEFAULT_MIN_STEP_SIZE) {
+                int i = 0;
+                for (long pos = 0; pos < fileSize && i < n; pos += step) {
+                    long num = scanner.firstNumber(pos);
+                    if (num != Long.MIN_VALUE) {
+                        values[i++] = num;
+                    }
+                }
+                if (i > 0) {
+                    Arrays.sort(values, 0, i);
+                    return values[i / 2];
+                }
+            }
+        }
+        return PivotSelectionStrategyMiddle.INSTANCE.getPivot(file, scanner);
+    }
+
+    /**
+     * Takes the median of the whole sample of the index, without reading the
+     * file. The sample is already in memory, so all of it is used instead of
+     * only n numbers, giving a pivot closer to the median.
+     */
+    @Override
+    public long getPivot(File file, FileScanner scanner, FileIndex index) throws IOException {
+        if (index == null || index.sample.length == 0 || n < 2) {
+            return getPivot(file, scanner);
+        }
+        final long[] values = index.sample.clone();
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
     @Override
     public String toString() {
         return "PivotSelectionStrategyBestOfN{" + "n=" + n + '}';
@@ -49,11 +49,11 @@ public class PivotSelectionStrategyMean implements PivotSelectionStrategy {
             stIdx = eolIdx = 0;
             buffInitPos = 0;
             while (eolIdx < readLen) {
-                for (; eolIdx < readLen && readBuff[eolIdx] != Constants.EOL; eolIdx++);
+                eolIdx = NumberUtil.indexOfEol(readBuff, eolIdx, readLen);
                 if (stIdx < eolIdx) {
                     if (eolIdx < readLen) {
                         count++;
-                        acc += NumberUtil.toLong(readBuff, stIdx, eolIdx - 1);
+                        acc += NumberUtil.toLongSwar(readBuff, stIdx, eolIdx - 1);
                         stIdx = ++eolIdx;
                     } else if (stIdx < readLen) {
                         buffInitPos = readLen - stIdx;
@@ -66,7 +66,7 @@ public class PivotSelectionStrategyMean implements PivotSelectionStrategy {
         }
         if (buffInitPos > 0) {
             count++;
-            acc += NumberUtil.toLong(readBuff, 0, buffInitPos - 1);
+            acc += NumberUtil.toLongSwar(readBuff, 0, buffInitPos - 1);
         }
         if (count > 0) {
             buffInitPos = 0;
@@ -80,11 +80,11 @@ public class PivotSelectionStrategyMean implements PivotSelectionStrategy {
                 stIdx = eolIdx = 0;
                 buffInitPos = 0;
                 while (eolIdx < readLen) {
-                    for (; eolIdx < readLen && readBuff[eolIdx] != Constants.EOL; eolIdx++);
+                    eolIdx = NumberUtil.indexOfEol(readBuff, eolIdx, readLen);
                     if (stIdx < eolIdx) {
                         if (eolIdx < readLen) {
                             count++;
-                            long num = NumberUtil.toLong(readBuff, stIdx, eolIdx - 1);
+                            long num = NumberUtil.toLongSwar(readBuff, stIdx, eolIdx - 1);
                             //System.out.println(num);
                             if (mean > num) {
                                 countLeft++;
@@ -111,7 +111,7 @@ public class PivotSelectionStrategyMean implements PivotSelectionStrategy {
             }
             if (buffInitPos > 0) {
                 count++;
-                long num = NumberUtil.toLong(readBuff, 0, buffInitPos - 1);
+                long num = NumberUtil.toLongSwar(readBuff, 0, buffInitPos - 1);
                 if (mean > num) {
                     countLeft++;
                     if (num > prev) {
@@ -131,9 +131,83 @@ public class PivotSelectionStrategyMean implements PivotSelectionStrategy {
         return Long.MIN_VALUE;
     }
 
+    @Override
+    public long getPivot(File file, FileScanner scanner) throws IOException {
+        final long fileSize = file.length();
+        final Sum sum = new Sum();
+        scanner.scan(0, fileSize, sum);
+        if (sum.count > 0) {
+            final Closest closest = new Closest(sum.acc / sum.count);
+            scanner.scan(0, fileSize, closest);
+            if (closest.found) { // if equal just return it
+                return closest.mean;
+            }
+            return (closest.countLeft > closest.countRight) ? closest.prev : closest.next;
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Uses the mean of the index, which doesn't need to be a number of the
+     * file, instead of the two scans.
+     */
+    @Override
+    public long getPivot(File file, FileScanner scanner, FileIndex index) throws IOException {
+        if (index == null) {
+            return getPivot(file, scanner);
+        }
+        return index.count > 0 ? index.sum / index.count : Long.MIN_VALUE;
+    }
+
     @Override
     public String toString() {
         return "PivotSelectionStrategyMean{" + '}';
     }
 
+    //
+    private static class Sum implements NumberHandler {
+
+        long acc = 0, count = 0;
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < len; i++) {
+                acc += nums[i];
+            }
+            count += len;
+        }
+    }
+
+    private static class Closest implements NumberHandler {
+
+        final long mean;
+        long countLeft = 0, countRight = 0;
+        long prev = Long.MIN_VALUE;
+        long next = Long.MAX_VALUE;
+        boolean found = false;
+
+        Closest(long mean) {
+            this.mean = mean;
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < len; i++) {
+                final long num = nums[i];
+                if (mean > num) {
+                    countLeft++;
+                    if (num > prev) {
+                        prev = num;
+                    }
+                } else if (mean < num) {
+                    countRight++;
+                    if (num < next) {
+                        next = num;
+                    }
+                } else {
+                    found = true;
+                }
+            }
+        }
+    }
 }
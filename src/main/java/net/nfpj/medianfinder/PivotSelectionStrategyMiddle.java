@@ -46,6 +46,11 @@ public class PivotSelectionStrategyMiddle implements PivotSelectionStrategy {
         return Long.MIN_VALUE;
     }
 
+    @Override
+    public long getPivot(File file, FileScanner scanner) throws IOException {
+        return scanner.firstNumber(file.length() > 1 ? (file.length() >> 1) - 1 : 0);
+    }
+
     @Override
     public String toString() {
         return "PivotSelectionStrategyMiddle{" + '}';
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mergeable quantile sketch, following the KLL sketch of Karnin, Lang and
+ * Liberty. The numbers are kept on levels, each number of level h standing
+ * for 2^h numbers of the input. When a level is full it's sorted and every
+ * other number, starting on a random one, is moved to the level above, so the
+ * sketch keeps about 3k numbers whatever the size of the input. The rank of
+ * any number is estimated within {@link #getRankError()} of the count with 99%
+ * confidence.
+ * Sketches built over different parts of the input can be merged, giving the
+ * same bound as a single sketch built over all of them.
+ *
+ * @author njacinto
+ */
+public class QuantileSketch implements NumberHandler {
+
+    public static final int DEFAULT_K = 4096;
+    public static final int MIN_K = 8;
+    //
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double LEVEL_CAPACITY_RATIO = 2.0 / 3.0;
+    // each sketch gets its own sequence of random bits, repeated on each run
+    private static final AtomicLong SEEDS = new AtomicLong(0x2545f4914f6cdd1dL);
+
+    private final int k;
+    private long[][] levels = new long[1][];
+    private int[] sizes = new int[1];
+    private long count;
+    private long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+    private boolean compacted;
+    private long random;
+    // the numbers of all the levels, sorted, with the cumulative weights
+    private long[] sortedValues, sortedWeights;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     *
+     * @param k the capacity of the top level. The rank error decreases
+     * about linearly with it.
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_K) {
+            throw new IllegalArgumentException("The k of the sketch must be at least " + MIN_K);
+        }
+        this.k = k;
+        this.random = SEEDS.addAndGet(0x9e3779b97f4a7c15L) | 1;
+        levels[0] = new long[capacity(0)];
+    }
+
+    /**
+     * The normalized rank error of the estimates, with 99% confidence, zero
+     * while no numbers were compacted. Empirical bound of the KLL sketch.
+     */
+    public double getRankError() {
+        return compacted ? getRankError(k) : 0;
+    }
+
+    /**
+     * The normalized rank error of a sketch with the given k, with 99%
+     * confidence, once it compacts numbers.
+     */
+    public static double getRankError(int k) {
+        return 2.296 / Math.pow(k, 0.9723);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public void update(long num) {
+        if (sizes[0] == levels[0].length) {
+            compress();
+        }
+        levels[0][sizes[0]++] = num;
+        min = Math.min(min, num);
+        max = Math.max(max, num);
+        count++;
+        sortedValues = null;
+    }
+
+    @Override
+    public void handle(long[] nums, int len) {
+        for (int off = 0; off < len;) {
+            if (sizes[0] == levels[0].length) {
+                compress();
+            }
+            final int n = Math.min(len - off, levels[0].length - sizes[0]);
+            System.arraycopy(nums, off, levels[0], sizes[0], n);
+            for (int i = off; i < off + n; i++) {
+                min = Math.min(min, nums[i]);
+                max = Math.max(max, nums[i]);
+            }
+            sizes[0] += n;
+            off += n;
+        }
+        count += len;
+        sortedValues = null;
+    }
+
+    /**
+     * Adds the numbers of the other sketch to this one. The other sketch is
+     * not changed.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("Sketches with different k can't be merged.");
+        }
+        while (levels.length < other.levels.length) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levels.length; h++) {
+            final int size = sizes[h] + other.sizes[h];
+            if (size > levels[h].length) {
+                levels[h] = Arrays.copyOf(levels[h], size);
+            }
+            System.arraycopy(other.levels[h], 0, levels[h], sizes[h], other.sizes[h]);
+            sizes[h] = size;
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compacted |= other.compacted;
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] >= capacity(h)) {
+                compact(h);
+            }
+        }
+        sortedValues = null;
+    }
+
+    /**
+     * @param rank the rank, from zero to the count minus one
+     * @return the estimate of the number on the rank
+     */
+    public long getValueAtRank(long rank) {
+        if (count == 0) {
+            throw new IllegalStateException("The sketch is empty.");
+        }
+        if (rank <= 0) {
+            return min;
+        } else if (rank >= count - 1) {
+            return max;
+        }
+        sort();
+        int idx = Arrays.binarySearch(sortedWeights, rank + 1);
+        if (idx < 0) {
+            idx = -(idx + 1);
+        }
+        return sortedValues[Math.min(idx, sortedValues.length - 1)];
+    }
+
+    /**
+     * @return the estimate of the number of numbers smaller than the given one
+     */
+    public long getRank(long num) {
+        sort();
+        int idx = Arrays.binarySearch(sortedValues, num);
+        if (idx < 0) {
+            idx = -(idx + 1);
+        } else {
+            for (; idx > 0 && sortedValues[idx - 1] == num; idx--);
+        }
+        return idx == 0 ? 0 : sortedWeights[idx - 1];
+    }
+
+    /**
+     * @return the numbers the levels of the sketch have room for
+     */
+    int getAllocated() {
+        int allocated = 0;
+        for (long[] level : levels) {
+            allocated += level.length;
+        }
+        return allocated;
+    }
+
+    int getLevels() {
+        return levels.length;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{" + "k=" + k + ", count=" + count + ", levels=" + levels.length + '}';
+    }
+
+    /**
+     * The capacity of the level, decreasing geometrically from the top level.
+     */
+    private int capacity(int level) {
+        final int depth = levels.length - 1 - level;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(LEVEL_CAPACITY_RATIO, depth)));
+    }
+
+    /**
+     * Adds a level on the top, shrinking the levels below to their new
+     * capacity, except the ones with more numbers, which shrink when they
+     * are compacted.
+     */
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        levels[levels.length - 1] = new long[capacity(levels.length - 1)];
+        for (int h = 0; h < levels.length - 1; h++) {
+            shrink(h);
+        }
+    }
+
+    private void shrink(int level) {
+        final int capacity = capacity(level);
+        if (levels[level].length > capacity && sizes[level] <= capacity) {
+            levels[level] = Arrays.copyOf(levels[level], capacity);
+        }
+    }
+
+    /**
+     * Compacts the levels that are full, from the bottom.
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] >= capacity(h)) {
+                compact(h);
+            }
+        }
+    }
+
+    /**
+     * Moves every other number of the sorted level to the level above. With
+     * an odd number of numbers the biggest stays.
+     */
+    private void compact(int level) {
+        if (level == levels.length - 1) {
+            addLevel();
+        }
+        final long[] values = levels[level];
+        final int size = sizes[level];
+        final int pairs = size >> 1;
+        Arrays.sort(values, 0, size);
+        int upSize = sizes[level + 1];
+        if (upSize + pairs > levels[level + 1].length) {
+            levels[level + 1] = Arrays.copyOf(levels[level + 1], Math.max(upSize + pairs, capacity(level + 1)));
+        }
+        final long[] up = levels[level + 1];
+        for (int i = nextBit(); i < pairs << 1; i += 2) {
+            up[upSize++] = values[i];
+        }
+        sizes[level + 1] = upSize;
+        if ((size & 1) != 0) {
+            values[0] = values[size - 1];
+        }
+        sizes[level] = size & 1;
+        shrink(level);
+        compacted = true;
+    }
+
+    private int nextBit() {
+        // xorshift
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) (random >>> 63);
+    }
+
+    private void sort() {
+        if (sortedValues != null) {
+            return;
+        }
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        final long[] values = new long[total];
+        final long[] weights = new long[total];
+        int len = 0;
+        for (int h = 0; h < levels.length; h++) {
+            final long[] level = levels[h];
+            Arrays.sort(level, 0, sizes[h]);
+            len = mergeLevel(values, weights, len, level, sizes[h], 1L << h);
+        }
+        for (int i = 1; i < len; i++) {
+            weights[i] += weights[i - 1];
+        }
+        sortedValues = values;
+        sortedWeights = weights;
+    }
+
+    /**
+     * Merges the sorted level into the sorted values, from the end.
+     *
+     * @return the new length of the values
+     */
+    private static int mergeLevel(long[] values, long[] weights, int len, long[] level, int size, long weight) {
+        int i = len - 1, j = size - 1, dst = len + size - 1;
+        while (j >= 0) {
+            if (i >= 0 && values[i] > level[j]) {
+                values[dst] = values[i];
+                weights[dst--] = weights[i--];
+            } else {
+                values[dst] = level[j--];
+                weights[dst--] = weight;
+            }
+        }
+        return len + size;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Defines how the numbers are read from the file.
+ *
+ * @author njacinto
+ */
+public interface ScanStrategy {
+
+    FileScanner open(File file) throws IOException;
+
+    /**
+     * Finds the mean of two numbers read by the scanners, for the median of
+     * an even count of numbers. By default the numbers are integers, and the
+     * mean is rounded toward zero without overflowing.
+     */
+    default long mean(long low, long high) {
+        return NumberUtil.mean(low, high);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the file with an {@link AsynchronousFileChannel} on two buffers, the
+ * next part of the file is read on one while the numbers of the other are
+ * parsed and given to the handler, so a scan of a file out of the page cache
+ * takes about the longest of the reading and the parsing instead of both.
+ * When a scan ends, the start of the following block is read, so the blocks
+ * scanned in sequence don't wait for the disk either.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyAsync implements ScanStrategy {
+
+    public static final ScanStrategyAsync INSTANCE = new ScanStrategyAsync();
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    // space before the data of each buffer for the end of the previous one,
+    // the start of a number split between the two
+    private static final int HEAD_SIZE = 256;
+
+    private final int bufferSize;
+
+    public ScanStrategyAsync() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     *
+     * @param bufferSize the size of each of the two buffers
+     */
+    public ScanStrategyAsync(int bufferSize) {
+        if (bufferSize < Constants.NUMBER_MAX_LEN + 1) {
+            throw new IllegalArgumentException("The buffer size must be bigger than " + Constants.NUMBER_MAX_LEN);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new AsyncFileScanner(file, bufferSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyAsync{" + "bufferSize=" + bufferSize + '}';
+    }
+
+    //
+    private static class AsyncFileScanner implements FileScanner {
+
+        private final AsynchronousFileChannel channel;
+        private final long size;
+        private final byte[][] buffers;
+        private final ByteBuffer[] views;
+        // the end of the data of each buffer
+        private final int[] ends = new int[2];
+        private final byte[] readBuff = new byte[Constants.BUFFER_SIZE];
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+        // the read of the start of the next block, on the buffer
+        private Future<Integer> prefetch;
+        private long prefetchPos;
+        private int prefetchBuffer;
+
+        AsyncFileScanner(File file, int bufferSize) throws IOException {
+            this.channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+            this.buffers = new byte[2][HEAD_SIZE + bufferSize];
+            this.views = new ByteBuffer[]{ByteBuffer.wrap(buffers[0]), ByteBuffer.wrap(buffers[1])};
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            int cur = 0;
+            Future<Integer> pending = null;
+            if (prefetch != null) {
+                if (prefetchPos == pos) {
+                    pending = prefetch;
+                    cur = prefetchBuffer;
+                } else {
+                    await(prefetch);
+                }
+                prefetch = null;
+            }
+            long readPos = pos;
+            if (pending == null && readPos < limit) {
+                pending = read(cur, readPos, limit);
+            }
+            int numsLen = 0;
+            int carry = 0;
+            try {
+                while (pending != null) {
+                    // the prefetch may go past the limit
+                    final int len = (int) Math.min(await(pending), limit - readPos);
+                    pending = null;
+                    if (len <= 0) {
+                        break;
+                    }
+                    final byte[] buff = buffers[cur];
+                    final int other = cur ^ 1;
+                    // the end of the other buffer, before its next read
+                    System.arraycopy(buffers[other], ends[other] - carry, buff, HEAD_SIZE - carry, carry);
+                    ends[cur] = HEAD_SIZE + len;
+                    readPos += len;
+                    if (readPos < limit) {
+                        pending = read(other, readPos, limit);
+                    }
+                    final int end = HEAD_SIZE + len;
+                    int stIdx = HEAD_SIZE - carry, eolIdx = stIdx;
+                    carry = 0;
+                    while (eolIdx < end) {
+                        eolIdx = NumberUtil.indexOfEol(buff, eolIdx, end);
+                        if (stIdx < eolIdx) {
+                            if (eolIdx < end) {
+                                nums[numsLen++] = NumberUtil.toLongSwar(buff, stIdx, eolIdx - 1);
+                                if (numsLen == nums.length) {
+                                    handler.handle(nums, numsLen);
+                                    numsLen = 0;
+                                }
+                                stIdx = ++eolIdx;
+                            } else {
+                                carry = end - stIdx;
+                                if (carry > HEAD_SIZE) {
+                                    throw new MedianFinderException("No end of line found in line starting at "
+                                            + (readPos - carry));
+                                }
+                            }
+                        } else {
+                            stIdx = ++eolIdx;
+                        }
+                    }
+                    cur = other;
+                }
+            } finally {
+                if (pending != null) {
+                    // the buffer can't be reused before the read ends
+                    awaitQuietly(pending);
+                }
+            }
+            if (carry > 0) {
+                final int last = cur ^ 1;
+                nums[numsLen++] = NumberUtil.toLongSwar(buffers[last], ends[last] - carry, ends[last] - 1);
+            }
+            if (numsLen > 0) {
+                handler.handle(nums, numsLen);
+            }
+            if (limit < size) {
+                prefetchBuffer = cur;
+                prefetchPos = limit;
+                prefetch = read(cur, limit, size);
+            }
+        }
+
+        /**
+         * Starts reading the file, from the position up to the limit or the
+         * size of the buffer, after its head.
+         */
+        private Future<Integer> read(int buffer, long pos, long limit) {
+            final ByteBuffer view = views[buffer];
+            view.clear();
+            view.position(HEAD_SIZE);
+            view.limit((int) Math.min(view.capacity(), HEAD_SIZE + limit - pos));
+            return channel.read(view, pos);
+        }
+
+        private static int await(Future<Integer> read) throws IOException {
+            try {
+                return read.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw new IOException(ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        private static void awaitQuietly(Future<Integer> read) {
+            try {
+                await(read);
+            } catch (IOException ex) {
+                // the error of the scan is the one thrown
+            }
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            final ByteBuffer buff = ByteBuffer.wrap(readBuff);
+            int len;
+            while ((len = await(channel.read(buff, pos))) != -1) {
+                int eolIdx = NumberUtil.indexOfEol(readBuff, 0, len);
+                if (eolIdx < len) {
+                    return pos + eolIdx;
+                }
+                pos += len;
+                buff.clear();
+            }
+            return size;
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            final int len = await(channel.read(ByteBuffer.wrap(readBuff), pos));
+            return len > 0 ? NumberUtil.getFirstNumberFromBuffer(readBuff, len, pos == 0) : Long.MIN_VALUE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (prefetch != null) {
+                awaitQuietly(prefetch);
+                prefetch = null;
+            }
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Reads files with the numbers stored in binary, as little endian 64 bit
+ * values without separators. The numbers are copied from the mapped file
+ * directly to the batches handed to the handler, without parsing, and the
+ * blocks of the file are split exactly on the size of the numbers.
+ * Text files can be converted with {@link DataFileGenerator#convertToBinary}.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyBinary implements ScanStrategy {
+
+    public static final ScanStrategyBinary INSTANCE = new ScanStrategyBinary();
+    public static final int NUMBER_SIZE = Long.BYTES;
+    public static final int DEFAULT_MAX_REGION_SIZE = Integer.MAX_VALUE & ~(NUMBER_SIZE - 1);
+
+    private final int maxRegionSize;
+
+    public ScanStrategyBinary() {
+        this(DEFAULT_MAX_REGION_SIZE);
+    }
+
+    /**
+     *
+     * @param maxRegionSize the maximum size of each mapped region. Rounded down
+     * to a multiple of the size of the numbers.
+     */
+    public ScanStrategyBinary(int maxRegionSize) {
+        if (maxRegionSize < NUMBER_SIZE) {
+            throw new IllegalArgumentException("The region size must be at least " + NUMBER_SIZE);
+        }
+        this.maxRegionSize = maxRegionSize & ~(NUMBER_SIZE - 1);
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new BinaryFileScanner(file, maxRegionSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyBinary{" + "maxRegionSize=" + maxRegionSize + '}';
+    }
+
+    //
+    private static class BinaryFileScanner implements FileScanner {
+
+        private final FileChannel channel;
+        private final int maxRegionSize;
+        private final long size;
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+        private LongBuffer[] regions;
+
+        BinaryFileScanner(File file, int maxRegionSize) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.maxRegionSize = maxRegionSize;
+            this.size = channel.size();
+            if (size % NUMBER_SIZE != 0) {
+                channel.close();
+                throw new MedianFinderException("Invalid binary file, the size is not a multiple of "
+                        + NUMBER_SIZE + ": " + file);
+            }
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            if (pos % NUMBER_SIZE != 0 || limit % NUMBER_SIZE != 0) {
+                throw new MedianFinderException("Block not aligned with the numbers: " + pos + " - " + limit);
+            }
+            if (regions == null) {
+                map(0, size);
+            }
+            final long regionSize = maxRegionSize / NUMBER_SIZE;
+            final long first = pos / NUMBER_SIZE, last = limit / NUMBER_SIZE;
+            for (int i = (int) (first / regionSize); i < regions.length && i * regionSize < last; i++) {
+                // the part of the region inside the block
+                final LongBuffer region = regions[i].duplicate();
+                region.limit((int) (Math.min(last - i * regionSize, region.capacity())));
+                region.position((int) Math.max(first - i * regionSize, 0));
+                int len;
+                while ((len = region.remaining()) > 0) {
+                    if (len > nums.length) {
+                        len = nums.length;
+                    }
+                    region.get(nums, 0, len);
+                    handler.handle(nums, len);
+                }
+            }
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            return pos < size ? Math.min((pos + NUMBER_SIZE - 1) & ~(NUMBER_SIZE - 1), size) : size;
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            pos = (pos + NUMBER_SIZE - 1) & ~(NUMBER_SIZE - 1);
+            if (pos + NUMBER_SIZE > size) {
+                return Long.MIN_VALUE;
+            }
+            final ByteBuffer buff = ByteBuffer.allocate(NUMBER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (buff.hasRemaining() && channel.read(buff, pos + buff.position()) != -1);
+            return buff.getLong(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the mappings are released by the garbage collector
+            regions = null;
+            channel.close();
+        }
+
+        private void map(long pos, long limit) throws IOException {
+            final ArrayList<LongBuffer> list = new ArrayList<>();
+            while (pos < limit) {
+                int regionSize = (limit - pos < maxRegionSize) ? (int) (limit - pos) : maxRegionSize;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, pos, regionSize);
+                list.add(region.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+                pos += regionSize;
+            }
+            regions = list.toArray(new LongBuffer[list.size()]);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the numbers read by another scan strategy in off heap memory, so the
+ * file is read and parsed once and the following scans of the same blocks of
+ * the file are done over the parsed numbers. The memory is taken from a
+ * budget shared by all the scanners opened by the strategy; when a block
+ * doesn't fit, it's read from the file on every scan as before.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyCached implements ScanStrategy {
+
+    public static final long DEFAULT_MAX_MEMORY = 256L << 20;
+    // numbers on each off heap chunk, the chunks of a block double in size
+    // up to the maximum
+    private static final int MIN_CHUNK_SIZE = 1 << 13;
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    private final ScanStrategy scanStrategy;
+    private final long maxMemory;
+    private final AtomicLong available;
+
+    public ScanStrategyCached(ScanStrategy scanStrategy) {
+        this(scanStrategy, DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     *
+     * @param scanStrategy the strategy used to read the file
+     * @param maxMemory the maximum number of bytes used to keep the numbers,
+     * shared by all the open scanners
+     */
+    public ScanStrategyCached(ScanStrategy scanStrategy, long maxMemory) {
+        if (scanStrategy == null) {
+            throw new IllegalArgumentException("ScanStrategy cannot be null.");
+        }
+        if (maxMemory < 0) {
+            throw new IllegalArgumentException("The maximum memory cannot be negative.");
+        }
+        this.scanStrategy = scanStrategy;
+        this.maxMemory = maxMemory;
+        this.available = new AtomicLong(maxMemory);
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new CachedFileScanner(scanStrategy.open(file));
+    }
+
+    @Override
+    public long mean(long low, long high) {
+        return scanStrategy.mean(low, high);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyCached{" + "scanStrategy=" + scanStrategy + ", maxMemory=" + maxMemory + '}';
+    }
+
+    private boolean reserve(long bytes) {
+        long current;
+        do {
+            current = available.get();
+            if (current < bytes) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - bytes));
+        return true;
+    }
+
+    //
+    /**
+     * The numbers of a block of the file.
+     */
+    private static class Block {
+
+        final long limit;
+        final ArrayList<LongBuffer> chunks = new ArrayList<>();
+        LongBuffer chunk;
+        long reserved, stored;
+        boolean caching = true, complete;
+
+        Block(long limit) {
+            this.limit = limit;
+        }
+    }
+
+    private class CachedFileScanner implements FileScanner, NumberHandler {
+
+        private final FileScanner scanner;
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+        // blocks by start position
+        private final HashMap<Long, Block> blocks = new HashMap<>();
+        private Block block;
+        private NumberHandler handler;
+
+        CachedFileScanner(FileScanner scanner) {
+            this.scanner = scanner;
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            Block cached = blocks.get(pos);
+            if (cached != null && cached.limit == limit) {
+                if (cached.complete) {
+                    replay(cached, handler);
+                } else {
+                    // it didn't fit the memory
+                    scanner.scan(pos, limit, handler);
+                }
+                return;
+            }
+            if (cached != null) {
+                release(cached);
+            }
+            block = new Block(limit);
+            blocks.put(pos, block);
+            this.handler = handler;
+            try {
+                scanner.scan(pos, limit, this);
+                block.complete = block.caching;
+                if (block.complete) {
+                    trim(block);
+                }
+            } finally {
+                if (!block.complete) {
+                    release(block);
+                }
+                this.handler = null;
+                block = null;
+            }
+        }
+
+        @Override
+        public void handle(long[] nums, int len) {
+            if (block.caching) {
+                store(nums, len);
+            }
+            handler.handle(nums, len);
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            return scanner.findEndOfBlock(pos);
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            return scanner.firstNumber(pos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Block cached : blocks.values()) {
+                release(cached);
+            }
+            blocks.clear();
+            scanner.close();
+        }
+
+        private void store(long[] nums, int len) {
+            int off = 0;
+            while (off < len) {
+                if (block.chunk == null || !block.chunk.hasRemaining()) {
+                    block.chunk = allocate();
+                    if (block.chunk == null) {
+                        release(block);
+                        return;
+                    }
+                    block.chunks.add(block.chunk);
+                }
+                int size = Math.min(len - off, block.chunk.remaining());
+                block.chunk.put(nums, off, size);
+                block.stored += size;
+                off += size;
+            }
+        }
+
+        private LongBuffer allocate() {
+            long size = Math.min(Math.max(MIN_CHUNK_SIZE, Math.min(block.stored, MAX_CHUNK_SIZE)),
+                    available.get() / Long.BYTES);
+            if (size < 1 || !reserve(size * Long.BYTES)) {
+                return null;
+            }
+            block.reserved += size * Long.BYTES;
+            try {
+                return ByteBuffer.allocateDirect((int) size * Long.BYTES)
+                        .order(ByteOrder.nativeOrder()).asLongBuffer();
+            } catch (OutOfMemoryError e) {
+                // the direct memory limit of the JVM is below the budget
+                return null;
+            }
+        }
+
+        /**
+         * Replaces the last chunk by one of the used size, when most of it is
+         * empty.
+         */
+        private void trim(Block cached) {
+            final LongBuffer last = cached.chunk;
+            if (last == null || last.remaining() <= last.position()) {
+                return;
+            }
+            final LongBuffer copy;
+            try {
+                copy = ByteBuffer.allocateDirect(last.position() * Long.BYTES)
+                        .order(ByteOrder.nativeOrder()).asLongBuffer();
+            } catch (OutOfMemoryError e) {
+                return;
+            }
+            copy.put(last.duplicate().flip());
+            cached.chunks.set(cached.chunks.size() - 1, copy);
+            cached.chunk = copy;
+            final long freed = (long) last.remaining() * Long.BYTES;
+            cached.reserved -= freed;
+            available.addAndGet(freed);
+        }
+
+        private void replay(Block cached, NumberHandler handler) {
+            for (LongBuffer stored : cached.chunks) {
+                LongBuffer buff = stored.duplicate().flip();
+                while (buff.hasRemaining()) {
+                    int len = Math.min(nums.length, buff.remaining());
+                    buff.get(nums, 0, len);
+                    handler.handle(nums, len);
+                }
+            }
+        }
+
+        /**
+         * Frees the memory of the block, which is read from the file from
+         * now on.
+         */
+        private void release(Block cached) {
+            cached.caching = cached.complete = false;
+            cached.chunks.clear();
+            cached.chunk = null;
+            available.addAndGet(cached.reserved);
+            cached.reserved = 0;
+        }
+    }
+}
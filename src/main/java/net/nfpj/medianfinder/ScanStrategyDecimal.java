@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads text files with decimal numbers, one per line, with an optional
+ * fraction and exponent, e.g. 12.5, -0.003 or 1.5e-4. The numbers are parsed
+ * to doubles with {@link NumberUtil#toDouble(byte[], int, int)} and handed to
+ * the strategies encoded with {@link NumberUtil#toSortableLong(double)}, which
+ * keeps their order, so the pivots, caches and indexes work on them as on
+ * integers. The medians found must be decoded with
+ * {@link NumberUtil#fromSortableLong(long)}.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyDecimal implements ScanStrategy {
+
+    public static final ScanStrategyDecimal INSTANCE = new ScanStrategyDecimal();
+
+    /**
+     * The mean of the decoded numbers, encoded again.
+     */
+    @Override
+    public long mean(long low, long high) {
+        if (low == high) {
+            return low;
+        }
+        return NumberUtil.toSortableLong(NumberUtil.fromSortableLong(low) / 2 + NumberUtil.fromSortableLong(high) / 2);
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new DecimalFileScanner(file);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyDecimal{" + '}';
+    }
+
+    //
+    private static class DecimalFileScanner implements FileScanner {
+
+        private final RandomAccessFile in;
+        private final byte[] readBuff = new byte[Constants.BUFFER_SIZE];
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+
+        DecimalFileScanner(File file) throws IOException {
+            this.in = new RandomAccessFile(file, "r");
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            int buffInitPos = 0;
+            int numsLen = 0;
+            //
+            int eolIdx, stIdx;
+            int readLen;
+            long remaining = limit - pos;
+            in.seek(pos);
+            while (remaining > 0 && (readLen = in.read(readBuff, buffInitPos,
+                    (readBuff.length - buffInitPos < remaining) ? readBuff.length - buffInitPos : (int) remaining)) != -1) {
+                remaining -= readLen;
+                readLen += buffInitPos;
+                stIdx = eolIdx = 0;
+                buffInitPos = 0;
+                while (eolIdx < readLen) {
+                    eolIdx = NumberUtil.indexOfEol(readBuff, eolIdx, readLen);
+                    if (stIdx < eolIdx) {
+                        if (eolIdx < readLen) {
+                            nums[numsLen++] = NumberUtil.toSortableLong(
+                                    NumberUtil.toDouble(readBuff, stIdx, eolIdx - 1));
+                            if (numsLen == nums.length) {
+                                handler.handle(nums, numsLen);
+                                numsLen = 0;
+                            }
+                            stIdx = ++eolIdx;
+                        } else if (stIdx < readLen) {
+                            buffInitPos = readLen - stIdx;
+                            System.arraycopy(readBuff, stIdx, readBuff, 0, buffInitPos);
+                        }
+                    } else {
+                        stIdx = ++eolIdx;
+                    }
+                }
+            }
+            if (buffInitPos > 0) {
+                nums[numsLen++] = NumberUtil.toSortableLong(NumberUtil.toDouble(readBuff, 0, buffInitPos - 1));
+            }
+            if (numsLen > 0) {
+                handler.handle(nums, numsLen);
+            }
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            int len;
+            in.seek(pos);
+            while ((len = in.read(readBuff)) != -1) {
+                int eolIdx = NumberUtil.indexOfEol(readBuff, 0, len);
+                if (eolIdx < len) {
+                    return pos + eolIdx;
+                }
+                pos += len;
+            }
+            return in.length();
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            in.seek(pos);
+            final int len = Math.max(0, in.read(readBuff));
+            int stIdx = (pos == 0) ? 0 : NumberUtil.indexOfEol(readBuff, 0, len) + 1;
+            for (; stIdx < len && readBuff[stIdx] == Constants.EOL; stIdx++);
+            final int ndIdx = NumberUtil.indexOfEol(readBuff, stIdx, len);
+            if (stIdx < ndIdx && (ndIdx < len || pos + len == in.length())) {
+                return NumberUtil.toSortableLong(NumberUtil.toDouble(readBuff, stIdx, ndIdx - 1));
+            }
+            return Long.MIN_VALUE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Reads text files with delimited records, one per line, as CSV or TSV files,
+ * taking the numbers of some of the columns. The fields are found on the
+ * buffer and parsed in place, without creating strings; the spaces and quotes
+ * around the numbers are ignored, and so are the empty fields. The fields
+ * can't have the delimiter inside quotes.
+ * <p>
+ * The scans of the {@link FileScanner} give the numbers of the first column,
+ * so any strategy can find its median. The scanners returned by this strategy
+ * can also give the numbers of all the columns on the same scan, each to its
+ * own handler, which is how
+ * {@link MedianFinderStrategyHistogram#findMedians(File)} finds the medians of
+ * all the columns with the same scans.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyDelimited implements ScanStrategy {
+
+    public static final byte COMMA = ',';
+    public static final byte TAB = '\t';
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final byte delimiter;
+    private final boolean header;
+    private final boolean decimal;
+    private final int bufferSize;
+    private final int[] columns;
+
+    /**
+     *
+     * @param delimiter the delimiter of the fields
+     * @param columns the columns with the numbers, from zero
+     */
+    public ScanStrategyDelimited(byte delimiter, int... columns) {
+        this(delimiter, false, false, columns);
+    }
+
+    /**
+     *
+     * @param delimiter the delimiter of the fields
+     * @param header true to ignore the first line of the file
+     * @param decimal true if the numbers are decimals, read as by
+     * {@link ScanStrategyDecimal}
+     * @param columns the columns with the numbers, from zero
+     */
+    public ScanStrategyDelimited(byte delimiter, boolean header, boolean decimal, int... columns) {
+        this(delimiter, header, decimal, DEFAULT_BUFFER_SIZE, columns);
+    }
+
+    /**
+     *
+     * @param delimiter the delimiter of the fields
+     * @param header true to ignore the first line of the file
+     * @param decimal true if the numbers are decimals, read as by
+     * {@link ScanStrategyDecimal}
+     * @param bufferSize the initial size of the buffer, which grows for the
+     * lines that don't fit
+     * @param columns the columns with the numbers, from zero
+     */
+    public ScanStrategyDelimited(byte delimiter, boolean header, boolean decimal, int bufferSize, int[] columns) {
+        if (delimiter == Constants.EOL) {
+            throw new IllegalArgumentException("The delimiter cannot be the end of line.");
+        }
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("At least one column is needed.");
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Invalid column " + columns[i] + ". Must be zero or bigger.");
+            }
+            for (int j = 0; j < i; j++) {
+                if (columns[j] == columns[i]) {
+                    throw new IllegalArgumentException("Repeated column " + columns[i]);
+                }
+            }
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size must be bigger than zero.");
+        }
+        this.delimiter = delimiter;
+        this.header = header;
+        this.decimal = decimal;
+        this.bufferSize = bufferSize;
+        this.columns = columns.clone();
+    }
+
+    /**
+     * @return the columns with the numbers, in the order of the handlers of
+     * {@link DelimitedFileScanner#scan(long, long, NumberHandler[])}
+     */
+    public int[] getColumns() {
+        return columns.clone();
+    }
+
+    @Override
+    public DelimitedFileScanner open(File file) throws IOException {
+        return new DelimitedFileScanner(file, this);
+    }
+
+    @Override
+    public long mean(long low, long high) {
+        return decimal ? ScanStrategyDecimal.INSTANCE.mean(low, high) : ScanStrategy.super.mean(low, high);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyDelimited{" + "delimiter=" + delimiter + ", header=" + header + ", decimal=" + decimal
+                + ", bufferSize=" + bufferSize + ", columns=" + Arrays.toString(columns) + '}';
+    }
+
+    //
+    /**
+     * Reads the columns of a delimited file.
+     */
+    public static class DelimitedFileScanner implements FileScanner {
+
+        private final RandomAccessFile in;
+        private final byte delimiter;
+        private final boolean header;
+        private final boolean decimal;
+        // the index of the columns on the handlers, -1 for the columns not read
+        private final int[] slots;
+        private final long[][] nums;
+        private final int[] numsLen;
+        private final NumberHandler[] single;
+        private byte[] readBuff;
+        private NumberHandler[] handlers;
+
+        DelimitedFileScanner(File file, ScanStrategyDelimited strategy) throws IOException {
+            this.in = new RandomAccessFile(file, "r");
+            this.delimiter = strategy.delimiter;
+            this.header = strategy.header;
+            this.decimal = strategy.decimal;
+            int last = 0;
+            for (int column : strategy.columns) {
+                last = Math.max(last, column);
+            }
+            this.slots = new int[last + 1];
+            Arrays.fill(slots, -1);
+            for (int i = 0; i < strategy.columns.length; i++) {
+                slots[strategy.columns[i]] = i;
+            }
+            this.nums = new long[strategy.columns.length][Constants.BATCH_SIZE];
+            this.numsLen = new int[strategy.columns.length];
+            this.single = new NumberHandler[strategy.columns.length];
+            this.readBuff = new byte[strategy.bufferSize];
+        }
+
+        /**
+         * Reads the numbers of the first column.
+         */
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            single[0] = handler;
+            scan(pos, limit, single);
+        }
+
+        /**
+         * Reads the numbers of all the columns between the two positions of
+         * the file, giving each column to its own handler.
+         *
+         * @param pos the position of the file where the scan starts
+         * @param limit the position of the file where the scan stops
+         * (exclusive)
+         * @param handlers the handlers of the columns, in the order of the
+         * columns of the strategy. A null handler skips the column.
+         * @throws IOException
+         */
+        public void scan(long pos, long limit, NumberHandler[] handlers) throws IOException {
+            if (handlers.length != numsLen.length) {
+                throw new IllegalArgumentException("Expected " + numsLen.length + " handlers, found " + handlers.length);
+            }
+            this.handlers = handlers;
+            // the first line of the file is the header
+            boolean skip = header && pos == 0;
+            int buffInitPos = 0;
+            //
+            int eolIdx, stIdx;
+            int readLen;
+            long remaining = limit - pos;
+            in.seek(pos);
+            while (remaining > 0 && (readLen = in.read(readBuff, buffInitPos,
+                    (readBuff.length - buffInitPos < remaining) ? readBuff.length - buffInitPos : (int) remaining)) != -1) {
+                remaining -= readLen;
+                readLen += buffInitPos;
+                stIdx = 0;
+                while ((eolIdx = NumberUtil.indexOfEol(readBuff, stIdx, readLen)) < readLen) {
+                    if (skip) {
+                        skip = false;
+                    } else if (stIdx < eolIdx) {
+                        line(stIdx, eolIdx);
+                    }
+                    stIdx = eolIdx + 1;
+                }
+                buffInitPos = readLen - stIdx;
+                if (buffInitPos == readBuff.length) {
+                    // a line bigger than the buffer
+                    readBuff = Arrays.copyOf(readBuff, readBuff.length * 2);
+                } else if (buffInitPos > 0) {
+                    System.arraycopy(readBuff, stIdx, readBuff, 0, buffInitPos);
+                }
+            }
+            if (buffInitPos > 0 && !skip) {
+                line(0, buffInitPos);
+            }
+            for (int i = 0; i < numsLen.length; i++) {
+                if (numsLen[i] > 0) {
+                    handlers[i].handle(nums[i], numsLen[i]);
+                    numsLen[i] = 0;
+                }
+            }
+            this.handlers = null;
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            int len;
+            in.seek(pos);
+            while ((len = in.read(readBuff)) != -1) {
+                int eolIdx = NumberUtil.indexOfEol(readBuff, 0, len);
+                if (eolIdx < len) {
+                    return pos + eolIdx;
+                }
+                pos += len;
+            }
+            return in.length();
+        }
+
+        /**
+         * Reads the number of the first column on the first line starting at,
+         * or after, the position.
+         */
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            in.seek(pos);
+            final int len = Math.max(0, in.read(readBuff));
+            final int stIdx = (pos == 0 && !header) ? 0 : NumberUtil.indexOfEol(readBuff, 0, len) + 1;
+            if (stIdx >= len) {
+                return Long.MIN_VALUE;
+            }
+            final long[] first = new long[]{Long.MIN_VALUE};
+            scan(pos + stIdx, pos + NumberUtil.indexOfEol(readBuff, stIdx, len), (nums, numsLen) -> first[0] = nums[0]);
+            return first[0];
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Reads the columns of the line, from the first index to the end of
+         * line (exclusive).
+         */
+        private void line(int stIdx, int eolIdx) {
+            for (int column = 0; column < slots.length; column++) {
+                final int ndIdx = NumberUtil.indexOf(readBuff, stIdx, eolIdx, delimiter);
+                final int slot = slots[column];
+                if (slot >= 0 && handlers[slot] != null) {
+                    field(slot, stIdx, ndIdx - 1);
+                }
+                if (ndIdx == eolIdx) {
+                    break;
+                }
+                stIdx = ndIdx + 1;
+            }
+        }
+
+        /**
+         * Parses the number of the field, between the two indexes
+         * (inclusive), ignoring the spaces and quotes around it.
+         */
+        private void field(int slot, int stIdx, int ndIdx) {
+            for (; stIdx <= ndIdx && (readBuff[stIdx] == ' ' || readBuff[stIdx] == '"'); stIdx++);
+            for (; ndIdx >= stIdx && (readBuff[ndIdx] == ' ' || readBuff[ndIdx] == '"' || readBuff[ndIdx] == '\r'); ndIdx--);
+            if (stIdx > ndIdx) {
+                return;
+            }
+            final long[] columnNums = nums[slot];
+            columnNums[numsLen[slot]++] = decimal
+                    ? NumberUtil.toSortableLong(NumberUtil.toDouble(readBuff, stIdx, ndIdx))
+                    : NumberUtil.toLongSwar(readBuff, stIdx, ndIdx);
+            if (numsLen[slot] == columnNums.length) {
+                handlers[slot].handle(columnNums, numsLen[slot]);
+                numsLen[slot] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the file with direct I/O, bypassing the page cache, for files much
+ * bigger than the memory: the scans don't evict the pages of the other
+ * processes for pages that are never read again before being evicted. The
+ * file is read with big sequential reads, on positions and sizes aligned to
+ * the block size of the file system, into an aligned buffer.
+ * <p>
+ * The direct option is looked up when the class is loaded, it's available
+ * since Java 10. When it's not available, or the file system doesn't support
+ * it, the file is read through the page cache with the same big reads.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyDirect implements ScanStrategy {
+
+    public static final ScanStrategyDirect INSTANCE = new ScanStrategyDirect();
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int DEFAULT_ALIGNMENT = 4096;
+    private static final OpenOption DIRECT = lookupDirect();
+    private static final Method GET_BLOCK_SIZE = lookupGetBlockSize();
+
+    private final int bufferSize;
+
+    public ScanStrategyDirect() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     *
+     * @param bufferSize the size of each read, rounded up to the block size of
+     * the file system
+     */
+    public ScanStrategyDirect(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size must be bigger than zero.");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return true if the direct option is available on this version of Java
+     */
+    public static boolean isAvailable() {
+        return DIRECT != null;
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new DirectFileScanner(file.toPath(), bufferSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyDirect{" + "bufferSize=" + bufferSize + ", available=" + isAvailable() + '}';
+    }
+
+    private static OpenOption lookupDirect() {
+        try {
+            for (Object option : Class.forName("com.sun.nio.file.ExtendedOpenOption").getEnumConstants()) {
+                if ("DIRECT".equals(((Enum) option).name())) {
+                    return (OpenOption) option;
+                }
+            }
+        } catch (ClassNotFoundException ex) {
+            // not available
+        }
+        return null;
+    }
+
+    private static Method lookupGetBlockSize() {
+        try {
+            return java.nio.file.FileStore.class.getMethod("getBlockSize");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the block size of the file system of the file, the alignment of
+     * the direct reads
+     */
+    private static int alignment(Path path) {
+        if (GET_BLOCK_SIZE != null) {
+            try {
+                final long size = (Long) GET_BLOCK_SIZE.invoke(Files.getFileStore(path));
+                if (size >= 512 && size <= (1 << 20) && Long.bitCount(size) == 1) {
+                    return (int) size;
+                }
+            } catch (ReflectiveOperationException | IOException | RuntimeException ex) {
+                // use the default
+            }
+        }
+        return DEFAULT_ALIGNMENT;
+    }
+
+    //
+    private static class DirectFileScanner implements FileScanner {
+
+        private final FileChannel channel;
+        private final boolean direct;
+        private final long size;
+        private final int alignment;
+        // the reads start after the head, where the end of the previous read
+        // is kept, both aligned
+        private final int head;
+        private final ByteBuffer buffer;
+        private final ByteBuffer view;
+        private final byte[] readBuff = new byte[Constants.BUFFER_SIZE];
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+
+        DirectFileScanner(Path path, int bufferSize) throws IOException {
+            FileChannel channel = null;
+            if (DIRECT != null) {
+                try {
+                    channel = FileChannel.open(path, StandardOpenOption.READ, DIRECT);
+                } catch (IOException | UnsupportedOperationException ex) {
+                    // not supported by the file system
+                }
+            }
+            this.direct = channel != null;
+            this.channel = direct ? channel : FileChannel.open(path, StandardOpenOption.READ);
+            this.size = this.channel.size();
+            this.alignment = alignment(path);
+            this.head = alignment;
+            final int readSize = (bufferSize + alignment - 1) / alignment * alignment;
+            this.buffer = ByteBuffer.allocateDirect(head + readSize + alignment).alignedSlice(alignment);
+            this.view = buffer.duplicate();
+        }
+
+        /**
+         * Reads from the aligned position into the buffer, after the head.
+         *
+         * @return the number of bytes read, or -1 at the end of the file
+         */
+        private int read(long alignedPos) throws IOException {
+            view.clear();
+            view.position(head);
+            int len;
+            do {
+                len = channel.read(view, alignedPos + view.position() - head);
+            } while (len > 0 && view.hasRemaining() && !direct);
+            return (view.position() > head) ? view.position() - head : len;
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            long readPos = pos - pos % alignment;
+            int skip = (int) (pos - readPos);
+            int numsLen = 0;
+            int carry = 0;
+            int end = head;
+            while (readPos < limit) {
+                // the end of the previous read, before the start of this one
+                for (int i = 0, from = end - carry; i < carry; i++) {
+                    buffer.put(head - carry + i, buffer.get(from + i));
+                }
+                final int len = read(readPos);
+                if (len <= 0) {
+                    break;
+                }
+                end = head + (int) Math.min(len, limit - readPos);
+                readPos += len;
+                int stIdx = head + skip - carry, eolIdx = stIdx;
+                skip = 0;
+                carry = 0;
+                while (eolIdx < end) {
+                    eolIdx = NumberUtil.indexOfEol(buffer, eolIdx, end);
+                    if (stIdx < eolIdx) {
+                        if (eolIdx < end) {
+                            nums[numsLen++] = NumberUtil.toLongSwar(buffer, stIdx, eolIdx - 1);
+                            if (numsLen == nums.length) {
+                                handler.handle(nums, numsLen);
+                                numsLen = 0;
+                            }
+                            stIdx = ++eolIdx;
+                        } else {
+                            carry = end - stIdx;
+                            if (carry > head) {
+                                throw new MedianFinderException("No end of line found in line starting at "
+                                        + (readPos - len + stIdx - head));
+                            }
+                        }
+                    } else {
+                        stIdx = ++eolIdx;
+                    }
+                }
+            }
+            if (carry > 0) {
+                nums[numsLen++] = NumberUtil.toLongSwar(buffer, end - carry, end - 1);
+            }
+            if (numsLen > 0) {
+                handler.handle(nums, numsLen);
+            }
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            while (pos < size) {
+                final long alignedPos = pos - pos % alignment;
+                final int len = read(alignedPos);
+                if (len <= 0) {
+                    break;
+                }
+                final int from = head + (int) (pos - alignedPos), to = head + len;
+                final int eolIdx = NumberUtil.indexOfEol(buffer, from, to);
+                if (eolIdx < to) {
+                    return alignedPos + eolIdx - head;
+                }
+                pos = alignedPos + len;
+            }
+            return size;
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            final long alignedPos = pos - pos % alignment;
+            final int len = read(alignedPos) - (int) (pos - alignedPos);
+            if (len <= 0) {
+                return Long.MIN_VALUE;
+            }
+            final int copy = Math.min(len, readBuff.length);
+            for (int i = 0; i < copy; i++) {
+                readBuff[i] = buffer.get(head + (int) (pos - alignedPos) + i);
+            }
+            return NumberUtil.getFirstNumberFromBuffer(readBuff, copy, pos == 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads text files compressed with gzip, without decompressing them to disk.
+ * Files with several members, as written by {@code bgzip}, {@code pigz} with
+ * independent blocks or the concatenation of gzip files, are split on the
+ * start of the members, so each partition decodes its own members in
+ * parallel with the others. A file with a single member can only be read
+ * from the beginning, on one block.
+ * <p>
+ * The positions of the blocks are positions of the compressed file, and the
+ * lines can be split between two members: the block with the beginning of the
+ * line reads the next member up to the end of the line, and the next block
+ * skips it. The members are decoded again on each scan, so the strategy
+ * should be wrapped in a {@link ScanStrategyCached} to keep the decoded
+ * numbers between the scans.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyGzip implements ScanStrategy {
+
+    public static final ScanStrategyGzip INSTANCE = new ScanStrategyGzip();
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    // bytes decoded to check a possible start of a member
+    private static final int PROBE_SIZE = 4096;
+    private static final byte DEFLATE = 8;
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    // header, empty deflate block and trailer
+    private static final int MIN_MEMBER_SIZE = HEADER_SIZE + 2 + TRAILER_SIZE;
+    private static final int FLAG_HCRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+    private static final int FLAG_RESERVED = 0xE0;
+
+    private final int bufferSize;
+
+    public ScanStrategyGzip() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     *
+     * @param bufferSize the size of the buffer with the decoded text
+     */
+    public ScanStrategyGzip(int bufferSize) {
+        if (bufferSize <= Constants.NUMBER_MAX_LEN) {
+            throw new IllegalArgumentException("The buffer size must be bigger than " + Constants.NUMBER_MAX_LEN);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new GzipFileScanner(file, bufferSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyGzip{" + "bufferSize=" + bufferSize + '}';
+    }
+
+    /**
+     * @return the size of the header of the member on the start of the
+     * buffer, or -1 if it isn't a valid header
+     */
+    private static int headerLength(byte[] buff, int len) {
+        if (len < HEADER_SIZE || buff[0] != (byte) 0x1f || buff[1] != (byte) 0x8b || buff[2] != DEFLATE
+                || (buff[3] & FLAG_RESERVED) != 0 || (buff[8] != 0 && buff[8] != 2 && buff[8] != 4)) {
+            return -1;
+        }
+        final int flags = buff[3];
+        int idx = HEADER_SIZE;
+        if ((flags & FLAG_EXTRA) != 0) {
+            idx += (idx + 2 <= len) ? 2 + ((buff[idx] & 0xff) | (buff[idx + 1] & 0xff) << 8) : 2;
+        }
+        if ((flags & FLAG_NAME) != 0) {
+            for (; idx < len && buff[idx] != 0; idx++);
+            idx++;
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            for (; idx < len && buff[idx] != 0; idx++);
+            idx++;
+        }
+        if ((flags & FLAG_HCRC) != 0) {
+            idx += 2;
+        }
+        return idx <= len ? idx : -1;
+    }
+
+    private static boolean isMagic(byte[] buff, int idx) {
+        return buff[idx] == (byte) 0x1f && buff[idx + 1] == (byte) 0x8b && buff[idx + 2] == DEFLATE;
+    }
+
+    private static boolean isText(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == Constants.EOL || b == '\r';
+    }
+
+    private static int intLE(byte[] buff, int idx) {
+        return (buff[idx] & 0xff) | (buff[idx + 1] & 0xff) << 8 | (buff[idx + 2] & 0xff) << 16
+                | (buff[idx + 3] & 0xff) << 24;
+    }
+
+    //
+    private static class GzipFileScanner implements FileScanner {
+
+        private final FileChannel channel;
+        private final long size;
+        private final byte[] in = new byte[DEFAULT_BUFFER_SIZE];
+        private final byte[] probe = new byte[DEFAULT_BUFFER_SIZE];
+        private final byte[] trailer = new byte[TRAILER_SIZE];
+        private final byte[] readBuff;
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        // true if the text decoded before the member ends a line, for the
+        // start of the blocks
+        private final HashMap<Long, Boolean> eolBefore = new HashMap<>();
+        // the last search of a member: from the position, the member found
+        private long searchFrom = -1, searchFound = -1;
+        // the member being decoded, the position after the data given to the
+        // inflater, and the end of the member once decoded
+        private long member, inPos, end;
+        // the last byte of the member decoded by skip, -1 if it was empty
+        private int lastByte;
+
+        GzipFileScanner(File file, int bufferSize) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+            this.readBuff = new byte[bufferSize];
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            if (pos >= limit) {
+                return;
+            }
+            // the beginning of the first member ends the line of the previous block
+            boolean skip = pos > 0 && !eolBefore(pos);
+            boolean done = false;
+            int buffInitPos = 0;
+            int numsLen = 0;
+            int last = -1;
+            //
+            int eolIdx, stIdx;
+            int readLen;
+            for (long next = pos; !done && next < size && (next < limit || buffInitPos > 0); next = end) {
+                // after the limit, only the end of the line split with the next block
+                final boolean tail = next >= limit;
+                if (!begin(next)) {
+                    throw new MedianFinderException("Invalid gzip member at " + next);
+                }
+                while (!done && (readLen = inflate(readBuff, buffInitPos, readBuff.length - buffInitPos)) != -1) {
+                    readLen += buffInitPos;
+                    last = readBuff[readLen - 1];
+                    stIdx = eolIdx = 0;
+                    buffInitPos = 0;
+                    while (eolIdx < readLen) {
+                        eolIdx = NumberUtil.indexOfEol(readBuff, eolIdx, readLen);
+                        if (skip) {
+                            skip = eolIdx == readLen;
+                            stIdx = ++eolIdx;
+                        } else if (stIdx < eolIdx) {
+                            if (eolIdx < readLen) {
+                                nums[numsLen++] = NumberUtil.toLongSwar(readBuff, stIdx, eolIdx - 1);
+                                if (numsLen == nums.length) {
+                                    handler.handle(nums, numsLen);
+                                    numsLen = 0;
+                                }
+                                if (tail) {
+                                    done = true;
+                                    break;
+                                }
+                                stIdx = ++eolIdx;
+                            } else if (stIdx < readLen) {
+                                buffInitPos = readLen - stIdx;
+                                System.arraycopy(readBuff, stIdx, readBuff, 0, buffInitPos);
+                                if (buffInitPos == readBuff.length) {
+                                    throw new MedianFinderException("Line too long on the gzip member at " + next);
+                                }
+                            }
+                        } else {
+                            stIdx = ++eolIdx;
+                        }
+                    }
+                }
+                if (!done && end == limit && last != -1) {
+                    eolBefore.put(end, last == Constants.EOL);
+                }
+            }
+            if (buffInitPos > 0) {
+                nums[numsLen++] = NumberUtil.toLongSwar(readBuff, 0, buffInitPos - 1);
+            }
+            if (numsLen > 0) {
+                handler.handle(nums, numsLen);
+            }
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            return nextMember(pos);
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            long start = nextMember(pos);
+            if (start >= size) {
+                // no member after the position, the first one is used
+                start = 0;
+            }
+            int len = 0, read;
+            if (begin(start)) {
+                while (len < readBuff.length && (read = inflate(readBuff, len, readBuff.length - len)) != -1) {
+                    len += read;
+                }
+            }
+            return len > 0 ? NumberUtil.getFirstNumberFromBuffer(readBuff, len, start == 0) : Long.MIN_VALUE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            channel.close();
+        }
+
+        /**
+         * Starts decoding the member at the position.
+         *
+         * @return false if there's no valid header at the position
+         */
+        private boolean begin(long pos) throws IOException {
+            final int len = read(in, in.length, pos);
+            final int header = headerLength(in, len);
+            if (header < 0) {
+                return false;
+            }
+            inflater.reset();
+            inflater.setInput(in, header, len - header);
+            crc.reset();
+            member = pos;
+            inPos = pos + len;
+            end = -1;
+            return true;
+        }
+
+        /**
+         * Decodes the next bytes of the member, checking the trailer at the
+         * end.
+         *
+         * @return the number of bytes decoded, or -1 at the end of the member
+         */
+        private int inflate(byte[] buff, int off, int len) throws IOException {
+            try {
+                int read;
+                while ((read = inflater.inflate(buff, off, len)) == 0) {
+                    if (inflater.finished()) {
+                        final long pos = inPos - inflater.getRemaining();
+                        if (read(trailer, TRAILER_SIZE, pos) < TRAILER_SIZE
+                                || intLE(trailer, 0) != (int) crc.getValue()
+                                || intLE(trailer, 4) != (int) inflater.getBytesWritten()) {
+                            throw new MedianFinderException("Corrupted gzip member at " + member);
+                        }
+                        end = pos + TRAILER_SIZE;
+                        return -1;
+                    } else if (inflater.needsDictionary()) {
+                        throw new MedianFinderException("Invalid gzip member at " + member);
+                    } else if (inflater.needsInput()) {
+                        final int inLen = read(in, in.length, inPos);
+                        if (inLen <= 0) {
+                            throw new MedianFinderException("Truncated gzip member at " + member);
+                        }
+                        inflater.setInput(in, 0, inLen);
+                        inPos += inLen;
+                    }
+                }
+                crc.update(buff, off, read);
+                return read;
+            } catch (DataFormatException ex) {
+                throw new MedianFinderException("Invalid gzip member at " + member, ex);
+            }
+        }
+
+        /**
+         * Decodes the whole member at the position, keeping its last byte.
+         *
+         * @return the end of the member, or -1 if it isn't a valid member
+         * ending at, or before, the maximum
+         */
+        private long skip(long pos, long max) throws IOException {
+            lastByte = -1;
+            try {
+                if (!begin(pos)) {
+                    return -1;
+                }
+                int read;
+                while ((read = inflate(readBuff, 0, readBuff.length)) != -1) {
+                    lastByte = readBuff[read - 1];
+                    if (inPos - inflater.getRemaining() > max) {
+                        return -1;
+                    }
+                }
+                return end <= max ? end : -1;
+            } catch (MedianFinderException ex) {
+                return -1;
+            }
+        }
+
+        /**
+         * Checks if a member starts at the position, decoding the beginning
+         * of it, which must be text.
+         */
+        private boolean isMember(long pos) throws IOException {
+            try {
+                if (!begin(pos)) {
+                    return false;
+                }
+                int len = 0, read;
+                while (len < PROBE_SIZE
+                        && (read = inflate(readBuff, 0, Math.min(readBuff.length, PROBE_SIZE - len))) != -1) {
+                    for (int i = 0; i < read; i++) {
+                        if (!isText(readBuff[i])) {
+                            return false;
+                        }
+                    }
+                    len += read;
+                }
+                return true;
+            } catch (MedianFinderException ex) {
+                return false;
+            }
+        }
+
+        /**
+         * @return the start of the first member at, or after, the position,
+         * or the size of the file if there's none
+         */
+        private long nextMember(long pos) throws IOException {
+            if (pos <= 0 || pos >= size) {
+                return pos <= 0 ? 0 : size;
+            }
+            if (pos >= searchFrom && pos <= searchFound) {
+                return searchFound;
+            }
+            long found = size;
+            search:
+            for (long start = pos; start + MIN_MEMBER_SIZE <= size;) {
+                final int len = read(probe, probe.length, start);
+                for (int i = 0; i + 2 < len && start + i + MIN_MEMBER_SIZE <= size; i++) {
+                    if (isMagic(probe, i) && isMember(start + i)) {
+                        found = start + i;
+                        break search;
+                    }
+                }
+                // the magic can be split between the reads
+                start += Math.max(1, len - 2);
+            }
+            searchFrom = pos;
+            searchFound = found;
+            return found;
+        }
+
+        /**
+         * @return the start of the member ending at the position, searching
+         * backwards
+         */
+        private long previousMember(long pos) throws IOException {
+            for (long last = pos - MIN_MEMBER_SIZE; last >= 0;) {
+                final long first = Math.max(0, last - probe.length + 3);
+                final int len = read(probe, (int) (last - first) + 3, first);
+                for (int i = (int) (last - first); i >= 0; i--) {
+                    if (i + 2 < len && isMagic(probe, i) && skip(first + i, pos) == pos) {
+                        return first + i;
+                    }
+                }
+                last = first - 1;
+            }
+            throw new MedianFinderException("No gzip member ends at " + pos);
+        }
+
+        /**
+         * @return true if the text decoded before the member at the position
+         * ends a line
+         */
+        private boolean eolBefore(long pos) throws IOException {
+            Boolean eol = eolBefore.get(pos);
+            if (eol == null) {
+                final long start = previousMember(pos);
+                // an empty member keeps the line of the members before it
+                eol = (lastByte == -1) ? (start == 0 || eolBefore(start)) : lastByte == Constants.EOL;
+                eolBefore.put(pos, eol);
+            }
+            return eol;
+        }
+
+        private int read(byte[] buff, int len, long pos) throws IOException {
+            final ByteBuffer dst = ByteBuffer.wrap(buff, 0, len);
+            while (dst.hasRemaining() && channel.read(dst, pos + dst.position()) != -1);
+            return dst.position();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Reads the file through memory mappings, avoiding the system calls and the
+ * copies to a buffer on each scan. The file is mapped on the first scan and
+ * the blocks of all the scans are read from the same mappings, so every scan
+ * after the first reads directly from the page cache while the file is there.
+ * Files bigger than the maximum region size are mapped in several regions,
+ * each ending at an end of line.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyMemoryMapped implements ScanStrategy {
+
+    public static final ScanStrategyMemoryMapped INSTANCE = new ScanStrategyMemoryMapped();
+    public static final int DEFAULT_MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final int maxRegionSize;
+
+    public ScanStrategyMemoryMapped() {
+        this(DEFAULT_MAX_REGION_SIZE);
+    }
+
+    /**
+     *
+     * @param maxRegionSize the maximum size of each mapped region. Must be
+     * bigger than the longest line of the file.
+     */
+    public ScanStrategyMemoryMapped(int maxRegionSize) {
+        if (maxRegionSize < Constants.NUMBER_MAX_LEN + 1) {
+            throw new IllegalArgumentException("The region size must be bigger than " + Constants.NUMBER_MAX_LEN);
+        }
+        this.maxRegionSize = maxRegionSize;
+    }
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new MappedFileScanner(file, maxRegionSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyMemoryMapped{" + "maxRegionSize=" + maxRegionSize + '}';
+    }
+
+    //
+    private static class MappedFileScanner implements FileScanner {
+
+        private final FileChannel channel;
+        private final int maxRegionSize;
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+        private MappedByteBuffer[] regions;
+        private long[] regionsPos;
+
+        MappedFileScanner(File file, int maxRegionSize) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.maxRegionSize = maxRegionSize;
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            if (regions == null) {
+                map(0, channel.size());
+            }
+            int numsLen = 0;
+            for (int i = 0; i < regions.length; i++) {
+                final long regionPos = regionsPos[i];
+                final long regionLimit = regionPos + regions[i].limit();
+                if (regionLimit > pos && regionPos < limit) {
+                    // the part of the region inside the block
+                    ByteBuffer region = regions[i].duplicate();
+                    region.limit((int) (Math.min(limit, regionLimit) - regionPos));
+                    region.position((int) (Math.max(pos, regionPos) - regionPos));
+                    numsLen = scanRegion(region.slice(), handler, numsLen);
+                }
+            }
+            if (numsLen > 0) {
+                handler.handle(nums, numsLen);
+            }
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            final ByteBuffer buff = ByteBuffer.allocate(Constants.BUFFER_SIZE);
+            int len;
+            while ((len = channel.read(buff, pos)) != -1) {
+                int eolIdx = NumberUtil.indexOfEol(buff, 0, len);
+                if (eolIdx < len) {
+                    return pos + eolIdx;
+                }
+                pos += len;
+                buff.clear();
+            }
+            return channel.size();
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            final ByteBuffer buff = ByteBuffer.allocate(Constants.BUFFER_SIZE);
+            int len = channel.read(buff, pos);
+            return len > 0 ? NumberUtil.getFirstNumberFromBuffer(buff.array(), len, pos == 0) : Long.MIN_VALUE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the mappings are released by the garbage collector
+            regions = null;
+            channel.close();
+        }
+
+        private void map(long pos, long limit) throws IOException {
+            final ArrayList<MappedByteBuffer> list = new ArrayList<>();
+            final ArrayList<Long> listPos = new ArrayList<>();
+            while (pos < limit) {
+                int size = (limit - pos < maxRegionSize) ? (int) (limit - pos) : maxRegionSize;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+                if (pos + size < limit) {
+                    // the region must end at an end of line
+                    int eolIdx = size - 1;
+                    for (; eolIdx >= 0 && region.get(eolIdx) != Constants.EOL; eolIdx--);
+                    if (eolIdx < 0) {
+                        throw new MedianFinderException("No end of line found in region starting at " + pos);
+                    }
+                    size = eolIdx + 1;
+                    region.limit(size);
+                }
+                list.add(region);
+                listPos.add(pos);
+                pos += size;
+            }
+            regions = list.toArray(new MappedByteBuffer[list.size()]);
+            regionsPos = listPos.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        private int scanRegion(ByteBuffer region, NumberHandler handler, int numsLen) {
+            final int len = region.limit();
+            int eolIdx = 0, stIdx = 0;
+            while (eolIdx < len) {
+                eolIdx = NumberUtil.indexOfEol(region, eolIdx, len);
+                if (stIdx < eolIdx) {
+                    nums[numsLen++] = NumberUtil.toLongSwar(region, stIdx, eolIdx - 1);
+                    if (numsLen == nums.length) {
+                        handler.handle(nums, numsLen);
+                        numsLen = 0;
+                    }
+                }
+                stIdx = ++eolIdx;
+            }
+            return numsLen;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the file using a {@link RandomAccessFile} and a small buffer.
+ *
+ * @author njacinto
+ */
+public class ScanStrategyRead implements ScanStrategy {
+
+    public static final ScanStrategyRead INSTANCE = new ScanStrategyRead();
+
+    @Override
+    public FileScanner open(File file) throws IOException {
+        return new ReadFileScanner(file);
+    }
+
+    @Override
+    public String toString() {
+        return "ScanStrategyRead{" + '}';
+    }
+
+    //
+    private static class ReadFileScanner implements FileScanner {
+
+        private final RandomAccessFile in;
+        private final byte[] readBuff = new byte[Constants.BUFFER_SIZE];
+        private final long[] nums = new long[Constants.BATCH_SIZE];
+
+        ReadFileScanner(File file) throws IOException {
+            this.in = new RandomAccessFile(file, "r");
+        }
+
+        @Override
+        public void scan(long pos, long limit, NumberHandler handler) throws IOException {
+            int buffInitPos = 0;
+            int numsLen = 0;
+            //
+            int eolIdx, stIdx;
+            int readLen;
+            long remaining = limit - pos;
+            in.seek(pos);
+            while (remaining > 0 && (readLen = in.read(readBuff, buffInitPos,
+                    (readBuff.length - buffInitPos < remaining) ? readBuff.length - buffInitPos : (int) remaining)) != -1) {
+                remaining -= readLen;
+                readLen += buffInitPos;
+                stIdx = eolIdx = 0;
+                buffInitPos = 0;
+                while (eolIdx < readLen) {
+                    eolIdx = NumberUtil.indexOfEol(readBuff, eolIdx, readLen);
+                    if (stIdx < eolIdx) {
+                        if (eolIdx < readLen) {
+                            nums[numsLen++] = NumberUtil.toLongSwar(readBuff, stIdx, eolIdx - 1);
+                            if (numsLen == nums.length) {
+                                handler.handle(nums, numsLen);
+                                numsLen = 0;
+                            }
+                            stIdx = ++eolIdx;
+                        } else if (stIdx < readLen) {
+                            buffInitPos = readLen - stIdx;
+                            System.arraycopy(readBuff, stIdx, readBuff, 0, buffInitPos);
+                        }
+                    } else {
+                        stIdx = ++eolIdx;
+                    }
+                }
+            }
+            if (buffInitPos > 0) {
+                nums[numsLen++] = NumberUtil.toLongSwar(readBuff, 0, buffInitPos - 1);
+            }
+            if (numsLen > 0) {
+                handler.handle(nums, numsLen);
+            }
+        }
+
+        @Override
+        public long findEndOfBlock(long pos) throws IOException {
+            int len;
+            in.seek(pos);
+            while ((len = in.read(readBuff)) != -1) {
+                int eolIdx = NumberUtil.indexOfEol(readBuff, 0, len);
+                if (eolIdx < len) {
+                    return pos + eolIdx;
+                }
+                pos += len;
+            }
+            return in.length();
+        }
+
+        @Override
+        public long firstNumber(long pos) throws IOException {
+            in.seek(pos);
+            int len = in.read(readBuff);
+            return len > 0 ? NumberUtil.getFirstNumberFromBuffer(readBuff, len, pos == 0) : Long.MIN_VALUE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
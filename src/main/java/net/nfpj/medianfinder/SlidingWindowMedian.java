@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Median of a sliding window over a stream of numbers. The window holds the
+ * last numbers added, up to a maximum count, or the ones added in the last
+ * period of time, or both. Each number added or removed costs O(log n) and the
+ * median is read in constant time, instead of finding the median of each
+ * window again.
+ * The numbers of the window are kept on a ring, in the order they were added,
+ * and on two heaps of positions of the ring: a max heap with the smaller half
+ * and a min heap with the bigger half, so the median is on their tops. Each
+ * position of the ring knows where it is on the heaps, so the oldest number is
+ * removed directly, without searching it or leaving it to be removed later.
+ * No numbers are boxed.
+ * Being a {@link NumberHandler}, it can take the numbers of a scan, emitting
+ * the median to the listener after every step numbers.
+ *
+ * @author njacinto
+ */
+public class SlidingWindowMedian implements NumberHandler {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int windowSize;
+    private final long duration;
+    private final int step;
+    private final LongConsumer listener;
+    // ring with the numbers of the window and the time they were added
+    private long[] values;
+    private long[] times;
+    private int head, size;
+    // heaps of ring positions, and the position of each one on the heaps:
+    // >= 0 on the low heap, < 0 on the high heap at -(pos + 1)
+    private int[] low, high;
+    private int lowSize, highSize;
+    private int[] heapPos;
+    private long lastTime = Long.MIN_VALUE;
+    private long count;
+
+    /**
+     * Window with the last numbers added.
+     *
+     * @param windowSize the number of numbers on the window
+     */
+    public SlidingWindowMedian(int windowSize) {
+        this(windowSize, 0);
+    }
+
+    /**
+     *
+     * @param windowSize the maximum number of numbers on the window, zero for
+     * no limit
+     * @param duration the time the numbers stay on the window, zero for no
+     * limit. The numbers are added with {@link #add(long, long)}.
+     */
+    public SlidingWindowMedian(int windowSize, long duration) {
+        this(windowSize, duration, 1, null);
+    }
+
+    /**
+     *
+     * @param windowSize the maximum number of numbers on the window, zero for
+     * no limit
+     * @param duration the time the numbers stay on the window, zero for no
+     * limit
+     * @param step the number of numbers handled between medians sent to the
+     * listener
+     * @param listener receives the median of the window, after every step
+     * numbers given to {@link #handle(long[], int)}. Can be null.
+     */
+    public SlidingWindowMedian(int windowSize, long duration, int step, LongConsumer listener) {
+        if (windowSize < 0 || duration < 0) {
+            throw new IllegalArgumentException("The window size and duration must be bigger or equal to zero.");
+        }
+        if (windowSize == 0 && duration == 0) {
+            throw new IllegalArgumentException("The window must have a size or a duration.");
+        }
+        if (step < 1) {
+            throw new IllegalArgumentException("The step must be bigger than zero.");
+        }
+        this.windowSize = windowSize;
+        this.duration = duration;
+        this.step = step;
+        this.listener = listener;
+        final int capacity = windowSize > 0 ? windowSize : INITIAL_CAPACITY;
+        this.values = new long[capacity];
+        this.times = duration > 0 ? new long[capacity] : null;
+        this.low = new int[(capacity >> 1) + 1];
+        this.high = new int[(capacity >> 1) + 1];
+        this.heapPos = new int[capacity];
+    }
+
+    /**
+     * Adds the number at the time of the last number added.
+     *
+     * @return the median of the window
+     */
+    public long add(long num) {
+        return add(lastTime == Long.MIN_VALUE ? 0 : lastTime, num);
+    }
+
+    /**
+     * Adds the number, removing the numbers that are out of the window.
+     *
+     * @param time the time of the number, not smaller than the time of the
+     * previous one
+     * @return the median of the window
+     */
+    public long add(long time, long num) {
+        advance(time);
+        if (windowSize > 0 && size == windowSize) {
+            remove();
+        } else if (size == values.length) {
+            grow();
+        }
+        final int slot = (head + size) % values.length;
+        values[slot] = num;
+        if (times != null) {
+            times[slot] = time;
+        }
+        size++;
+        if (lowSize == 0 || num <= values[low[0]]) {
+            heapPos[slot] = lowSize;
+            low[lowSize++] = slot;
+            siftUp(low, lowSize - 1, true);
+        } else {
+            heapPos[slot] = -(highSize + 1);
+            high[highSize++] = slot;
+            siftUp(high, highSize - 1, false);
+        }
+        balance();
+        return getMedian();
+    }
+
+    /**
+     * Moves the time of the window, removing the numbers added before the
+     * time minus the duration.
+     */
+    public void advance(long time) {
+        if (time < lastTime) {
+            throw new IllegalArgumentException("Time " + time + " is before the time of the window " + lastTime);
+        }
+        lastTime = time;
+        if (times != null) {
+            while (size > 0 && times[head] <= time - duration) {
+                remove();
+            }
+        }
+    }
+
+    /**
+     * @return the median of the window, the mean of the middle numbers when
+     * the window has an even number of numbers
+     * @throws IllegalStateException if the window is empty
+     */
+    public long getMedian() {
+        if (size == 0) {
+            throw new IllegalStateException("The window is empty.");
+        }
+        return lowSize > highSize ? values[low[0]] : NumberUtil.mean(values[low[0]], values[high[0]]);
+    }
+
+    /**
+     * @return the number of numbers on the window
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void handle(long[] nums, int len) {
+        for (int i = 0; i < len; i++) {
+            add(nums[i]);
+            if (listener != null && ++count % step == 0) {
+                listener.accept(getMedian());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SlidingWindowMedian{" + "windowSize=" + windowSize + ", duration=" + duration + ", step=" + step
+                + ", size=" + size + '}';
+    }
+
+    /**
+     * Removes the oldest number.
+     */
+    private void remove() {
+        final int slot = head;
+        head = (head + 1) % values.length;
+        size--;
+        final int pos = heapPos[slot];
+        if (pos >= 0) {
+            removeAt(low, --lowSize, pos, true);
+        } else {
+            removeAt(high, --highSize, -(pos + 1), false);
+        }
+        balance();
+    }
+
+    /**
+     * Keeps the low heap with the same number of numbers of the high heap, or
+     * one more.
+     */
+    private void balance() {
+        if (lowSize > highSize + 1) {
+            final int slot = low[0];
+            removeAt(low, --lowSize, 0, true);
+            heapPos[slot] = -(highSize + 1);
+            high[highSize++] = slot;
+            siftUp(high, highSize - 1, false);
+        } else if (lowSize < highSize) {
+            final int slot = high[0];
+            removeAt(high, --highSize, 0, false);
+            heapPos[slot] = lowSize;
+            low[lowSize++] = slot;
+            siftUp(low, lowSize - 1, true);
+        }
+    }
+
+    /**
+     * Replaces the position on the heap by its last one.
+     *
+     * @param last the position of the last one, the new size of the heap
+     */
+    private void removeAt(int[] heap, int last, int pos, boolean max) {
+        if (pos == last) {
+            return;
+        }
+        heap[pos] = heap[last];
+        setPos(heap[pos], pos, max);
+        siftDown(heap, last, siftUp(heap, pos, max), max);
+    }
+
+    private int siftUp(int[] heap, int pos, boolean max) {
+        final int slot = heap[pos];
+        final long num = values[slot];
+        while (pos > 0) {
+            final int parent = (pos - 1) >> 1;
+            final long parentNum = values[heap[parent]];
+            if (max ? parentNum >= num : parentNum <= num) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            setPos(heap[pos], pos, max);
+            pos = parent;
+        }
+        heap[pos] = slot;
+        setPos(slot, pos, max);
+        return pos;
+    }
+
+    private void siftDown(int[] heap, int heapSize, int pos, boolean max) {
+        final int slot = heap[pos];
+        final long num = values[slot];
+        int child;
+        while ((child = (pos << 1) + 1) < heapSize) {
+            if (child + 1 < heapSize && (max ? values[heap[child + 1]] > values[heap[child]]
+                    : values[heap[child + 1]] < values[heap[child]])) {
+                child++;
+            }
+            final long childNum = values[heap[child]];
+            if (max ? childNum <= num : childNum >= num) {
+                break;
+            }
+            heap[pos] = heap[child];
+            setPos(heap[pos], pos, max);
+            pos = child;
+        }
+        heap[pos] = slot;
+        setPos(slot, pos, max);
+    }
+
+    private void setPos(int slot, int pos, boolean max) {
+        heapPos[slot] = max ? pos : -(pos + 1);
+    }
+
+    /**
+     * Doubles the ring, moving the numbers to the start of it, and the heaps.
+     */
+    private void grow() {
+        final int capacity = values.length;
+        final int[] slots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            // new position of each position of the ring
+            slots[(head + i) % capacity] = i;
+        }
+        final long[] newValues = new long[capacity << 1];
+        final long[] newTimes = new long[capacity << 1];
+        final int[] newHeapPos = new int[capacity << 1];
+        for (int i = 0; i < size; i++) {
+            final int slot = (head + i) % capacity;
+            newValues[i] = values[slot];
+            newTimes[i] = times[slot];
+            newHeapPos[i] = heapPos[slot];
+        }
+        for (int i = 0; i < lowSize; i++) {
+            low[i] = slots[low[i]];
+        }
+        for (int i = 0; i < highSize; i++) {
+            high[i] = slots[high[i]];
+        }
+        values = newValues;
+        times = newTimes;
+        heapPos = newHeapPos;
+        low = Arrays.copyOf(low, capacity + 1);
+        high = Arrays.copyOf(high, capacity + 1);
+        head = 0;
+    }
+}
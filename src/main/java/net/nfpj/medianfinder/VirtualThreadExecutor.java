@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each task on its own virtual thread, with at most parallelism tasks
+ * running at the same time; the others wait parked on their virtual thread,
+ * without holding a platform thread. Shared by many concurrent queries, the
+ * parsing of all of them uses at most parallelism processors, without a pool
+ * of platform threads for each query.
+ * <p>
+ * The virtual threads are looked up when the class is loaded, so it runs on
+ * the older versions of Java. Without them, the tasks wait on the queue of a
+ * pool with parallelism platform threads, which keeps the same limit.
+ *
+ * @author njacinto
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookup();
+    //
+    private final ExecutorService executor;
+    private final Semaphore running;
+    private final int parallelism;
+
+    public VirtualThreadExecutor() {
+        this(0);
+    }
+
+    /**
+     *
+     * @param parallelism the maximum number of tasks running at the same
+     * time. Zero to use the number of processors.
+     */
+    public VirtualThreadExecutor(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("The parallelism can't be negative.");
+        }
+        this.parallelism = (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+        final ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        if (virtual != null) {
+            this.executor = virtual;
+            this.running = new Semaphore(this.parallelism);
+        } else {
+            this.executor = Executors.newFixedThreadPool(this.parallelism, task -> {
+                Thread thread = new Thread(task, "VirtualThreadExecutor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.running = null;
+        }
+    }
+
+    /**
+     * @return true if the virtual threads are available on this version of
+     * Java
+     */
+    public static boolean isAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @return an executor starting a virtual thread for each task, without
+     * limits, or null if the virtual threads are not available
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            // a preview version, without the preview features enabled
+            return null;
+        }
+    }
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the tasks run on virtual threads, false if on the
+     * platform threads of a pool
+     */
+    public boolean isVirtual() {
+        return running != null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (running == null) {
+            executor.execute(command);
+            return;
+        }
+        executor.execute(() -> {
+            running.acquireUninterruptibly();
+            try {
+                command.run();
+            } finally {
+                running.release();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutor{" + "parallelism=" + parallelism + ", virtual=" + isVirtual() + '}';
+    }
+}
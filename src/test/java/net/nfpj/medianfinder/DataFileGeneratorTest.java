@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Properties;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class DataFileGeneratorTest {
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    @Parameters(name = "{index}: testGenerate(distribution={0}, count={1}, binary={2})")
+    public static Collection<Object[]> data() {
+        ArrayList<Object[]> ret = new ArrayList<>();
+        for (DataSequence.Distribution distribution : DataSequence.Distribution.values()) {
+            for (long count : new long[]{20000, 20001}) {
+                for (boolean binary : new boolean[]{false, true}) {
+                    ret.add(new Object[]{distribution, count, binary});
+                }
+            }
+        }
+        return ret;
+    }
+    // -------------------------------------------------------------------------
+    private final DataSequence.Distribution distribution;
+    private final long count;
+    private final boolean binary;
+
+    public DataFileGeneratorTest(DataSequence.Distribution distribution, long count, boolean binary) {
+        this.distribution = distribution;
+        this.count = count;
+        this.binary = binary;
+    }
+
+    @Test
+    public void testGenerate() throws Exception {
+        File file = FOLDER.newFile();
+        long median = DataFileGenerator.generate(file, distribution, count, 25, binary, 3);
+        // the numbers read back, sorted
+        final long[] nums = new long[(int) count + 1];
+        final int[] len = new int[1];
+        try (FileScanner scanner = scanStrategy().open(file)) {
+            scanner.scan(0, file.length(), (values, valuesLen) -> {
+                assertTrue(len[0] + valuesLen <= count);
+                System.arraycopy(values, 0, nums, len[0], valuesLen);
+                len[0] += valuesLen;
+            });
+        }
+        assertEquals(count, len[0]);
+        final long[] sorted = Arrays.copyOf(nums, len[0]);
+        Arrays.sort(sorted);
+        assertEquals(median, NumberUtil.mean(sorted[(int) (count - 1) / 2], sorted[(int) count / 2]));
+        Properties metadata = DataFileGenerator.loadMetadata(file);
+        assertEquals(Long.toString(median), metadata.getProperty(DataFileGenerator.METADATA_MEDIAN));
+        assertEquals(Long.toString(count), metadata.getProperty(DataFileGenerator.METADATA_COUNT));
+        assertEquals(Long.toString(sorted[0]), metadata.getProperty(DataFileGenerator.METADATA_MIN));
+        assertEquals(Long.toString(sorted[sorted.length - 1]), metadata.getProperty(DataFileGenerator.METADATA_MAX));
+        assertEquals(median, new MedianFinderStrategyPivotWithCache(16, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                scanStrategy(), true).findMedian(file));
+        // the same seed gives the same file
+        File again = FOLDER.newFile();
+        DataFileGenerator.generate(again, distribution, count, 25, binary, 1);
+        try (FileScanner scanner = scanStrategy().open(again)) {
+            final long[] first = Arrays.copyOf(nums, len[0]);
+            len[0] = 0;
+            scanner.scan(0, again.length(), (values, valuesLen) -> {
+                System.arraycopy(values, 0, nums, len[0], valuesLen);
+                len[0] += valuesLen;
+            });
+            assertArrayEquals(first, Arrays.copyOf(nums, len[0]));
+        }
+    }
+
+    @Test
+    public void testAdversarial() throws Exception {
+        if (distribution != DataSequence.Distribution.ADVERSARIAL) {
+            return;
+        }
+        // big enough for the sampled lines to be a small part of the file
+        final long bigCount = count * 50;
+        File file = FOLDER.newFile();
+        DataFileGenerator.generate(file, distribution, bigCount, 25, binary, 2);
+        try (FileScanner scanner = scanStrategy().open(file)) {
+            for (int n = 1; n <= DataSequence.ADVERSARIAL_MAX_N; n += 2) {
+                // the pivot is one of the biggest numbers
+                long pivot = new PivotSelectionStrategyBestOfN(n).getPivot(file, scanner);
+                assertTrue(n + ": " + pivot, pivot > bigCount * 98 / 100);
+            }
+        }
+    }
+
+    @Test
+    public void testEncode() {
+        byte[] buff = new byte[32];
+        for (long num : new long[]{0, 7, -7, 12, -12, 123456789, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            for (int width : new int[]{0, 1, 2, 5, 25}) {
+                String expected = width == 0 ? String.format("%d\n", num) : String.format("%0" + width + "d\n", num);
+                assertEquals(expected, new String(buff, 0, DataFileGenerator.encode(num, width, buff, 0)));
+            }
+        }
+    }
+
+    private ScanStrategy scanStrategy() {
+        return binary ? ScanStrategyBinary.INSTANCE : ScanStrategyRead.INSTANCE;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Temporary folder with copies of the test files, so the files the
+ * strategies write next to them, like the index, aren't kept between the
+ * tests.
+ *
+ * @author njacinto
+ */
+public class FixtureFolder extends TemporaryFolder {
+
+    /**
+     * Copies the test file to the folder.
+     *
+     * @param filename the name of the test file on the classpath
+     * @return the copy
+     */
+    public File copy(String filename) throws IOException {
+        File file = new File(getRoot(), filename);
+        Files.copy(new File(getClass().getClassLoader().getResource(filename).getFile()).toPath(), file.toPath());
+        return file;
+    }
+}
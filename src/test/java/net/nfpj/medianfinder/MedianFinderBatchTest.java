@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class MedianFinderBatchTest {
+
+    private static final Object[][] FILE_MEDIAN = new Object[][]{
+        {"medianFinderTestData01.txt", 50L},
+        {"medianFinderTestData04.txt", 49L},
+        {"medianFinderTestData01-Dup.txt", null},
+        {"medianFinderTestData01-2.txt", 49L},
+        {"medianFinderTestData01-Neg.txt", -49L},
+        {"medianFinderTestData-Missing.txt", null},
+        {"medianFinderTestData04-Neg.txt", -49L}
+    };
+
+    @Parameters(name = "{index}: testFindMedians(threads={0}, splitSize={1}, strategy={2}, virtualThreads={3})")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+            {0, MedianFinderBatch.DEFAULT_SPLIT_SIZE, MedianFinderStrategyPivotWithCache.INSTANCE, false},
+            {1, 64L, MedianFinderStrategyPivotWithCache.INSTANCE, false},
+            {3, 64L, new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 2, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), false, 16), false},
+            {2, 200L, new MedianFinderStrategyPivotWithCache(45, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyMemoryMapped.INSTANCE), false},
+            {2, 64L, new MedianFinderStrategyHistogram(), false},
+            {1, 64L, MedianFinderStrategyPivotWithCache.INSTANCE, true},
+            {3, 64L, new MedianFinderStrategyPivotWithCacheWorkStealing(3, 2, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyRead.INSTANCE, false, 16, false), true}
+        });
+    }
+    // -------------------------------------------------------------------------
+    private final int threads;
+    private final long splitSize;
+    private final MedianFinderStrategy strategy;
+    private final boolean virtualThreads;
+
+    public MedianFinderBatchTest(int threads, long splitSize, MedianFinderStrategy strategy, boolean virtualThreads) {
+        this.threads = threads;
+        this.splitSize = splitSize;
+        this.strategy = strategy;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Test
+    public void testFindMedians() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (Object[] fm : FILE_MEDIAN) {
+            files.add(new File(new File(this.getClass().getClassLoader().getResource(
+                    "medianFinderTestData01.txt").getFile()).getParentFile(), (String) fm[0]));
+        }
+        try (MedianFinderBatch batch = new MedianFinderBatch(threads, splitSize, strategy, virtualThreads)) {
+            // the pool is reused by the following batches
+            for (int run = 0; run < 2; run++) {
+                List<MedianFinderBatch.Result> results = batch.findMedians(files);
+                assertEquals(files.size(), results.size());
+                for (int i = 0; i < FILE_MEDIAN.length; i++) {
+                    MedianFinderBatch.Result result = results.get(i);
+                    assertEquals(files.get(i), result.getFile());
+                    if (FILE_MEDIAN[i][1] == null) {
+                        assertFalse(result.isFound());
+                    } else {
+                        assertTrue(String.valueOf(result.getError()), result.isFound());
+                        assertEquals(FILE_MEDIAN[i][1], result.getMedian());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindMediansNull() throws Exception {
+        try (MedianFinderBatch batch = new MedianFinderBatch(threads, splitSize, strategy, virtualThreads)) {
+            batch.findMedians(null);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * The medians of numbers near the limits of a long, where the sum of the two
+ * middle numbers doesn't fit on a long.
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class MedianFinderExtremeValuesTest {
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+    @Parameters(name = "{index}: testFindMedian(strategy={0}, file={1})")
+    public static Collection<Object[]> data() {
+        MedianFinderStrategy[] strategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithSingleBeforeAfter(),
+            new MedianFinderStrategyPivotWithCache(),
+            new MedianFinderStrategyPivotWithCache(3),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyMemoryMapped.INSTANCE, false, 16),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), false, 16),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, false, 16, false),
+            new MedianEngine(),
+            new MedianFinderStrategyHistogram(),
+            new MedianFinderStrategyHistogram(1, ScanStrategyRead.INSTANCE),
+            new MedianFinderStrategySpill(),
+            new MedianFinderStrategySpill(4, ScanStrategyRead.INSTANCE),
+            new MedianFinderStrategyStream(),
+            new MedianFinderStrategyStream(4),
+            new MedianFinderStrategySketch(QuantileSketch.DEFAULT_K, 0, ScanStrategyRead.INSTANCE, true, false),
+            new MedianFinderStrategySketch(8, 2, ScanStrategyRead.INSTANCE, true, false)
+        };
+        String[] files = new String[]{"max-odd", "max-even", "min-odd", "min-even", "single", "both-even"};
+        ArrayList<Object[]> ret = new ArrayList<>(files.length * strategies.length);
+        for (MedianFinderStrategy strategy : strategies) {
+            for (String file : files) {
+                ret.add(new Object[]{strategy, file});
+            }
+        }
+        return ret;
+    }
+    // -------------------------------------------------------------------------
+    private final MedianFinderStrategy strategy;
+    private final String name;
+
+    public MedianFinderExtremeValuesTest(MedianFinderStrategy strategy, String name) {
+        this.strategy = strategy;
+        this.name = name;
+    }
+
+    @Test
+    public void testFindMedian() throws Exception {
+        long[] numbers = numbers(name);
+        assertEquals(median(numbers), strategy.findMedian(file(name, numbers)));
+    }
+
+    private static long[] numbers(String name) {
+        switch (name) {
+            case "max-odd":
+                return sequence(37, Long.MAX_VALUE - 1804, 50);
+            case "max-even":
+                return sequence(38, Long.MAX_VALUE - 111, 3);
+            case "min-odd":
+                return sequence(37, Long.MIN_VALUE + 1, 7);
+            case "min-even":
+                return sequence(38, Long.MIN_VALUE + 1, 7);
+            case "single":
+                return new long[]{-7669244417535874586L};
+            default:
+                return new long[]{Long.MIN_VALUE + 1, Long.MIN_VALUE + 2, 5, Long.MAX_VALUE};
+        }
+    }
+
+    private static long[] sequence(int count, long first, long step) {
+        long[] numbers = new long[count];
+        for (int i = 0; i < count; i++) {
+            numbers[i] = first + i * step;
+        }
+        return numbers;
+    }
+
+    /**
+     * The median with the mean of the two middle numbers rounded toward zero,
+     * computed without the limits of a long.
+     */
+    private static long median(long[] numbers) {
+        long[] sorted = numbers.clone();
+        Arrays.sort(sorted);
+        BigInteger low = BigInteger.valueOf(sorted[(sorted.length - 1) / 2]);
+        BigInteger high = BigInteger.valueOf(sorted[sorted.length / 2]);
+        return low.add(high).divide(BigInteger.valueOf(2)).longValueExact();
+    }
+
+    /**
+     * Writes the numbers shuffled, one per line.
+     */
+    private static File file(String name, long[] numbers) throws IOException {
+        File file = new File(FOLDER.getRoot(), name + ".txt");
+        if (file.exists()) {
+            return file;
+        }
+        long[] shuffled = numbers.clone();
+        Random random = new Random(shuffled.length);
+        StringBuilder text = new StringBuilder();
+        for (int i = shuffled.length - 1; i >= 0; i--) {
+            int j = random.nextInt(i + 1);
+            long num = shuffled[j];
+            shuffled[j] = shuffled[i];
+            text.append(num).append('\n');
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+}
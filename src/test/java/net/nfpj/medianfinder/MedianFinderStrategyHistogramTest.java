@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * The histogram strategy finds the median of numbers spread over ranges of
+ * different widths with at most two scans, the histogram and the collect of
+ * the numbers of the median's bucket.
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class MedianFinderStrategyHistogramTest {
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+    private static final int COUNT = 200000;
+    private static final int MAX_COLLECT_SIZE = 4096;
+
+    @Parameters(name = "{index}: testScans(range={0}, decimal={1})")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+            {1000000000L, false},
+            {2000000L, false},
+            {0L, false},
+            {1000L, true}
+        });
+    }
+    // -------------------------------------------------------------------------
+    private final long range;
+    private final boolean decimal;
+
+    /**
+     * @param range the width of the range of the numbers, around zero for
+     * the integers and above it for the decimals, or the full range of a long
+     * when it's zero
+     * @param decimal true for decimal numbers
+     */
+    public MedianFinderStrategyHistogramTest(long range, boolean decimal) {
+        this.range = range;
+        this.decimal = decimal;
+    }
+
+    @Test
+    public void testScans() throws Exception {
+        final Random random = new Random(range);
+        final StringBuilder text = new StringBuilder();
+        final long[] nums = new long[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            if (decimal) {
+                final double num = random.nextInt((int) range * 1000) / 1000.0;
+                nums[i] = NumberUtil.toSortableLong(num);
+                text.append(num).append('\n');
+            } else {
+                nums[i] = range > 0 ? (long) (random.nextDouble() * range) - range / 2 : random.nextLong();
+                text.append(nums[i]).append('\n');
+            }
+        }
+        final File file = FOLDER.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        final CountingScanStrategy scanStrategy = new CountingScanStrategy(
+                decimal ? ScanStrategyDecimal.INSTANCE : ScanStrategyRead.INSTANCE);
+        Arrays.sort(nums);
+        assertEquals(scanStrategy.mean(nums[(COUNT - 1) >> 1], nums[COUNT >> 1]),
+                new MedianFinderStrategyHistogram(MAX_COLLECT_SIZE, scanStrategy, true).findMedian(file));
+        assertTrue(scanStrategy.scans.get() <= 2);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * The strategies with several threads on files big enough to be split on
+ * partitions, with blocks small enough to be shared by the workers.
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class MedianFinderStrategyPartitionsTest {
+
+    private static final long COUNT = 20001;
+
+    @Parameters(name = "{index}: testFindMedian(strategy={0}, distribution={1}, binary={2})")
+    public static Collection<Object[]> data() {
+        MedianFinderStrategy[] strategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(16, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, false, 4096),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(64, 4, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyMemoryMapped.INSTANCE, false, 4096, true),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(16, 3, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyRead.INSTANCE, false, 4096, false),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(64, 4, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), false, 2048, true),
+            new MedianEngine(16, 3, PivotSelectionStrategyBestOfN.BEST_OF_7, ScanStrategyRead.INSTANCE,
+                    false, 4096, false),
+            new MedianEngine(64, 3, PivotSelectionStrategyMean.INSTANCE, ScanStrategyRead.INSTANCE, false, 4096, true),
+            new MedianFinderStrategySketch(8, 3, ScanStrategyRead.INSTANCE, true, false)
+        };
+        // numbers without repetitions
+        DataSequence.Distribution[] distributions = new DataSequence.Distribution[]{
+            DataSequence.Distribution.UNIFORM,
+            DataSequence.Distribution.NEARLY_SORTED,
+            DataSequence.Distribution.ADVERSARIAL
+        };
+        MedianFinderStrategy[] multisetStrategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(16, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, true, 4096),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(64, 4, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyRead.INSTANCE, true, 4096, true),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(16, 3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyRead.INSTANCE, true, 4096, false),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(64, 4, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyMemoryMapped.INSTANCE, true, 2048, true),
+            new MedianEngine(64, 3, PivotSelectionStrategyMiddle.INSTANCE, ScanStrategyRead.INSTANCE, true, 4096, true),
+            new MedianFinderStrategySketch(8, 3, ScanStrategyRead.INSTANCE, true, true)
+        };
+        DataSequence.Distribution[] multisetDistributions = DataSequence.Distribution.values();
+        MedianFinderStrategy[] binaryStrategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(64, 3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyBinary.INSTANCE, true, 4096, true),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(16, 4, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyBinary.INSTANCE, true, 2048, false),
+            new MedianEngine(64, 3, PivotSelectionStrategyBestOfN.BEST_OF_7, ScanStrategyBinary.INSTANCE,
+                    true, 4096, false),
+            new MedianFinderStrategySketch(8, 3, ScanStrategyBinary.INSTANCE, true, true)
+        };
+        DataSequence.Distribution[] binaryDistributions = new DataSequence.Distribution[]{
+            DataSequence.Distribution.UNIFORM,
+            DataSequence.Distribution.ZIPF
+        };
+        ArrayList<Object[]> ret = new ArrayList<>(strategies.length * distributions.length
+                + multisetStrategies.length * multisetDistributions.length
+                + binaryStrategies.length * binaryDistributions.length);
+        for (MedianFinderStrategy strategy : strategies) {
+            for (DataSequence.Distribution distribution : distributions) {
+                ret.add(new Object[]{strategy, distribution, false});
+            }
+        }
+        for (MedianFinderStrategy strategy : multisetStrategies) {
+            for (DataSequence.Distribution distribution : multisetDistributions) {
+                ret.add(new Object[]{strategy, distribution, false});
+            }
+        }
+        for (MedianFinderStrategy strategy : binaryStrategies) {
+            for (DataSequence.Distribution distribution : binaryDistributions) {
+                ret.add(new Object[]{strategy, distribution, true});
+            }
+        }
+        return ret;
+    }
+    // -------------------------------------------------------------------------
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final MedianFinderStrategy strategy;
+    private final DataSequence.Distribution distribution;
+    private final boolean binary;
+
+    public MedianFinderStrategyPartitionsTest(MedianFinderStrategy strategy, DataSequence.Distribution distribution,
+            boolean binary) {
+        this.strategy = strategy;
+        this.distribution = distribution;
+        this.binary = binary;
+    }
+
+    /**
+     * Finds the median of a generated file. The strategies with an index
+     * create it on the first query and split the file on its blocks on the
+     * second.
+     */
+    @Test
+    public void testFindMedian() throws Exception {
+        File file = folder.newFile();
+        long expected = DataFileGenerator.generate(file, distribution, COUNT, 17, binary, 1);
+        assertEquals(expected, strategy.findMedian(file));
+        if (strategy instanceof MedianFinderStrategyPivotWithCache
+                && ((MedianFinderStrategyPivotWithCache) strategy).useIndex) {
+            assertNotNull(FileIndex.load(file, ((MedianFinderStrategyPivotWithCache) strategy).blockSize));
+            assertEquals(expected, strategy.findMedian(file));
+        }
+    }
+}
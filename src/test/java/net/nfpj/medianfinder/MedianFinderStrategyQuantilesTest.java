@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class MedianFinderStrategyQuantilesTest {
+
+    @Parameters(name = "{index}: testFindQuantiles(strategy={0}, file={1})")
+    public static Collection<Object[]> data() {
+        MedianFinderStrategyPivotWithCache[] strategies = new MedianFinderStrategyPivotWithCache[]{
+            new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyMemoryMapped.INSTANCE, true, 0),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyRead.INSTANCE, true, 16),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 2, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), true, 48, true),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyRead.INSTANCE, true, 16, true),
+            new MedianEngine(3, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), true, 16, false)
+        };
+        // file, quantiles, expected, rank, expected
+        Object[][] fileQuantiles = new Object[][]{
+            {"medianFinderTestData01.txt", new double[]{0, 0.5, 0.9, 0.99, 1}, new long[]{1, 50, 90, 99, 99}, 98, 99},
+            {"medianFinderTestData04-Neg.txt", new double[]{0.5}, new long[]{-50}, 0, -97},
+            {"medianFinderTestData05-Dup.txt", new double[]{0.9, 0.5, 0.1}, new long[]{8, 4, 1}, 40, 3}
+        };
+        ArrayList<Object[]> ret = new ArrayList<>(fileQuantiles.length * strategies.length);
+        for (MedianFinderStrategyPivotWithCache strategy : strategies) {
+            for (Object[] fq : fileQuantiles) {
+                ret.add(new Object[]{strategy, fq[0], fq[1], fq[2], fq[3], fq[4]});
+            }
+        }
+        return ret;
+    }
+    // -------------------------------------------------------------------------
+    @Rule
+    public final FixtureFolder fixtures = new FixtureFolder();
+    private final MedianFinderStrategyPivotWithCache strategy;
+    private final String filename;
+    private final double[] quantiles;
+    private final long[] expected;
+    private final long rank;
+    private final long expectedRank;
+
+    public MedianFinderStrategyQuantilesTest(MedianFinderStrategyPivotWithCache strategy, String filename,
+            double[] quantiles, long[] expected, int rank, long expectedRank) {
+        this.strategy = strategy;
+        this.filename = filename;
+        this.quantiles = quantiles;
+        this.expected = expected;
+        this.rank = rank;
+        this.expectedRank = expectedRank;
+    }
+
+    @Test
+    public void testFindQuantiles() throws Exception {
+        File file = fixtures.copy(filename);
+        assertArrayEquals(expected, strategy.findQuantiles(file, quantiles));
+    }
+
+    @Test
+    public void testFindRank() throws Exception {
+        File file = fixtures.copy(filename);
+        assertEquals(expectedRank, strategy.findRank(file, rank));
+    }
+
+    @Test(expected = MedianFinderException.class)
+    public void testFindRankException() throws Exception {
+        File file = fixtures.copy(filename);
+        strategy.findRank(file, 1000);
+    }
+}
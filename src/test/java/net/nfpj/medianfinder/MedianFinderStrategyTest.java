@@ -22,6 +22,9 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -46,7 +49,62 @@ public class MedianFinderStrategyTest {
             new MedianFinderStrategyPivotWithCacheMultiThreaded(45),
             new MedianFinderStrategyPivotWithCacheMultiThreaded(1024, 1),
             new MedianFinderStrategyPivotWithCacheMultiThreaded(1024, 2),
-            new MedianFinderStrategyPivotWithCacheMultiThreaded(1024, 3)
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(1024, 3),
+            new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyMemoryMapped.INSTANCE),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    new ScanStrategyMemoryMapped(32)),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(1024, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyMemoryMapped.INSTANCE),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(45, 2, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    new ScanStrategyMemoryMapped(32)),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE)),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(45, 3, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(new ScanStrategyMemoryMapped(32), 64)),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, false, 16),
+            new MedianFinderStrategyPivotWithCache(45, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), false, 64),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyAsync.INSTANCE),
+            new MedianFinderStrategyPivotWithCache(45, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyAsync(24), false, 64),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(new ScanStrategyAsync(32), 64), false, 16),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyDirect.INSTANCE),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(45, 3, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyDirect(1), false, 16),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyMemoryMapped(32), false, 16),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyRead.INSTANCE, false, 48, true),
+            new MedianFinderStrategyPivotWithCache(45, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyMemoryMapped.INSTANCE, false, 48, true),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyRead.INSTANCE, false, 48, true),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 3, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyMemoryMapped(32), false, 16, false),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(45, 2, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, false, 48, true),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(45, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, false, 16, false, new VirtualThreadExecutor(2)),
+            new MedianEngine(),
+            new MedianEngine(1),
+            new MedianEngine(3, 3, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), false, 16, false),
+            new MedianFinderStrategyHistogram(),
+            new MedianFinderStrategyHistogram(1, ScanStrategyMemoryMapped.INSTANCE),
+            new MedianFinderStrategyHistogram(1, new ScanStrategyCached(ScanStrategyRead.INSTANCE)),
+            new MedianFinderStrategySpill(4, new ScanStrategyAsync(32)),
+            new MedianFinderStrategySpill(),
+            new MedianFinderStrategySpill(4, ScanStrategyMemoryMapped.INSTANCE),
+            new MedianFinderStrategyStream(),
+            new MedianFinderStrategyStream(4),
+            new MedianFinderStrategySketch(QuantileSketch.DEFAULT_K, 0, ScanStrategyRead.INSTANCE, true, false),
+            new MedianFinderStrategySketch(8, 3, ScanStrategyMemoryMapped.INSTANCE, true, false)
         };
         Object[][] fileMedian = new Object[][]{
             {"medianFinderTestData01.txt", 50, false},
@@ -60,17 +118,95 @@ public class MedianFinderStrategyTest {
             {"medianFinderTestData01-Neg.txt", -49, false},
             {"medianFinderTestData02-Neg.txt", -49, false},
             {"medianFinderTestData04-Neg.txt", -49, false},
-            {"medianFinderTestData01-Dup.txt", 49, true}
+            {"medianFinderTestData01-Dup.txt", 49, true},
+            {"medianFinderTestData01-DupAway.txt", 50, false}
         };
-        ArrayList<Object[]> ret = new ArrayList<>(fileMedian.length * strategies.length);
+        MedianFinderStrategy[] multisetStrategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithSingleBeforeAfter(PivotSelectionStrategyBestOfN.BEST_OF_7, true),
+            new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyMemoryMapped.INSTANCE, true),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(1024, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 2, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 2, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), true),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, true, 16),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 2, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyRead.INSTANCE, true, 48, true),
+            new MedianEngine(3, 2, PivotSelectionStrategyMean.INSTANCE, ScanStrategyMemoryMapped.INSTANCE,
+                    true, 16, false),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 3, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyRead.INSTANCE), true, 16, false),
+            new MedianFinderStrategyHistogram(1024, ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategyHistogram(1, ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategySpill(4, ScanStrategyRead.INSTANCE, true),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyAsync(24), true, 16),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 2, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyDirect(1), true, 16),
+            new MedianFinderStrategyStream(4, false, true),
+            new MedianFinderStrategySketch(8, 2, ScanStrategyRead.INSTANCE, true, true)
+        };
+        Object[][] multisetFileMedian = new Object[][]{
+            {"medianFinderTestData01.txt", 50, false},
+            {"medianFinderTestData04-Neg.txt", -49, false},
+            {"medianFinderTestData01-Dup.txt", 49, false},
+            {"medianFinderTestData05-Dup.txt", 4, false},
+            {"medianFinderTestData01-DupAway.txt", 50, false}
+        };
+        MedianFinderStrategy[] binaryStrategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyBinary.INSTANCE),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyBinary(64)),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(45, 3, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyBinary.INSTANCE),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 2, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyBinary(64), false, 40),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyBinary.INSTANCE, false, 12),
+            new MedianEngine(45, 3, PivotSelectionStrategyBestOfN.BEST_OF_7, ScanStrategyBinary.INSTANCE,
+                    false, 40, false),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 3, PivotSelectionStrategyMean.INSTANCE,
+                    ScanStrategyBinary.INSTANCE, false, 40, false),
+            new MedianFinderStrategyHistogram(ScanStrategyBinary.INSTANCE),
+            new MedianFinderStrategySpill(4, ScanStrategyBinary.INSTANCE),
+            new MedianFinderStrategyStream(MedianFinderStrategyStream.DEFAULT_MAX_COLLECT_SIZE, true, false),
+            new MedianFinderStrategyStream(4, true, false),
+            new MedianFinderStrategySketch(8, 2, ScanStrategyBinary.INSTANCE, true, false)
+        };
+        Object[][] binaryFileMedian = new Object[][]{
+            {"medianFinderTestData01.bin", 50, false},
+            {"medianFinderTestData04-Neg.bin", -49, false},
+            {"medianFinderTestData01-Dup.bin", 49, true}
+        };
+        ArrayList<Object[]> ret = new ArrayList<>(fileMedian.length * strategies.length
+                + multisetFileMedian.length * multisetStrategies.length
+                + binaryFileMedian.length * binaryStrategies.length);
         for (MedianFinderStrategy strategy : strategies) {
             for (Object[] fm : fileMedian) {
                 ret.add(new Object[]{strategy, fm[0], fm[1], fm[2]});
             }
         }
+        for (MedianFinderStrategy strategy : multisetStrategies) {
+            for (Object[] fm : multisetFileMedian) {
+                ret.add(new Object[]{strategy, fm[0], fm[1], fm[2]});
+            }
+        }
+        for (MedianFinderStrategy strategy : binaryStrategies) {
+            for (Object[] fm : binaryFileMedian) {
+                ret.add(new Object[]{strategy, fm[0], fm[1], fm[2]});
+            }
+        }
         return ret;
     }
     // -------------------------------------------------------------------------
+    @Rule
+    public final FixtureFolder fixtures = new FixtureFolder();
     private final MedianFinderStrategy strategy;
     private final String filename;
     private final long expected;
@@ -84,19 +220,32 @@ public class MedianFinderStrategyTest {
         this.throwsException = throwsException;
     }
 
+    /**
+     * Finds the median of a copy of the file. The strategies with an index
+     * create it on the first query and use it on the second.
+     */
     @Test
     public void testFindMedian() throws Exception {
         if (!throwsException) {
-            File file = new File(this.getClass().getClassLoader().getResource(filename).getFile());
+            File file = fixtures.copy(filename);
             long result = strategy.findMedian(file);
             assertEquals(expected, result);
+            if (strategy instanceof MedianFinderStrategyPivotWithCache
+                    && ((MedianFinderStrategyPivotWithCache) strategy).useIndex) {
+                long blockSize = ((MedianFinderStrategyPivotWithCache) strategy).blockSize;
+                assertNotNull(FileIndex.load(file, blockSize));
+                result = strategy.findMedian(file);
+                assertEquals(expected, result);
+            } else {
+                assertFalse(FileIndex.indexFile(file).exists());
+            }
         }
     }
 
     @Test(expected = MedianFinderException.class)
     public void testFindMedianException() throws Exception {
         if (throwsException) {
-            File file = new File(this.getClass().getClassLoader().getResource(filename).getFile());
+            File file = fixtures.copy(filename);
             long result = strategy.findMedian(file);
             assertEquals(expected, result);
         } else {
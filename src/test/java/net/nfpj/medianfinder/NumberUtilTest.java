@@ -18,7 +18,11 @@
  */
 package net.nfpj.medianfinder;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 /**
@@ -49,4 +53,102 @@ public class NumberUtilTest {
         assertEquals(-12345L, NumberUtil.toLong(arr, 0, arr.length - 1));
         assertEquals(-1234L, NumberUtil.toLong(arr, 0, arr.length - 2));
     }
+
+    @Test
+    public void testToLongSwar() {
+        long[] values = {0, 7, -7, 12345678, -12345678, 123456789, -98765432109L,
+            Long.MAX_VALUE, Long.MIN_VALUE + 1, Long.MIN_VALUE};
+        for (long value : values) {
+            byte[] num = Long.toString(value).getBytes();
+            // at the start, in the middle and at the end of the buffer
+            for (int offset : new int[]{0, 3, 24 - num.length}) {
+                byte[] arr = new byte[24];
+                Arrays.fill(arr, (byte) '9');
+                System.arraycopy(num, 0, arr, offset, num.length);
+                assertEquals(value, NumberUtil.toLongSwar(arr, offset, offset + num.length - 1));
+                assertEquals(value, NumberUtil.toLongSwar(ByteBuffer.wrap(arr), offset, offset + num.length - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfEol() {
+        byte[] arr = "123\n45678901234\n\n6".getBytes();
+        assertEquals(3, NumberUtil.indexOfEol(arr, 0, arr.length));
+        assertEquals(15, NumberUtil.indexOfEol(arr, 4, arr.length));
+        assertEquals(16, NumberUtil.indexOfEol(arr, 16, arr.length));
+        assertEquals(arr.length, NumberUtil.indexOfEol(arr, 17, arr.length));
+        assertEquals(10, NumberUtil.indexOfEol(arr, 4, 10));
+        assertEquals(15, NumberUtil.indexOfEol(ByteBuffer.wrap(arr), 4, arr.length));
+    }
+
+    @Test
+    public void testIndexOf() {
+        byte[] arr = "12,\"-3\",,45678901234,\tx,6".getBytes();
+        arr[22] = (byte) 0xac;
+        assertEquals(2, NumberUtil.indexOf(arr, 0, arr.length, (byte) ','));
+        assertEquals(7, NumberUtil.indexOf(arr, 3, arr.length, (byte) ','));
+        assertEquals(8, NumberUtil.indexOf(arr, 8, arr.length, (byte) ','));
+        assertEquals(20, NumberUtil.indexOf(arr, 9, arr.length, (byte) ','));
+        assertEquals(21, NumberUtil.indexOf(arr, 0, arr.length, (byte) '\t'));
+        assertEquals(22, NumberUtil.indexOf(arr, 0, arr.length, (byte) 0xac));
+        assertEquals(15, NumberUtil.indexOf(arr, 9, 15, (byte) ','));
+        assertEquals(arr.length, NumberUtil.indexOf(arr, 0, arr.length, (byte) ';'));
+    }
+
+    @Test
+    public void testMean() {
+        long[] values = {0, 1, -1, 2, -2, 3, -3, 7, -8, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (long low : values) {
+            for (long high : values) {
+                assertEquals(low + " " + high, (low + high) / 2, NumberUtil.mean(low, high));
+            }
+        }
+        assertEquals(Long.MAX_VALUE, NumberUtil.mean(Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(Long.MIN_VALUE, NumberUtil.mean(Long.MIN_VALUE, Long.MIN_VALUE));
+        assertEquals(Long.MAX_VALUE - 1, NumberUtil.mean(Long.MAX_VALUE - 2, Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE - 1, NumberUtil.mean(Long.MAX_VALUE - 1, Long.MAX_VALUE));
+        assertEquals(Long.MIN_VALUE + 2, NumberUtil.mean(Long.MIN_VALUE, Long.MIN_VALUE + 3));
+        assertEquals(Long.MIN_VALUE + 1, NumberUtil.mean(Long.MIN_VALUE, Long.MIN_VALUE + 2));
+        assertEquals(0, NumberUtil.mean(Long.MIN_VALUE + 1, Long.MAX_VALUE));
+        assertEquals(0, NumberUtil.mean(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE - 2, ScanStrategyRead.INSTANCE.mean(Long.MAX_VALUE - 3, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testToDouble() {
+        String[] values = {"0", "-0", "12.5", "-12.5", "+3", "0.001", ".5", "5.", "1.5e-4", "-2.5E+3",
+            "123456789.123456789", "9007199254740993", "0.1", "1e22", "1e23", "4.9e-324", "1.7976931348623157e308",
+            "1e400", "-1e400", "0e500", "000123.4500", "3.141592653589793238462643383279"};
+        for (String value : values) {
+            byte[] num = ("  " + value + "\n").getBytes();
+            assertEquals(value, Double.parseDouble(value), NumberUtil.toDouble(num, 2, num.length - 2), 0.0);
+        }
+        Random random = new Random(22);
+        for (int i = 0; i < 10000; i++) {
+            String value = (random.nextInt(1_000_000) - 500_000) / Math.pow(10, random.nextInt(8)) + "";
+            byte[] num = value.getBytes();
+            assertEquals(value, Double.parseDouble(value), NumberUtil.toDouble(num, 0, num.length - 1), 0.0);
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testToDoubleInvalid() {
+        byte[] num = "1.5e".getBytes();
+        NumberUtil.toDouble(num, 0, num.length - 1);
+    }
+
+    @Test
+    public void testSortableLong() {
+        double[] values = {Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1.5, -Double.MIN_VALUE, 0.0,
+            Double.MIN_VALUE, 1e-300, 1.0, 1.5, 1e300, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN};
+        for (int i = 0; i < values.length; i++) {
+            long encoded = NumberUtil.toSortableLong(values[i]);
+            assertEquals(values[i], NumberUtil.fromSortableLong(encoded), 0.0);
+            if (i > 0) {
+                assertTrue(NumberUtil.toSortableLong(values[i - 1]) < encoded);
+            }
+        }
+        assertEquals(NumberUtil.toSortableLong(0.0), NumberUtil.toSortableLong(-0.0));
+    }
 }
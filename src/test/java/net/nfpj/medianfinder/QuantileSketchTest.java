@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class QuantileSketchTest {
+
+    @Parameters(name = "{index}: testSketch(k={0}, count={1}, parts={2}, range={3})")
+    public static Collection<Object[]> data() {
+        Object[][] tests = new Object[][]{
+            {8, 1, 1, 100},
+            {8, 1000, 1, 1000000},
+            {64, 100000, 1, 1000000},
+            {64, 100000, 4, 1000000},
+            {256, 200000, 3, 10},
+            {QuantileSketch.DEFAULT_K, 4000, 1, 1000000},
+            {QuantileSketch.DEFAULT_K, 1000000, 8, Integer.MAX_VALUE}
+        };
+        return Arrays.asList(tests);
+    }
+    // -------------------------------------------------------------------------
+    private final int k;
+    private final int count;
+    private final int parts;
+    private final int range;
+
+    public QuantileSketchTest(int k, int count, int parts, int range) {
+        this.k = k;
+        this.count = count;
+        this.parts = parts;
+        this.range = range;
+    }
+
+    /**
+     * The ranks of the estimates are within the error of the sketch, with
+     * the sketches of the parts merged.
+     */
+    @Test
+    public void testSketch() {
+        final Random random = new Random(count);
+        final long[] nums = new long[count];
+        for (int i = 0; i < count; i++) {
+            nums[i] = random.nextInt(range) - range / 2;
+        }
+        final QuantileSketch sketch = new QuantileSketch(k);
+        for (int p = 0; p < parts; p++) {
+            final QuantileSketch part = p == 0 ? sketch : new QuantileSketch(k);
+            final int from = (int) ((long) p * count / parts), to = (int) ((long) (p + 1) * count / parts);
+            for (int i = from; i < to; i += Constants.BATCH_SIZE) {
+                part.handle(Arrays.copyOfRange(nums, i, Math.min(to, i + Constants.BATCH_SIZE)), Math.min(to - i, Constants.BATCH_SIZE));
+            }
+            if (part != sketch) {
+                sketch.merge(part);
+            }
+        }
+        Arrays.sort(nums);
+        assertEquals(count, sketch.getCount());
+        assertEquals(nums[0], sketch.getMin());
+        assertEquals(nums[count - 1], sketch.getMax());
+        // about 3k numbers, with the levels of the minimum capacity on the bottom
+        assertTrue("allocated " + sketch.getAllocated(), sketch.getAllocated() <= 3 * k + 9 * sketch.getLevels());
+        final long maxError = (long) Math.ceil(sketch.getRankError() * count);
+        for (int q = 0; q <= 10; q++) {
+            final long rank = (long) (count - 1) * q / 10;
+            final long value = sketch.getValueAtRank(rank);
+            // the ranks taken by the value on the sorted numbers
+            int first = Arrays.binarySearch(nums, value);
+            assertTrue(first >= 0);
+            int last = first;
+            for (; first > 0 && nums[first - 1] == value; first--);
+            for (; last < count - 1 && nums[last + 1] == value; last++);
+            assertTrue("rank " + rank + " value at " + first + ".." + last + " error " + maxError,
+                    rank >= first - maxError && rank <= last + maxError);
+        }
+    }
+}
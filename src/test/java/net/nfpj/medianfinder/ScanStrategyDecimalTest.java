@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class ScanStrategyDecimalTest {
+
+    @Parameters(name = "{index}: testFindMedian(strategy={0}, file={1})")
+    public static Collection<Object[]> data() {
+        MedianFinderStrategy[] strategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyDecimal.INSTANCE),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyDecimal.INSTANCE, false, 16),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyDecimal.INSTANCE), false, 48, false),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 2, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyDecimal.INSTANCE, false, 16, false),
+            new MedianFinderStrategyHistogram(8, ScanStrategyDecimal.INSTANCE),
+            new MedianFinderStrategySpill(8, ScanStrategyDecimal.INSTANCE),
+            new MedianFinderStrategySketch(QuantileSketch.MIN_K, 2, ScanStrategyDecimal.INSTANCE, true, false)
+        };
+        Object[][] fileMedian = new Object[][]{
+            {"medianFinderTestData06-Decimal.txt", 1.25},
+            {"medianFinderTestData07-Decimal.txt", 55.55}
+        };
+        ArrayList<Object[]> ret = new ArrayList<>(fileMedian.length * strategies.length);
+        for (MedianFinderStrategy strategy : strategies) {
+            for (Object[] fm : fileMedian) {
+                ret.add(new Object[]{strategy, fm[0], fm[1]});
+            }
+        }
+        return ret;
+    }
+    // -------------------------------------------------------------------------
+    private final MedianFinderStrategy strategy;
+    private final String filename;
+    private final double expected;
+
+    public ScanStrategyDecimalTest(MedianFinderStrategy strategy, String filename, double expected) {
+        this.strategy = strategy;
+        this.filename = filename;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testFindMedian() throws Exception {
+        File file = new File(this.getClass().getClassLoader().getResource(filename).getFile());
+        assertEquals(expected, NumberUtil.fromSortableLong(strategy.findMedian(file)), 0.0);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class ScanStrategyDelimitedTest {
+
+    private static final long ID_MEDIAN = 151;
+    private static final long QTY_MEDIAN = 35;
+    private static final double PRICE_MEDIAN = 554.2;
+
+    @Parameters(name = "{index}: testFindMedians(file={0}, bufferSize={2})")
+    public static Collection<Object[]> data() {
+        // file, delimiter, buffer size
+        Object[][] files = new Object[][]{
+            {"medianFinderTestData08-Columns.csv", ScanStrategyDelimited.COMMA, ScanStrategyDelimited.DEFAULT_BUFFER_SIZE},
+            {"medianFinderTestData08-Columns.csv", ScanStrategyDelimited.COMMA, 8},
+            {"medianFinderTestData08-Columns.tsv", ScanStrategyDelimited.TAB, ScanStrategyDelimited.DEFAULT_BUFFER_SIZE},
+            {"medianFinderTestData08-Columns.tsv", ScanStrategyDelimited.TAB, 8}
+        };
+        ArrayList<Object[]> ret = new ArrayList<>(files.length);
+        for (Object[] f : files) {
+            ret.add(f);
+        }
+        return ret;
+    }
+    // -------------------------------------------------------------------------
+    private final String filename;
+    private final byte delimiter;
+    private final int bufferSize;
+
+    public ScanStrategyDelimitedTest(String filename, byte delimiter, int bufferSize) {
+        this.filename = filename;
+        this.delimiter = delimiter;
+        this.bufferSize = bufferSize;
+    }
+
+    @Test
+    public void testFindMedians() throws Exception {
+        File file = new File(this.getClass().getClassLoader().getResource(filename).getFile());
+        MedianFinderStrategyHistogram strategy = new MedianFinderStrategyHistogram(8,
+                new ScanStrategyDelimited(delimiter, true, false, bufferSize, new int[]{1, 0}), true);
+        assertArrayEquals(new long[]{QTY_MEDIAN, ID_MEDIAN}, strategy.findMedians(file));
+    }
+
+    @Test
+    public void testFindMediansDecimal() throws Exception {
+        File file = new File(this.getClass().getClassLoader().getResource(filename).getFile());
+        MedianFinderStrategyHistogram strategy = new MedianFinderStrategyHistogram(8,
+                new ScanStrategyDelimited(delimiter, true, true, bufferSize, new int[]{3, 0}), true);
+        long[] medians = strategy.findMedians(file);
+        assertEquals(PRICE_MEDIAN, NumberUtil.fromSortableLong(medians[0]), 0.0);
+        assertEquals((double) ID_MEDIAN, NumberUtil.fromSortableLong(medians[1]), 0.0);
+    }
+
+    @Test
+    public void testFindMedian() throws Exception {
+        File file = new File(this.getClass().getClassLoader().getResource(filename).getFile());
+        ScanStrategyDelimited scanStrategy = new ScanStrategyDelimited(delimiter, true, false, bufferSize, new int[]{1});
+        MedianFinderStrategy[] strategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyBestOfN.BEST_OF_7, scanStrategy, true),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMiddle.INSTANCE, scanStrategy, true, 16),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyCached(scanStrategy), true, 48, false),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 2, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    scanStrategy, true, 16, false),
+            new MedianFinderStrategyHistogram(8, scanStrategy, true),
+            new MedianFinderStrategySpill(8, scanStrategy, true),
+            new MedianFinderStrategySketch(QuantileSketch.MIN_K, 2, scanStrategy, true, true)
+        };
+        for (MedianFinderStrategy strategy : strategies) {
+            assertEquals(strategy.toString(), QTY_MEDIAN, strategy.findMedian(file));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindMediansNotDelimited() throws Exception {
+        File file = new File(this.getClass().getClassLoader().getResource(filename).getFile());
+        new MedianFinderStrategyHistogram(8, ScanStrategyRead.INSTANCE, true).findMedians(file);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import static org.junit.Assert.assertEquals;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class ScanStrategyGzipTest {
+
+    @ClassRule
+    public static final TemporaryFolder FOLDER = new TemporaryFolder();
+    // the numbers from -N to N, or from 1 to 2N+1, shuffled
+    private static final int N = 1000;
+
+    @Parameters(name = "{index}: testFindMedian(strategy={0}, file={1})")
+    public static Collection<Object[]> data() {
+        MedianFinderStrategy[] strategies = new MedianFinderStrategy[]{
+            new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    new ScanStrategyGzip(32), false, 0),
+            new MedianFinderStrategyPivotWithCache(3, PivotSelectionStrategyMiddle.INSTANCE,
+                    ScanStrategyGzip.INSTANCE, false, 64),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(3, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    new ScanStrategyCached(ScanStrategyGzip.INSTANCE), false, 256),
+            new MedianFinderStrategyPivotWithCacheMultiThreaded(16, 2, PivotSelectionStrategyMean.INSTANCE,
+                    new ScanStrategyGzip(64), false, 128),
+            new MedianFinderStrategyPivotWithCacheWorkStealing(3, 3, PivotSelectionStrategyBestOfN.BEST_OF_7,
+                    ScanStrategyGzip.INSTANCE, false, 100, false),
+            new MedianEngine(3, 2, PivotSelectionStrategyMiddle.INSTANCE,
+                    new ScanStrategyCached(ScanStrategyGzip.INSTANCE), false, 200, false),
+            new MedianFinderStrategyHistogram(MedianFinderStrategyHistogram.DEFAULT_MAX_COLLECT_SIZE,
+                    new ScanStrategyGzip(32), false)
+        };
+        // members, negative numbers, header with extra field, median
+        Object[][] files = new Object[][]{
+            {300, false, false, (long) N + 1},
+            {40, true, true, 0L},
+            {0, false, true, (long) N + 1},
+            {0, true, false, 0L}
+        };
+        ArrayList<Object[]> ret = new ArrayList<>(files.length * strategies.length);
+        for (MedianFinderStrategy strategy : strategies) {
+            for (Object[] f : files) {
+                ret.add(new Object[]{strategy, f[0], f[1], f[2], f[3]});
+            }
+        }
+        return ret;
+    }
+    // -------------------------------------------------------------------------
+    private final MedianFinderStrategy strategy;
+    private final int memberSize;
+    private final boolean negative;
+    private final boolean extra;
+    private final long expected;
+
+    public ScanStrategyGzipTest(MedianFinderStrategy strategy, int memberSize, boolean negative, boolean extra,
+            long expected) {
+        this.strategy = strategy;
+        this.memberSize = memberSize;
+        this.negative = negative;
+        this.extra = extra;
+        this.expected = expected;
+    }
+
+    @Test
+    public void testFindMedian() throws Exception {
+        assertEquals(expected, strategy.findMedian(file()));
+    }
+
+    @Test
+    public void testScanBlocks() throws Exception {
+        File file = file();
+        long sum = 0;
+        for (int i = -N; i <= N; i++) {
+            sum += negative ? i : i + N + 1;
+        }
+        for (long blockSize : new long[]{1, 7, 100, 1000, file.length()}) {
+            Sum total = new Sum();
+            try (FileScanner scanner = ScanStrategyGzip.INSTANCE.open(file)) {
+                long pos = 0;
+                while (pos < file.length()) {
+                    long end = scanner.findEndOfBlock(pos + blockSize);
+                    // a new scanner for each block doesn't know how the previous one ends
+                    try (FileScanner blockScanner = ScanStrategyGzip.INSTANCE.open(file)) {
+                        blockScanner.scan(pos, end, total);
+                    }
+                    pos = end;
+                }
+            }
+            assertEquals(2 * N + 1, total.count);
+            assertEquals(sum, total.sum);
+        }
+    }
+
+    @Test(expected = MedianFinderException.class)
+    public void testCorrupted() throws Exception {
+        File file = file();
+        File corrupted = FOLDER.newFile();
+        byte[] data = new byte[(int) file.length()];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(data);
+        }
+        // a byte of the compressed data of the first member
+        data[64] ^= 0x55;
+        try (OutputStream out = new FileOutputStream(corrupted)) {
+            out.write(data);
+        }
+        new MedianFinderStrategyPivotWithCache(1024, PivotSelectionStrategyMiddle.INSTANCE,
+                ScanStrategyGzip.INSTANCE, false, 0).findMedian(corrupted);
+    }
+
+    /**
+     * Writes the numbers on members with the given size of text, splitting
+     * the lines, and with empty members between them. Zero for a single
+     * member.
+     */
+    private File file() throws IOException {
+        File file = new File(FOLDER.getRoot(), "data-" + memberSize + "-" + negative + "-" + extra + ".txt.gz");
+        if (file.exists()) {
+            return file;
+        }
+        Random random = new Random(memberSize);
+        long[] numbers = new long[2 * N + 1];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = negative ? i - N : i + 1;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = numbers.length - 1; i >= 0; i--) {
+            int j = random.nextInt(i + 1);
+            long num = numbers[j];
+            numbers[j] = numbers[i];
+            text.append(num).append('\n');
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.US_ASCII);
+        try (OutputStream out = new FileOutputStream(file)) {
+            int len = memberSize > 0 ? memberSize : data.length;
+            for (int pos = 0, i = 0; pos < data.length; pos += len, i++) {
+                writeMember(out, data, pos, Math.min(len, data.length - pos), extra);
+                if (i % 5 == 4) {
+                    writeMember(out, data, 0, 0, extra);
+                }
+            }
+            writeMember(out, data, 0, 0, extra);
+        }
+        return file;
+    }
+
+    private static void writeMember(OutputStream out, byte[] data, int off, int len, boolean extra)
+            throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, off, len);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buff = new byte[1024];
+        while (!deflater.finished()) {
+            compressed.write(buff, 0, deflater.deflate(buff));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        if (extra) {
+            // the header of bgzip, with the size of the member
+            int size = 10 + 8 + compressed.size() + 8 - 1;
+            out.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                (byte) size, (byte) (size >>> 8)});
+        } else {
+            out.write(new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0});
+        }
+        compressed.writeTo(out);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, len);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(new byte[]{(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)});
+    }
+
+    //
+    private static class Sum implements NumberHandler {
+
+        long sum, count;
+
+        @Override
+        public void handle(long[] nums, int len) {
+            for (int i = 0; i < len; i++) {
+                sum += nums[i];
+            }
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package net.nfpj.medianfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ *
+ * @author njacinto
+ */
+@RunWith(Parameterized.class)
+public class SlidingWindowMedianTest {
+
+    @Parameters(name = "{index}: testWindow(windowSize={0}, duration={1}, count={2}, range={3}, offset={4})")
+    public static Collection<Object[]> data() {
+        Object[][] tests = new Object[][]{
+            {1, 0, 100, 1000, 0L},
+            {2, 0, 100, 1000, 0L},
+            {5, 0, 1000, 3, 0L},
+            {64, 0, 5000, 1000000, 0L},
+            {1000, 0, 5000, Integer.MAX_VALUE, 0L},
+            {0, 10, 2000, 1000, 0L},
+            {0, 200, 5000, 5, 0L},
+            {50, 100, 5000, 1000000, 0L},
+            {64, 0, 2000, 1000000, Long.MAX_VALUE - 1000000},
+            {64, 0, 2000, 1000000, Long.MIN_VALUE + 1000000}
+        };
+        return Arrays.asList(tests);
+    }
+    // -------------------------------------------------------------------------
+    private final int windowSize;
+    private final long duration;
+    private final int count;
+    private final int range;
+    private final long offset;
+
+    public SlidingWindowMedianTest(int windowSize, long duration, int count, int range, long offset) {
+        this.windowSize = windowSize;
+        this.duration = duration;
+        this.count = count;
+        this.range = range;
+        this.offset = offset;
+    }
+
+    /**
+     * Compares the median of each window with the median of the numbers of
+     * the window sorted. The times advance randomly, repeating some. The
+     * offset moves the numbers near the limits of a long.
+     */
+    @Test
+    public void testWindow() {
+        final Random random = new Random(count + windowSize);
+        final long[] nums = new long[count];
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            nums[i] = offset + random.nextInt(range) - range / 2;
+            times[i] = (i == 0 ? 0 : times[i - 1]) + random.nextInt(3);
+        }
+        final SlidingWindowMedian window = new SlidingWindowMedian(windowSize, duration);
+        for (int i = 0; i < count; i++) {
+            final long median = window.add(times[i], nums[i]);
+            int first = i;
+            while (first > 0 && (windowSize == 0 || i - first + 1 < windowSize)
+                    && (duration == 0 || times[first - 1] > times[i] - duration)) {
+                first--;
+            }
+            final long[] sorted = Arrays.copyOfRange(nums, first, i + 1);
+            Arrays.sort(sorted);
+            assertEquals(sorted.length, window.size());
+            assertEquals(NumberUtil.mean(sorted[(sorted.length - 1) >> 1], sorted[sorted.length >> 1]), median);
+        }
+    }
+
+    /**
+     * The listener gets the median after every step numbers handled.
+     */
+    @Test
+    public void testHandle() {
+        final long[] nums = new long[count];
+        for (int i = 0; i < count; i++) {
+            nums[i] = (i * 7919L) % (range + 1);
+        }
+        final int step = 3;
+        final ArrayList<Long> medians = new ArrayList<>();
+        final SlidingWindowMedian window = new SlidingWindowMedian(Math.max(1, windowSize), 0, step, medians::add);
+        final SlidingWindowMedian expectedWindow = new SlidingWindowMedian(Math.max(1, windowSize));
+        final long[] expected = new long[count / step];
+        for (int i = 0; i < count; i++) {
+            final long median = expectedWindow.add(nums[i]);
+            if ((i + 1) % step == 0) {
+                expected[i / step] = median;
+            }
+        }
+        for (int i = 0; i < count; i += Constants.BATCH_SIZE) {
+            window.handle(Arrays.copyOfRange(nums, i, Math.min(count, i + Constants.BATCH_SIZE)),
+                    Math.min(count - i, Constants.BATCH_SIZE));
+        }
+        assertArrayEquals(expected, medians.stream().mapToLong(Long::longValue).toArray());
+    }
+}